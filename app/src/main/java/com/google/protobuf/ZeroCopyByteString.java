@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.protobuf;
+
+
+/**
+ * Gives access to the package private {@link ByteString#wrap(byte[], int, int)}, because the protobuf-lite version used by gRPC
+ * does not have UnsafeByteOperations yet.
+ * The returned ByteString shares the array, so the array must not be modified until the ByteString has been serialized.
+ */
+public final class ZeroCopyByteString {
+    private ZeroCopyByteString() {
+    }
+
+    public static ByteString wrap(byte[] bytes, int offset, int length) {
+        return ByteString.wrap(bytes, offset, length);
+    }
+}
@@ -24,6 +24,7 @@ import android.preference.PreferenceManager;
 import android.provider.Settings;
 import android.util.Log;
 import androidx.annotation.Nullable;
+import androidx.room.Room;
 import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
 import java.io.File;
@@ -37,14 +38,23 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import nie.translator.rtranslatordevedition.api_management.ConsumptionsDataManager;
+import nie.translator.rtranslatordevedition.database.AppDatabase;
 import nie.translator.rtranslatordevedition.tools.CustomLocale;
 import nie.translator.rtranslatordevedition.tools.ErrorCodes;
 import nie.translator.rtranslatordevedition.voice_translation._conversation_mode.communication.ConversationBluetoothCommunicator;
 import com.bluetooth.communicator.BluetoothCommunicator;
 import com.bluetooth.communicator.Peer;
 import nie.translator.rtranslatordevedition.voice_translation._conversation_mode.communication.recent_peer.RecentPeersDataManager;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.OkHttpTransport;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.TranslationBatcher;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.TranslationCache;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.Translator;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.TranslatorExecutor;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.TranslatorMetrics;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.Recognizer;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.Recorder;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.RecognizerMetrics;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.SpeechChannel;
 
 
 public class Global extends Application {
@@ -54,16 +64,32 @@ public class Global extends Application {
     private CustomLocale language;
     private CustomLocale firstLanguage;
     private CustomLocale secondLanguage;
+    private AppDatabase database;
     private RecentPeersDataManager recentPeersDataManager;
     private ConversationBluetoothCommunicator bluetoothCommunicator;
     private Translator translator;
     private String name = "";
     private String apiKeyFileName = "";
     private ConsumptionsDataManager databaseManager;
+    private SpeechChannel speechChannel;
+    private RecognizerMetrics recognizerMetrics;
+    private TranslatorExecutor translatorExecutor;
+    private TranslatorMetrics translatorMetrics;
+    private TranslationCache translationCache;
+    private TranslationBatcher translationBatcher;
+    private OkHttpTransport translateTransport;
     private AccessToken apiToken;
     private int micSensitivity = -1;
     private int speechTimeout = -1;
     private int prevVoiceDuration = -1;
+    private int voiceActivityDetector = -1;
+    private int audioEncoding = -1;
+    private Boolean standbyRecognitionEnabled = null;
+    private int audioFrameDuration = -1;
+    private Boolean endlessStreamingEnabled = null;
+    private Boolean singleStreamWalkieTalkieEnabled = null;
+    private int translationBatchWindow = -1;
+    private Boolean senderTranslationEnabled = null;
     private int amplitudeThreshold = Recorder.DEFAULT_AMPLITUDE_THRESHOLD;
     private Handler mainHandler;
     private Thread getApiTokenThread;
@@ -75,10 +101,19 @@ public class Global extends Application {
     public void onCreate() {
         super.onCreate();
         mainHandler = new Handler(Looper.getMainLooper());
-        recentPeersDataManager = new RecentPeersDataManager(this);
+        // a single instance of the database for all the process, so all its users share the invalidation tracking of Room
+        database = Room.databaseBuilder(this, AppDatabase.class, AppDatabase.NAME).addMigrations(AppDatabase.MIGRATION_1_2).build();
+        recentPeersDataManager = new RecentPeersDataManager(database);
         bluetoothCommunicator = new ConversationBluetoothCommunicator(this, getName(), BluetoothCommunicator.STRATEGY_P2P_WITH_RECONNECTION);
+        translatorMetrics = new TranslatorMetrics();
+        translatorExecutor = new TranslatorExecutor(translatorMetrics);
+        translationCache = new TranslationCache(database, translatorMetrics);
+        translateTransport = new OkHttpTransport();
+        translationBatcher = new TranslationBatcher(this);
         translator = new Translator(this);
-        databaseManager = new ConsumptionsDataManager(this);
+        databaseManager = new ConsumptionsDataManager(database);
+        speechChannel = new SpeechChannel();
+        recognizerMetrics = new RecognizerMetrics();
         getMicSensitivity();
     }
 
@@ -255,6 +290,10 @@ public class Global extends Application {
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.putString("language", language.getCode());
         editor.apply();
+        // the connected peers are informed of the new language
+        if (bluetoothCommunicator != null) {
+            bluetoothCommunicator.sendLanguage(null);
+        }
     }
 
     public void setFirstLanguage(CustomLocale language) {
@@ -329,6 +368,134 @@ public class Global extends Application {
         editor.apply();
     }
 
+    public int getVoiceActivityDetector() {
+        if (voiceActivityDetector == -1) {
+            final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+            voiceActivityDetector = sharedPreferences.getInt("voiceActivityDetector", Recorder.DEFAULT_VOICE_ACTIVITY_DETECTOR);
+        }
+        return voiceActivityDetector;
+    }
+
+    public void setVoiceActivityDetector(int value) {
+        voiceActivityDetector = value;
+        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putInt("voiceActivityDetector", value);
+        editor.apply();
+    }
+
+    public int getAudioEncoding() {
+        if (audioEncoding == -1) {
+            final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+            audioEncoding = sharedPreferences.getInt("audioEncoding", Recognizer.DEFAULT_AUDIO_ENCODING);
+        }
+        return audioEncoding;
+    }
+
+    public void setAudioEncoding(int value) {
+        audioEncoding = value;
+        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putInt("audioEncoding", value);
+        editor.apply();
+    }
+
+    public int getAudioFrameDuration() {
+        if (audioFrameDuration == -1) {
+            final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+            audioFrameDuration = sharedPreferences.getInt("audioFrameDuration", Recognizer.DEFAULT_FRAME_DURATION_MILLIS);
+        }
+        return audioFrameDuration;
+    }
+
+    public void setAudioFrameDuration(int value) {
+        audioFrameDuration = value;
+        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putInt("audioFrameDuration", value);
+        editor.apply();
+    }
+
+    public boolean isSenderTranslationEnabled() {
+        if (senderTranslationEnabled == null) {
+            final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+            senderTranslationEnabled = sharedPreferences.getBoolean("senderTranslation", false);
+        }
+        return senderTranslationEnabled;
+    }
+
+    public void setSenderTranslationEnabled(boolean value) {
+        senderTranslationEnabled = value;
+        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean("senderTranslation", value);
+        editor.apply();
+    }
+
+    public int getTranslationBatchWindow() {
+        if (translationBatchWindow == -1) {
+            final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+            translationBatchWindow = sharedPreferences.getInt("translationBatchWindow", TranslationBatcher.DEFAULT_WINDOW_MILLIS);
+        }
+        return translationBatchWindow;
+    }
+
+    public void setTranslationBatchWindow(int value) {
+        translationBatchWindow = value;
+        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putInt("translationBatchWindow", value);
+        editor.apply();
+    }
+
+    public boolean isEndlessStreamingEnabled() {
+        if (endlessStreamingEnabled == null) {
+            final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+            endlessStreamingEnabled = sharedPreferences.getBoolean("endlessStreaming", true);
+        }
+        return endlessStreamingEnabled;
+    }
+
+    public void setEndlessStreamingEnabled(boolean value) {
+        endlessStreamingEnabled = value;
+        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean("endlessStreaming", value);
+        editor.apply();
+    }
+
+    public boolean isSingleStreamWalkieTalkieEnabled() {
+        if (singleStreamWalkieTalkieEnabled == null) {
+            final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+            singleStreamWalkieTalkieEnabled = sharedPreferences.getBoolean("singleStreamWalkieTalkie", true);
+        }
+        return singleStreamWalkieTalkieEnabled;
+    }
+
+    public void setSingleStreamWalkieTalkieEnabled(boolean value) {
+        singleStreamWalkieTalkieEnabled = value;
+        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean("singleStreamWalkieTalkie", value);
+        editor.apply();
+    }
+
+    public boolean isStandbyRecognitionEnabled() {
+        if (standbyRecognitionEnabled == null) {
+            final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+            standbyRecognitionEnabled = sharedPreferences.getBoolean("standbyRecognition", false);
+        }
+        return standbyRecognitionEnabled;
+    }
+
+    public void setStandbyRecognitionEnabled(boolean value) {
+        standbyRecognitionEnabled = value;
+        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean("standbyRecognition", value);
+        editor.apply();
+    }
+
     private void setAmplitudeThreshold(int micSensitivity) {
         float amplitudePercentage = 1f - (micSensitivity / 100f);
         if (amplitudePercentage < 0.5f) {
@@ -377,10 +544,63 @@ public class Global extends Application {
         }
     }
 
+    public AppDatabase getDatabase() {
+        return database;
+    }
+
     public RecentPeersDataManager getRecentPeersDataManager() {
         return recentPeersDataManager;
     }
 
+    /**
+     * @return the connection to the speech api shared by all the Recognizers.
+     */
+    public SpeechChannel getSpeechChannel() {
+        return speechChannel;
+    }
+
+    /**
+     * @return the metrics of the audio sent by all the Recognizers.
+     */
+    public RecognizerMetrics getRecognizerMetrics() {
+        return recognizerMetrics;
+    }
+
+    /**
+     * @return the executor that performs the work of all the Translators.
+     */
+    public TranslatorExecutor getTranslatorExecutor() {
+        return translatorExecutor;
+    }
+
+    /**
+     * @return the metrics of the tasks executed by the TranslatorExecutor.
+     */
+    public TranslatorMetrics getTranslatorMetrics() {
+        return translatorMetrics;
+    }
+
+    /**
+     * @return the cache of the translations shared by all the Translators.
+     */
+    public TranslationCache getTranslationCache() {
+        return translationCache;
+    }
+
+    /**
+     * @return the stage that groups the translations of all the Translators in requests with more texts.
+     */
+    public TranslationBatcher getTranslationBatcher() {
+        return translationBatcher;
+    }
+
+    /**
+     * @return the transport, with its pool of connections, used by all the clients of the Translate API.
+     */
+    public OkHttpTransport getTranslateTransport() {
+        return translateTransport;
+    }
+
     public abstract static class ResponseListener {
         public void onSuccess() {
 
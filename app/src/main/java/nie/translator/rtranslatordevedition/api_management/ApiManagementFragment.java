@@ -168,7 +168,7 @@ public class ApiManagementFragment extends Fragment {
         activity = (ApiManagementActivity) requireActivity();
         global = (Global) activity.getApplication();
 
-        databaseManager = new ConsumptionsDataManager(activity);
+        databaseManager = new ConsumptionsDataManager(global.getDatabase());
         new Thread("appearGraphs") {
             @Override
             public void run() {
@@ -16,9 +16,7 @@
 
 package nie.translator.rtranslatordevedition.api_management;
 
-import android.content.Context;
 import android.util.Log;
-import androidx.room.Room;
 import java.util.Date;
 import java.util.HashMap;
 import nie.translator.rtranslatordevedition.database.AppDatabase;
@@ -30,8 +28,11 @@ import nie.translator.rtranslatordevedition.tools.CustomTime;
 public class ConsumptionsDataManager {
     private AppDatabase database;
 
-    public ConsumptionsDataManager(Context context) {
-        database = Room.databaseBuilder(context, AppDatabase.class, "consumption_credit_dp").build();
+    /**
+     * @param database the database of the app, obtained with {@link nie.translator.rtranslatordevedition.Global#getDatabase()}.
+     */
+    public ConsumptionsDataManager(AppDatabase database) {
+        this.database = database;
     }
 
     public void addUsage(float credit) { //dovrà essere richiamato a ogni utilizzo dell' api
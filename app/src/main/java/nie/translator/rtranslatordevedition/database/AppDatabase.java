@@ -16,13 +16,27 @@
 
 package nie.translator.rtranslatordevedition.database;
 
+import androidx.annotation.NonNull;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import nie.translator.rtranslatordevedition.database.dao.MyDao;
+import nie.translator.rtranslatordevedition.database.entities.CachedTranslation;
 import nie.translator.rtranslatordevedition.database.entities.Hour;
 import nie.translator.rtranslatordevedition.database.entities.RecentPeerEntity;
 
 
-@androidx.room.Database(version = 1, entities = {Hour.class, RecentPeerEntity.class})
+@androidx.room.Database(version = 2, entities = {Hour.class, RecentPeerEntity.class, CachedTranslation.class})
 abstract public class AppDatabase extends RoomDatabase {
+    public static final String NAME = "consumption_credit_dp";
+    // adds the table of the translation cache
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `CachedTranslation` (`text` TEXT NOT NULL, `sourceLanguage` TEXT NOT NULL, `targetLanguage` TEXT NOT NULL, "
+                    + "`translation` TEXT, `lastUse` INTEGER NOT NULL, PRIMARY KEY(`text`, `sourceLanguage`, `targetLanguage`))");
+        }
+    };
+
     abstract public MyDao myDao();
 }
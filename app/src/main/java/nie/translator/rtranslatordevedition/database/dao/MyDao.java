@@ -22,6 +22,7 @@ import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import androidx.room.Update;
+import nie.translator.rtranslatordevedition.database.entities.CachedTranslation;
 import nie.translator.rtranslatordevedition.database.entities.Hour;
 import nie.translator.rtranslatordevedition.database.entities.RecentPeerEntity;
 
@@ -32,16 +33,22 @@ public interface MyDao{
     void insertHours(Hour... hours);
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertRecentPeers(RecentPeerEntity... recentPeerEntities);
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertCachedTranslations(CachedTranslation... cachedTranslations);
 
     //updates
     @Update
     void updateHours(Hour... hours);
     @Update
     void updateRecentPeers(RecentPeerEntity... recentPeerEntities);
+    @Query("UPDATE CachedTranslation SET lastUse=:lastUse where text=:text AND sourceLanguage=:sourceLanguage AND targetLanguage=:targetLanguage")
+    void updateCachedTranslationLastUse(String text, String sourceLanguage, String targetLanguage, long lastUse);
 
     //deletes
     @Delete
     void deleteRecentPeers(RecentPeerEntity... recentPeerEntities);
+    @Query("DELETE FROM CachedTranslation where rowid IN (SELECT rowid FROM CachedTranslation order by lastUse LIMIT :count)")
+    int deleteOldestCachedTranslations(int count);
 
     //select
     @Query("SELECT COUNT(id) FROM Hour")
@@ -68,4 +75,10 @@ public interface MyDao{
     @Query("SELECT * FROM RecentPeerEntity where uniqueName=:uniqueName")
     RecentPeerEntity loadRecentPeerByName(String uniqueName);
 
+    @Query("SELECT * FROM CachedTranslation where text=:text AND sourceLanguage=:sourceLanguage AND targetLanguage=:targetLanguage")
+    CachedTranslation loadCachedTranslation(String text, String sourceLanguage, String targetLanguage);
+
+    @Query("SELECT COUNT(*) FROM CachedTranslation")
+    int loadCachedTranslationsCount();
+
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+
+@Entity(primaryKeys = {"text", "sourceLanguage", "targetLanguage"})
+public class CachedTranslation {
+    @NonNull
+    public String text = "";  // normalized
+    @NonNull
+    public String sourceLanguage = "";  // empty if the language of the text was not specified
+    @NonNull
+    public String targetLanguage = "";
+    public String translation;
+    public long lastUse;
+}
@@ -31,9 +31,11 @@ import android.widget.ProgressBar;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
+import androidx.preference.ListPreference;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.PreferenceGroupAdapter;
+import androidx.preference.SwitchPreference;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -186,6 +188,94 @@ public class SettingsFragment extends PreferenceFragmentCompat {
         // change microphone sensibility initialization
         SeekBarPreference prevVoiceDurationPreference = (SeekBarPreference) findPreference("PrevVoiceDurationSetting");
         prevVoiceDurationPreference.initialize(activity, SeekBarPreference.PREV_VOICE_DURATION_MODE);
+
+        // voice activity detector initialization
+        ListPreference voiceActivityDetectorPreference = (ListPreference) findPreference("voiceActivityDetectorSetting");
+        voiceActivityDetectorPreference.setValue(String.valueOf(global.getVoiceActivityDetector()));
+        voiceActivityDetectorPreference.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                global.setVoiceActivityDetector(Integer.parseInt((String) newValue));
+                return true;
+            }
+        });
+
+        // audio encoding initialization
+        ListPreference audioEncodingPreference = (ListPreference) findPreference("audioEncodingSetting");
+        audioEncodingPreference.setValue(String.valueOf(global.getAudioEncoding()));
+        audioEncodingPreference.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                global.setAudioEncoding(Integer.parseInt((String) newValue));
+                return true;
+            }
+        });
+
+        // audio frame duration initialization
+        ListPreference audioFrameDurationPreference = (ListPreference) findPreference("audioFrameDurationSetting");
+        audioFrameDurationPreference.setValue(String.valueOf(global.getAudioFrameDuration()));
+        audioFrameDurationPreference.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                global.setAudioFrameDuration(Integer.parseInt((String) newValue));
+                return true;
+            }
+        });
+
+        // standby recognition initialization
+        SwitchPreference standbyRecognitionPreference = (SwitchPreference) findPreference("standbyRecognitionSetting");
+        standbyRecognitionPreference.setChecked(global.isStandbyRecognitionEnabled());
+        standbyRecognitionPreference.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                global.setStandbyRecognitionEnabled((Boolean) newValue);
+                return true;
+            }
+        });
+
+        // endless streaming initialization
+        SwitchPreference endlessStreamingPreference = (SwitchPreference) findPreference("endlessStreamingSetting");
+        endlessStreamingPreference.setChecked(global.isEndlessStreamingEnabled());
+        endlessStreamingPreference.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                global.setEndlessStreamingEnabled((Boolean) newValue);
+                return true;
+            }
+        });
+
+        // single stream walkie talkie initialization
+        SwitchPreference singleStreamWalkieTalkiePreference = (SwitchPreference) findPreference("singleStreamWalkieTalkieSetting");
+        singleStreamWalkieTalkiePreference.setChecked(global.isSingleStreamWalkieTalkieEnabled());
+        singleStreamWalkieTalkiePreference.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                global.setSingleStreamWalkieTalkieEnabled((Boolean) newValue);
+                return true;
+            }
+        });
+
+        // sender translation initialization
+        SwitchPreference senderTranslationPreference = (SwitchPreference) findPreference("senderTranslationSetting");
+        senderTranslationPreference.setChecked(global.isSenderTranslationEnabled());
+        senderTranslationPreference.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                global.setSenderTranslationEnabled((Boolean) newValue);
+                return true;
+            }
+        });
+
+        // translation batch window initialization
+        ListPreference translationBatchWindowPreference = (ListPreference) findPreference("translationBatchWindowSetting");
+        translationBatchWindowPreference.setValue(String.valueOf(global.getTranslationBatchWindow()));
+        translationBatchWindowPreference.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                global.setTranslationBatchWindow(Integer.parseInt((String) newValue));
+                return true;
+            }
+        });
     }
 
     @Override
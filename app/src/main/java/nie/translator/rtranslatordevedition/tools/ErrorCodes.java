@@ -21,6 +21,7 @@ public class ErrorCodes {
     //generals
     public static final int MISSED_CONNECTION = 5;
     public static final int ERROR=13;
+    public static final int TRANSLATOR_OVERLOADED = 14;
     //locals
     public static final int MISSED_ARGUMENT = 0;
     public static final int MISSED_CREDENTIALS = 1;
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.tools;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * List of languages with hashed lookup by language (without country), used in place of the linear scans of {@link CustomLocale#containsLanguage(ArrayList, CustomLocale)}
+ * when a list is searched many times, like when the languages supported by the recognizer, the translator and the tts are intersected.
+ * The index can be read from the binary format generated at build time by the compileRecognizerLanguageIndex task (app/build.gradle):
+ * a magic number, a version, the number of codes and the codes (BCP-47) in modified UTF-8, as written by {@link java.io.DataOutputStream}.
+ */
+public class LanguageIndex {
+    public static final int MAGIC = 0x4C414E47;  // "LANG"
+    public static final int VERSION = 1;
+    private final ArrayList<CustomLocale> locales;
+    private final HashSet<String> languages;
+
+    public LanguageIndex(@NonNull Collection<CustomLocale> locales) {
+        this.locales = new ArrayList<>(locales.size());
+        this.languages = new HashSet<>(locales.size() * 2);
+        for (CustomLocale locale : locales) {
+            add(locale);
+        }
+    }
+
+    private void add(@Nullable CustomLocale locale) {
+        if (locale != null) {
+            locales.add(locale);
+            languages.add(locale.getLanguage());
+        }
+    }
+
+    /**
+     * Reads an index in the binary format, the stream is not closed.
+     */
+    public static LanguageIndex read(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        if (input.readInt() != MAGIC) {
+            throw new IOException("not a language index");
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported language index version: " + version);
+        }
+        int count = input.readInt();
+        LanguageIndex index = new LanguageIndex(Collections.<CustomLocale>emptyList());
+        index.locales.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            index.add(CustomLocale.getInstance(input.readUTF()));
+        }
+        return index;
+    }
+
+    public boolean containsLanguage(@Nullable CustomLocale locale) {
+        return locale != null && languages.contains(locale.getLanguage());
+    }
+
+    /**
+     * @return the locales in the order in which they have been added, the list must not be modified.
+     */
+    public ArrayList<CustomLocale> getLocales() {
+        return locales;
+    }
+
+    /**
+     * @return the languages (without country) of the index.
+     */
+    public Set<String> getLanguages() {
+        return Collections.unmodifiableSet(languages);
+    }
+
+    /**
+     * @return the languages (without country) present in all the indexes.
+     */
+    public static HashSet<String> intersectLanguages(LanguageIndex first, LanguageIndex... others) {
+        HashSet<String> intersection = new HashSet<>(first.languages);
+        for (LanguageIndex other : others) {
+            intersection.retainAll(other.languages);
+        }
+        return intersection;
+    }
+
+    public int size() {
+        return locales.size();
+    }
+}
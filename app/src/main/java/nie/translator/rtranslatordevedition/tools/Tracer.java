@@ -0,0 +1,287 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.tools;
+
+import android.os.Process;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import nie.translator.rtranslatordevedition.BuildConfig;
+
+
+/**
+ * Low overhead tracing of the app, used in place of the logcat in the frequently executed code.
+ * The events (spans with a duration, instant events and counters) are kept in memory in a ring buffer of fixed size, so only the last
+ * {@link #CAPACITY} events are kept and no memory is allocated while tracing; the buffer can be exported with {@link #exportChromeTrace(File)}
+ * as a Chrome trace (JSON Trace Event Format), to open with chrome://tracing or ui.perfetto.dev.
+ * The tracing is enabled only in the debug builds: {@link #ENABLED} is a constant, so the code in "if (Tracer.ENABLED)" is removed by the compiler
+ * in the release builds (the calls not enclosed in it do nothing and are removed by the optimizer). The names and categories should be constants,
+ * so recording an event does not create strings.
+ */
+public class Tracer {
+    public static final boolean ENABLED = BuildConfig.DEBUG;
+    public static final int CAPACITY = 8192;
+    // categories
+    public static final String CAPTURE = "capture";
+    public static final String RECOGNIZER = "recognizer";
+    public static final String TRANSLATOR = "translator";
+    public static final String TTS = "tts";
+    public static final String BLUETOOTH = "bluetooth";
+    // phases of the Trace Event Format
+    private static final char PHASE_COMPLETE = 'X';
+    private static final char PHASE_INSTANT = 'i';
+    private static final char PHASE_COUNTER = 'C';
+    private static final long NO_VALUE = Long.MIN_VALUE;
+    private static final long START_TIME = System.nanoTime();  // the times are exported relative to it
+    // ring buffer
+    private static final char[] phases = new char[ENABLED ? CAPACITY : 0];
+    private static final String[] categories = new String[ENABLED ? CAPACITY : 0];
+    private static final String[] names = new String[ENABLED ? CAPACITY : 0];
+    private static final long[] timestamps = new long[ENABLED ? CAPACITY : 0];  // nanoseconds
+    private static final long[] durations = new long[ENABLED ? CAPACITY : 0];  // nanoseconds
+    private static final long[] threadIds = new long[ENABLED ? CAPACITY : 0];
+    private static final long[] values = new long[ENABLED ? CAPACITY : 0];
+    private static final String[] details = new String[ENABLED ? CAPACITY : 0];
+    private static final Map<Long, String> threadNames = new HashMap<>();
+    private static int next = 0;
+    private static int size = 0;
+    private static final Object lock = new Object();
+
+    /**
+     * @return the start time of a span, to pass to {@link #endSpan(String, String, long)}.
+     */
+    public static long beginSpan() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a span that started at startTime (obtained with {@link #beginSpan()}) and ends now.
+     */
+    public static void endSpan(String category, String name, long startTime) {
+        if (ENABLED) {
+            record(PHASE_COMPLETE, category, name, startTime, System.nanoTime() - startTime, NO_VALUE, null);
+        }
+    }
+
+    /**
+     * Records a span with a value (for example the bytes sent) shown in its arguments.
+     */
+    public static void endSpan(String category, String name, long startTime, long value) {
+        if (ENABLED) {
+            record(PHASE_COMPLETE, category, name, startTime, System.nanoTime() - startTime, value, null);
+        }
+    }
+
+    public static void instant(String category, String name) {
+        if (ENABLED) {
+            record(PHASE_INSTANT, category, name, System.nanoTime(), 0, NO_VALUE, null);
+        }
+    }
+
+    public static void instant(String category, String name, long value) {
+        if (ENABLED) {
+            record(PHASE_INSTANT, category, name, System.nanoTime(), 0, value, null);
+        }
+    }
+
+    /**
+     * Records an instant event with a text, to use for rare events (for example errors) because the text is usually created for the call.
+     */
+    public static void instant(String category, String name, String detail) {
+        if (ENABLED) {
+            record(PHASE_INSTANT, category, name, System.nanoTime(), 0, NO_VALUE, detail);
+        }
+    }
+
+    /**
+     * Records the value of a counter (for example the length of a queue), shown as a graph in the trace.
+     */
+    public static void counter(String category, String name, long value) {
+        if (ENABLED) {
+            record(PHASE_COUNTER, category, name, System.nanoTime(), 0, value, null);
+        }
+    }
+
+    private static void record(char phase, String category, String name, long timestamp, long duration, long value, String detail) {
+        Thread thread = Thread.currentThread();
+        long threadId = thread.getId();
+        synchronized (lock) {
+            phases[next] = phase;
+            categories[next] = category;
+            names[next] = name;
+            timestamps[next] = timestamp;
+            durations[next] = duration;
+            threadIds[next] = threadId;
+            values[next] = value;
+            details[next] = detail;
+            if (!threadNames.containsKey(threadId)) {
+                threadNames.put(threadId, thread.getName());
+            }
+            next = (next + 1) % CAPACITY;
+            if (size < CAPACITY) {
+                size++;
+            }
+        }
+    }
+
+    public static void clear() {
+        synchronized (lock) {
+            next = 0;
+            size = 0;
+            Arrays.fill(details, null);
+        }
+    }
+
+    /**
+     * Writes the events in the buffer in the file, as a Chrome trace. The buffer is not cleared.
+     */
+    public static void exportChromeTrace(File file) throws IOException {
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            exportChromeTrace(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    public static void exportChromeTrace(Writer writer) throws IOException {
+        // the events are copied, so the tracing is not blocked while writing
+        final ArrayList<Event> events;
+        final Map<Long, String> threadNames;
+        synchronized (lock) {
+            events = new ArrayList<>(size);
+            int index = (next - size + CAPACITY) % CAPACITY;
+            for (int i = 0; i < size; i++) {
+                events.add(new Event(index));
+                index = (index + 1) % CAPACITY;
+            }
+            threadNames = new HashMap<>(Tracer.threadNames);
+        }
+        final int pid = Process.myPid();
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (Map.Entry<Long, String> threadName : threadNames.entrySet()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":" + threadName.getKey() + ",\"args\":{\"name\":");
+            writeString(writer, threadName.getValue());
+            writer.write("}}");
+        }
+        for (Event event : events) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            event.write(writer, pid);
+        }
+        writer.write("\n]}\n");
+    }
+
+    private static String formatMicros(long nanos) {
+        return (nanos / 1000) + "." + String.valueOf(1000 + Math.abs(nanos % 1000)).substring(1);
+    }
+
+    private static void writeString(Writer writer, String text) throws IOException {
+        if (text == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Copy of an event of the ring buffer.
+     */
+    private static class Event {
+        private final char phase;
+        private final String category;
+        private final String name;
+        private final long timestamp;
+        private final long duration;
+        private final long threadId;
+        private final long value;
+        private final String detail;
+
+        private Event(int index) {
+            phase = phases[index];
+            category = categories[index];
+            name = names[index];
+            timestamp = timestamps[index];
+            duration = durations[index];
+            threadId = threadIds[index];
+            value = values[index];
+            detail = details[index];
+        }
+
+        private void write(Writer writer, int pid) throws IOException {
+            writer.write("{\"name\":");
+            writeString(writer, name);
+            writer.write(",\"cat\":");
+            writeString(writer, category);
+            writer.write(",\"ph\":\"" + phase + "\",\"ts\":" + formatMicros(timestamp - START_TIME));
+            if (phase == PHASE_COMPLETE) {
+                writer.write(",\"dur\":" + formatMicros(duration));
+            } else if (phase == PHASE_INSTANT) {
+                writer.write(",\"s\":\"t\"");  // the instant events are shown in the line of their thread
+            }
+            writer.write(",\"pid\":" + pid + ",\"tid\":" + threadId);
+            if (value != NO_VALUE || detail != null) {
+                writer.write(",\"args\":{");
+                if (value != NO_VALUE) {
+                    writer.write("\"value\":" + value);
+                }
+                if (detail != null) {
+                    writer.write(value != NO_VALUE ? ",\"detail\":" : "\"detail\":");
+                    writeString(writer, detail);
+                }
+                writer.write("}");
+            }
+            writer.write("}");
+        }
+    }
+}
@@ -41,9 +41,17 @@ public abstract class ServiceCommunicator {
     }
 
     protected void sendToService(Bundle bundle) {
+        sendToService(bundle, null);
+    }
+
+    /**
+     * The object is passed by reference, so it can only be used with services that run in our same process.
+     */
+    protected void sendToService(Bundle bundle, @Nullable Object object) {
         if (serviceMessenger != null) {
             android.os.Message message = android.os.Message.obtain();
             message.setData(bundle);
+            message.obj = object;
             try {
                 serviceMessenger.send(message);
             } catch (RemoteException e) {
@@ -34,8 +34,10 @@ import android.preference.PreferenceManager;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.Toast;
 import androidx.annotation.CallSuper;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.TaskStackBuilder;
@@ -150,6 +152,15 @@ public class VoiceTranslationActivity extends GeneralActivity {
                 startActivity(intent);
                 break;
             }
+            case R.id.recorderMetrics: {
+                VoiceTranslationFragment voiceTranslationFragment = getVoiceTranslationFragment();
+                if (voiceTranslationFragment != null) {
+                    voiceTranslationFragment.showMetrics();
+                } else {
+                    Toast.makeText(this, R.string.toast_recorder_metrics_unavailable, Toast.LENGTH_SHORT).show();
+                }
+                break;
+            }
         }
         return super.onOptionsItemSelected(item);
     }
@@ -232,6 +243,21 @@ public class VoiceTranslationActivity extends GeneralActivity {
         }.start();
     }
 
+    /**
+     * @return the fragment connected to the current voice translation service, or null if we are not in conversation or walkie talkie mode.
+     */
+    @Nullable
+    private VoiceTranslationFragment getVoiceTranslationFragment() {
+        Fragment fragment = getSupportFragmentManager().findFragmentById(R.id.fragment_container);
+        if (fragment instanceof ConversationFragment) {
+            fragment = ((ConversationFragment) fragment).getCurrentFragment();
+        }
+        if (fragment instanceof VoiceTranslationFragment) {
+            return (VoiceTranslationFragment) fragment;
+        }
+        return null;
+    }
+
     public int getCurrentFragment() {
         if (currentFragment != -1) {
             return currentFragment;
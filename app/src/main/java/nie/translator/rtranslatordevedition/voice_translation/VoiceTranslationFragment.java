@@ -34,11 +34,15 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.LinearSmoothScroller;
 import androidx.recyclerview.widget.RecyclerView;
+import com.bluetooth.communicator.Message;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import nie.translator.rtranslatordevedition.Global;
 import nie.translator.rtranslatordevedition.R;
 import nie.translator.rtranslatordevedition.api_management.ApiManagementActivity;
 import nie.translator.rtranslatordevedition.tools.ErrorCodes;
+import nie.translator.rtranslatordevedition.tools.Tracer;
 import nie.translator.rtranslatordevedition.tools.gui.ButtonKeyboard;
 import nie.translator.rtranslatordevedition.tools.gui.ButtonMic;
 import nie.translator.rtranslatordevedition.tools.gui.ButtonSound;
@@ -46,6 +50,10 @@ import nie.translator.rtranslatordevedition.tools.gui.DeactivableButton;
 import nie.translator.rtranslatordevedition.tools.gui.MicrophoneComunicable;
 import nie.translator.rtranslatordevedition.tools.gui.messages.GuiMessage;
 import nie.translator.rtranslatordevedition.tools.gui.messages.MessagesAdapter;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.TranslatorMetrics;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.RecognizerMetrics;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.RecorderMetrics;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.TranscriptDelta;
 
 public abstract class VoiceTranslationFragment extends Fragment implements MicrophoneComunicable {
     //gui
@@ -317,6 +325,75 @@ public abstract class VoiceTranslationFragment extends Fragment implements Micro
         microphone.deleteEditText(activity, VoiceTranslationFragment.this, keyboard, editText);
     }
 
+    /**
+     * Shows the metrics of the microphone, of the audio sent to the speech recognition and of the translations collected by the service (debug screen).
+     */
+    public void showMetrics() {
+        voiceTranslationServiceCommunicator.getMetrics(new VoiceTranslationService.MetricsListener() {
+            @Override
+            public void onSuccess(RecorderMetrics.Snapshot recorderMetrics, RecognizerMetrics.Snapshot recognizerMetrics, TranslatorMetrics.Snapshot translatorMetrics) {
+                if (recorderMetrics != null && isAdded()) {
+                    String report = recorderMetrics.toReport();
+                    if (recognizerMetrics != null) {
+                        report += "\n\n" + recognizerMetrics.toReport();
+                    }
+                    if (translatorMetrics != null) {
+                        report += "\n\n" + translatorMetrics.toReport();
+                    }
+                    AlertDialog.Builder builder = new AlertDialog.Builder(activity);
+                    builder.setTitle(R.string.title_recorder_metrics);
+                    builder.setMessage(report);
+                    builder.setPositiveButton(android.R.string.ok, null);
+                    if (Tracer.ENABLED) {
+                        builder.setNeutralButton(R.string.button_export_trace, new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which) {
+                                exportTrace();
+                            }
+                        });
+                    }
+                    builder.create().show();
+                }
+            }
+        });
+    }
+
+    /**
+     * Saves the events recorded by the {@link Tracer} in the app's external files directory, as a Chrome trace.
+     */
+    private void exportTrace() {
+        final File directory = activity.getExternalFilesDir(null);
+        if (directory == null) {
+            Toast.makeText(activity, R.string.toast_trace_export_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        new Thread("traceExport") {
+            @Override
+            public void run() {
+                final File file = new File(directory, "trace.json");
+                boolean exported;
+                try {
+                    Tracer.exportChromeTrace(file);
+                    exported = true;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    exported = false;
+                }
+                final boolean success = exported;
+                activity.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (success) {
+                            Toast.makeText(activity, activity.getString(R.string.toast_trace_exported, file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+                        } else {
+                            Toast.makeText(activity, R.string.toast_trace_export_failed, Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+            }
+        }.start();
+    }
+
     public boolean isInputActive() {
         return isInputActive;
     }
@@ -407,6 +484,22 @@ public abstract class VoiceTranslationFragment extends Fragment implements Micro
             }
         }
 
+        @Override
+        public void onPreviewDelta(TranscriptDelta delta) {
+            super.onPreviewDelta(delta);
+            GuiMessage preview = mAdapter.getPreview();
+            if (preview != null) {
+                // update the component_message_preview
+                mAdapter.setPreviewText(delta.applyTo(preview.getMessage().getText()));
+            } else {
+                //add the component_message_preview
+                mAdapter.addMessage(new GuiMessage(new Message(global, delta.applyTo("")), true, false));
+                //smooth scroll
+                smoothScroller.setTargetPosition(mAdapter.getItemCount() - 1);
+                mRecyclerView.getLayoutManager().startSmoothScroll(smoothScroller);
+            }
+        }
+
         @Override
         public void onError(int[] reasons, long value) {
             for (int aReason : reasons) {
@@ -35,11 +35,18 @@ import nie.translator.rtranslatordevedition.Global;
 import nie.translator.rtranslatordevedition.tools.CustomLocale;
 import nie.translator.rtranslatordevedition.tools.TTS;
 import nie.translator.rtranslatordevedition.tools.Tools;
+import nie.translator.rtranslatordevedition.tools.Tracer;
 import nie.translator.rtranslatordevedition.tools.gui.messages.GuiMessage;
 import nie.translator.rtranslatordevedition.tools.services_communication.ServiceCallback;
 import nie.translator.rtranslatordevedition.tools.services_communication.ServiceCommunicator;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.RecognizerListener;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.MicrophoneAudioSource;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.Recorder;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.Translator;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.TranslatorMetrics;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.RecognizerMetrics;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.RecorderMetrics;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.TranscriptDelta;
 
 
 public abstract class VoiceTranslationService extends GeneralService {
@@ -51,11 +58,14 @@ public abstract class VoiceTranslationService extends GeneralService {
     public static final int STOP_SOUND = 3;
     public static final int SET_EDIT_TEXT_OPEN = 7;
     public static final int RECEIVE_TEXT = 4;
+    public static final int GET_METRICS = 8;
     // callbacks
     public static final int ON_ATTRIBUTES = 5;
     public static final int ON_VOICE_STARTED = 0;
     public static final int ON_VOICE_ENDED = 1;
     public static final int ON_MESSAGE = 2;
+    public static final int ON_METRICS = 7;
+    public static final int ON_PREVIEW_DELTA = 9;
     public static final int ON_CONNECTED_BLUETOOTH_HEADSET = 15;
     public static final int ON_DISCONNECTED_BLUETOOTH_HEADSET = 16;
     public static final int ON_STOPPED = 6;
@@ -74,12 +84,14 @@ public abstract class VoiceTranslationService extends GeneralService {
     protected Recorder.Callback mVoiceCallback;
     protected Handler clientHandler;
     private Recorder mVoiceRecorder;
+    protected final RecorderMetrics recorderMetrics = new RecorderMetrics();  // shared by all the Recorders of the service, so the values are cumulative
     private UtteranceProgressListener ttsListener;
     private TTS tts;
 
     // variables
     private ArrayList<GuiMessage> messages = new ArrayList<>(); // messages exchanged since the beginning of the service
     private boolean isMicMute = false;
+    private boolean isInBackground = false;  // true while no client is bound
     private boolean isAudioMute = false;
     private boolean isEditTextOpen = false;
     private int utterancesCurrentlySpeaking = 0;
@@ -89,14 +101,18 @@ public abstract class VoiceTranslationService extends GeneralService {
     @Override
     public void onCreate() {
         super.onCreate();
+        // the connection with the Translate API is opened while the tts and the recognizer are initialized
+        Translator.prewarmConnection((Global) getApplication());
         // tts initialization
         ttsListener = new UtteranceProgressListener() {
             @Override
             public void onStart(String s) {
+                Tracer.instant(Tracer.TTS, "utteranceStart");
             }
 
             @Override
             public void onDone(String s) {
+                Tracer.instant(Tracer.TTS, "utteranceDone");
                 synchronized (mLock) {
                     if (utterancesCurrentlySpeaking > 0) {
                         utterancesCurrentlySpeaking--;
@@ -111,6 +127,7 @@ public abstract class VoiceTranslationService extends GeneralService {
 
             @Override
             public void onError(String s) {
+                Tracer.instant(Tracer.TTS, "utteranceError");
             }
         };
 
@@ -169,7 +186,7 @@ public abstract class VoiceTranslationService extends GeneralService {
             notifyError(new int[]{MISSING_MIC_PERMISSION}, -1);
         } else {
             if (mVoiceRecorder == null && !isMicMute) {
-                mVoiceRecorder = new Recorder((Global) getApplication(), mVoiceCallback);
+                mVoiceRecorder = new Recorder((Global) getApplication(), mVoiceCallback, new MicrophoneAudioSource(), recorderMetrics);
                 mVoiceRecorder.start();
             }
         }
@@ -182,6 +199,18 @@ public abstract class VoiceTranslationService extends GeneralService {
         }
     }
 
+    private void updateStandbyRecognition() {
+        setStandbyRecognitionAllowed(!isMicMute && !isInBackground);
+    }
+
+    /**
+     * Called with false when the microphone is muted by the user or no client is bound, so the recognizers stop keeping a standby
+     * stream ready (see {@link nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.Recognizer#setStandbyAllowed(boolean)}),
+     * and with true when both end.
+     */
+    protected void setStandbyRecognitionAllowed(boolean allowed) {
+    }
+
     protected int getVoiceRecorderSampleRate() {
         if (mVoiceRecorder != null) {
             return mVoiceRecorder.getSampleRate();
@@ -190,11 +219,19 @@ public abstract class VoiceTranslationService extends GeneralService {
         }
     }
 
+    /**
+     * @return the metrics of the microphone since the start of the service.
+     */
+    public RecorderMetrics.Snapshot getRecorderMetrics() {
+        return recorderMetrics.getSnapshot();
+    }
+
     // tts
 
     public synchronized void speak(String result, CustomLocale language) {
         synchronized (mLock) {
             if (tts.isActive() && !isAudioMute) {
+                Tracer.instant(Tracer.TTS, "speak", result.length());
                 utterancesCurrentlySpeaking++;
                 if (shouldStopMicDuringTTS()) {
                     stopVoiceRecorder();  // used instead of dismiss when the result is final since stop also implements dismiss ()
@@ -248,6 +285,8 @@ public abstract class VoiceTranslationService extends GeneralService {
         if (notification != null) {
             startForeground(11, notification);
         }
+        isInBackground = true;
+        updateStandbyRecognition();
         return true;
     }
 
@@ -259,6 +298,8 @@ public abstract class VoiceTranslationService extends GeneralService {
         } else {
             stopForeground(true);
         }
+        isInBackground = false;
+        updateStandbyRecognition();
     }
 
     protected boolean executeCommand(int command, Bundle data) {
@@ -266,11 +307,13 @@ public abstract class VoiceTranslationService extends GeneralService {
             switch (command) {
                 case START_MIC:
                     isMicMute = false;
+                    updateStandbyRecognition();
                     startVoiceRecorder();
                     return true;
                 case STOP_MIC:
                     if (data.getBoolean("permanent")) {
                         isMicMute = true;
+                        updateStandbyRecognition();
                     }
                     stopVoiceRecorder();
                     return true;
@@ -301,6 +344,14 @@ public abstract class VoiceTranslationService extends GeneralService {
                     bundle.putBoolean("isBluetoothHeadsetConnected", isBluetoothHeadsetConnected());
                     super.notifyToClient(bundle);
                     return true;
+                case GET_METRICS:
+                    Bundle metricsBundle = new Bundle();
+                    metricsBundle.putInt("callback", ON_METRICS);
+                    metricsBundle.putParcelable("recorderMetrics", getRecorderMetrics());
+                    metricsBundle.putParcelable("recognizerMetrics", ((Global) getApplication()).getRecognizerMetrics().getSnapshot());
+                    metricsBundle.putParcelable("translatorMetrics", ((Global) getApplication()).getTranslatorMetrics().getSnapshot());
+                    super.notifyToClient(metricsBundle);
+                    return true;
             }
             return false;
         }
@@ -314,6 +365,18 @@ public abstract class VoiceTranslationService extends GeneralService {
         super.notifyToClient(bundle);
     }
 
+    /**
+     * Notifies the change of the text of the preview of the message being recognized, instead of the whole message.
+     */
+    public void notifyPreviewDelta(TranscriptDelta delta) {
+        Bundle bundle = new Bundle();
+        bundle.putInt("callback", ON_PREVIEW_DELTA);
+        bundle.putInt("keptLength", delta.getKeptLength());
+        bundle.putString("appendedText", delta.getAppendedText());
+        bundle.putInt("stableLength", delta.getStableLength());
+        super.notifyToClient(bundle);
+    }
+
     protected void notifyVoiceStart() {
         Bundle bundle = new Bundle();
         bundle.clear();
@@ -339,6 +402,7 @@ public abstract class VoiceTranslationService extends GeneralService {
     public static abstract class VoiceTranslationServiceCommunicator extends ServiceCommunicator {
         private ArrayList<VoiceTranslationServiceCallback> clientCallbacks = new ArrayList<>();
         private ArrayList<AttributesListener> attributesListeners = new ArrayList<>();
+        private ArrayList<MetricsListener> metricsListeners = new ArrayList<>();
 
         protected VoiceTranslationServiceCommunicator(int id) {
             super(id);
@@ -358,6 +422,15 @@ public abstract class VoiceTranslationService extends GeneralService {
                         }
                         return true;
                     }
+                    case ON_METRICS: {
+                        RecorderMetrics.Snapshot recorderMetrics = data.getParcelable("recorderMetrics");
+                        RecognizerMetrics.Snapshot recognizerMetrics = data.getParcelable("recognizerMetrics");
+                        TranslatorMetrics.Snapshot translatorMetrics = data.getParcelable("translatorMetrics");
+                        while (metricsListeners.size() > 0) {
+                            metricsListeners.remove(0).onSuccess(recorderMetrics, recognizerMetrics, translatorMetrics);
+                        }
+                        return true;
+                    }
                     case ON_VOICE_STARTED: {
                         for (int i = 0; i < clientCallbacks.size(); i++) {
                             clientCallbacks.get(i).onVoiceStarted();
@@ -377,6 +450,13 @@ public abstract class VoiceTranslationService extends GeneralService {
                         }
                         return true;
                     }
+                    case ON_PREVIEW_DELTA: {
+                        TranscriptDelta delta = new TranscriptDelta(data.getInt("keptLength"), data.getString("appendedText", ""), data.getInt("stableLength"));
+                        for (int i = 0; i < clientCallbacks.size(); i++) {
+                            clientCallbacks.get(i).onPreviewDelta(delta);
+                        }
+                        return true;
+                    }
                     case ON_CONNECTED_BLUETOOTH_HEADSET: {
                         for (int i = 0; i < clientCallbacks.size(); i++) {
                             clientCallbacks.get(i).onBluetoothHeadsetConnected();
@@ -423,6 +503,15 @@ public abstract class VoiceTranslationService extends GeneralService {
             }
         }
 
+        public void getMetrics(MetricsListener responseListener) {
+            metricsListeners.add(responseListener);
+            if (metricsListeners.size() == 1) {
+                Bundle bundle = new Bundle();
+                bundle.putInt("command", GET_METRICS);
+                super.sendToService(bundle);
+            }
+        }
+
         public void startMic() {
             Bundle bundle = new Bundle();
             bundle.putInt("command", START_MIC);
@@ -482,6 +571,12 @@ public abstract class VoiceTranslationService extends GeneralService {
         public void onMessage(GuiMessage message) {
         }
 
+        /**
+         * Called when the text of the preview of the message being recognized changes.
+         */
+        public void onPreviewDelta(TranscriptDelta delta) {
+        }
+
         public void onBluetoothHeadsetConnected() {
         }
 
@@ -493,6 +588,10 @@ public abstract class VoiceTranslationService extends GeneralService {
         void onSuccess(ArrayList<GuiMessage> messages, boolean isMicMute, boolean isAudioMute, boolean isEditTextOpen, boolean isBluetoothHeadsetConnected);
     }
 
+    public interface MetricsListener {
+        void onSuccess(RecorderMetrics.Snapshot recorderMetrics, RecognizerMetrics.Snapshot recognizerMetrics, TranslatorMetrics.Snapshot translatorMetrics);
+    }
+
     protected abstract class VoiceTranslationServiceRecognizerListener implements RecognizerListener {
         @Override
         public void onError(int[] reasons, long value) {
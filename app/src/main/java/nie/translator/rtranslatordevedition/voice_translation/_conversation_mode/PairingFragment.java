@@ -35,13 +35,11 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.fragment.app.Fragment;
-import java.text.DateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import nie.translator.rtranslatordevedition.Global;
 import nie.translator.rtranslatordevedition.R;
-import nie.translator.rtranslatordevedition.tools.FileLog;
 import nie.translator.rtranslatordevedition.tools.Tools;
+import nie.translator.rtranslatordevedition.tools.Tracer;
 import nie.translator.rtranslatordevedition.tools.gui.RequestDialog;
 import nie.translator.rtranslatordevedition.tools.gui.WalkieTalkieButton;
 import nie.translator.rtranslatordevedition.tools.gui.animations.CustomAnimator;
@@ -101,8 +99,7 @@ public class PairingFragment extends PairingToolbarFragment {
             public void onConnectionRequest(final GuiPeer peer) {
                 super.onConnectionRequest(peer);
                 if (peer != null) {
-                    String time = DateFormat.getDateTimeInstance().format(new Date());
-                    FileLog.appendLog("\nnearby " + time + ": received connection request from:" + peer.getUniqueName());
+                    Tracer.instant(Tracer.BLUETOOTH, "connectionRequest", peer.getUniqueName());
                     connectionRequestDialog = new RequestDialog(activity, getResources().getString(R.string.dialog_confirm_connection_request) + peer.getName() + " ?", 15000, new DialogInterface.OnClickListener() {
                         @Override
                         public void onClick(DialogInterface dialog, int which) {
@@ -21,11 +21,17 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.PowerManager;
-import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import org.json.JSONException;
+import org.json.JSONObject;
 import nie.translator.rtranslatordevedition.Global;
 import nie.translator.rtranslatordevedition.tools.BluetoothHeadsetUtils;
 import nie.translator.rtranslatordevedition.tools.CustomLocale;
+import nie.translator.rtranslatordevedition.tools.Tracer;
 import nie.translator.rtranslatordevedition.tools.gui.messages.GuiMessage;
 import nie.translator.rtranslatordevedition.tools.gui.peers.GuiPeer;
 import nie.translator.rtranslatordevedition.voice_translation.VoiceTranslationService;
@@ -35,19 +41,24 @@ import com.bluetooth.communicator.tools.Timer;
 import com.bluetooth.communicator.Message;
 import com.bluetooth.communicator.Peer;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.CloudApiText;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.SpeculativeTranslator;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.Translator;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.AudioFrame;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.Recognizer;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.Recorder;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.TranscriptDelta;
 
 
 public class ConversationService extends VoiceTranslationService {
     //commands
     public static final int CHANGE_LANGUAGE = 15;
 
+    private static final long SENDER_TRANSLATION_TIMEOUT = 3000L;  // after which the message is sent with only the translations completed
     private static final long WAKELOCK_TIMEOUT = 20 * 1000L;  // 10 minutes, so if the service stopped without calling onDestroyed the wakeLock would still be released within 10 minutes
     private Timer wakeLockTimer;  // to reactivate the timer every 10 minutes, so as long as the service is active the wakelock will never expire
     private PowerManager.WakeLock screenWakeLock;
     private String textRecognized = "";
+    private HashMap<String, SpeculativeTranslator> speculativeTranslators = new HashMap<>();  // translate the utterance being recognized in the languages of the peers
     private Translator translator;
     private String myPeerName;
     private Recognizer mVoiceRecognizer;
@@ -72,7 +83,7 @@ public class ConversationService extends VoiceTranslationService {
             public void onListenStart() {
                 if (mVoiceRecognizer != null) {
                     super.onListenStart();
-                    Log.e("recorder","onListenStart");
+                    Tracer.instant(Tracer.CAPTURE, "onListenStart");
                     global.getLanguage(true, new Global.GetLocaleListener() {
                         @Override
                         public void onSuccess(CustomLocale result) {
@@ -95,17 +106,17 @@ public class ConversationService extends VoiceTranslationService {
             public void onVoiceStart() {
                 if (mVoiceRecognizer != null) {
                     super.onVoiceStart();
-                    Log.e("recorder","onVoiceStart");
+                    Tracer.instant(Tracer.CAPTURE, "onVoiceStart");
                     //si notifica il client
                     ConversationService.super.notifyVoiceStart();
                 }
             }
 
             @Override
-            public void onVoice(@NonNull byte[] data, int size) {
+            public void onVoice(@NonNull AudioFrame frame) {
                 if (mVoiceRecognizer != null) {
-                    super.onVoice(data,size);
-                    mVoiceRecognizer.recognize(data, size);
+                    super.onVoice(frame);
+                    mVoiceRecognizer.recognize(frame);
                 }
             }
 
@@ -113,7 +124,7 @@ public class ConversationService extends VoiceTranslationService {
             public void onVoiceEnd() {
                 if (mVoiceRecognizer != null) {
                     super.onVoiceEnd();
-                    Log.e("recorder","onVoiceEnd");
+                    Tracer.instant(Tracer.CAPTURE, "onVoiceEnd");
                     // if the textRecognizer is not empty then it means that we have a result that has not been correctly recognized as final
                     if (!textRecognized.equals("")) {
                         onListenEnd();
@@ -128,7 +139,8 @@ public class ConversationService extends VoiceTranslationService {
             public void onListenEnd() {
                 if (mVoiceRecognizer != null) {
                     super.onListenEnd();
-                    Log.e("recorder","onListenEnd");
+                    Tracer.instant(Tracer.CAPTURE, "onListenEnd");
+                    recorderMetrics.onFinishRecognizing();
                     mVoiceRecognizer.finishRecognizing();
                 }
             }
@@ -148,7 +160,7 @@ public class ConversationService extends VoiceTranslationService {
                                         if (text != null) {
                                             GuiMessage guiMessage = new GuiMessage(new Message(global, text), true, true);
                                             // send the message
-                                            sendMessage(new ConversationMessage(new CloudApiText(text, language)));
+                                            sendMessage(new ConversationMessage(new CloudApiText(text, language)), null);
 
                                             notifyMessage(guiMessage);
                                             // we save every new message in the exchanged messages so that the fragment can restore them
@@ -175,13 +187,32 @@ public class ConversationService extends VoiceTranslationService {
                 global.getLanguage(false,new Global.GetLocaleListener() {
                     @Override
                     public void onSuccess(CustomLocale result) {
-                        String completeText = message.getText();
-                        int languageCodeSize = Integer.valueOf(completeText.substring(completeText.length() - 1));
-                        String text = completeText.substring(0, completeText.length() - (languageCodeSize + 1));
-                        String languageCode = completeText.substring(completeText.length() - (languageCodeSize + 1), completeText.length() - 1);
+                        String text;
+                        String languageCode;
+                        String includedTranslation = null;
+                        if ("t".equals(message.getHeader())) {
+                            // message sent with the translations in the languages of the peers (see sendMessage)
+                            try {
+                                JSONObject json = new JSONObject(message.getText());
+                                text = json.getString("text");
+                                languageCode = json.getString("language");
+                                JSONObject translations = json.optJSONObject("translations");
+                                if (translations != null && translations.has(result.getCode())) {
+                                    includedTranslation = translations.getString(result.getCode());
+                                }
+                            } catch (JSONException e) {
+                                e.printStackTrace();
+                                return;
+                            }
+                        } else {
+                            String completeText = message.getText();
+                            int languageCodeSize = Integer.valueOf(completeText.substring(completeText.length() - 1));
+                            text = completeText.substring(0, completeText.length() - (languageCodeSize + 1));
+                            languageCode = completeText.substring(completeText.length() - (languageCodeSize + 1), completeText.length() - 1);
+                        }
 
                         ConversationMessage conversationMessage = new ConversationMessage(message.getSender(), new CloudApiText(text, CustomLocale.getInstance(languageCode)));
-                        translator.translateMessage(conversationMessage, result, new Translator.TranslateMessageListener() {
+                        Translator.TranslateMessageListener translateMessageListener = new Translator.TranslateMessageListener() {
                             @Override
                             public void onTranslatedMessage(ConversationMessage conversationMessage) {
                                 speak(conversationMessage.getPayload().getText(), conversationMessage.getPayload().getLanguage());
@@ -196,7 +227,16 @@ public class ConversationService extends VoiceTranslationService {
                             public void onFailure(int[] reasons, long value) {
                                 ConversationService.super.notifyError(reasons, value);
                             }
-                        });
+                        };
+                        if (includedTranslation != null) {
+                            // the sender has already translated the message in our language
+                            Tracer.instant(Tracer.TRANSLATOR, "includedTranslation", includedTranslation.length());
+                            conversationMessage.getPayload().setText(includedTranslation);
+                            conversationMessage.getPayload().setLanguage(result);
+                            translateMessageListener.onTranslatedMessage(conversationMessage);
+                        } else {
+                            translator.translateMessage(conversationMessage, result, translateMessageListener);
+                        }
                     }
 
                     @Override
@@ -220,25 +260,50 @@ public class ConversationService extends VoiceTranslationService {
         translator = new Translator((Global) getApplication());
         mVoiceRecognizer = new Recognizer(ConversationService.this, false, new VoiceTranslationServiceRecognizerListener() {
             @Override
-            public void onSpeechRecognizedResult(String text, String languageCode, float confidenceScore, boolean isFinal) {
+            public void onSpeechRecognizedResult(final String text, String languageCode, float confidenceScore, boolean isFinal) {
+                // the results are always final, the interim ones arrive as deltas
+                textRecognized = "";  // to ensure that we continue to listen since in this case the result is automatically extracted
                 if (text != null && languageCode != null && !text.equals("")) {
-                    CustomLocale language = CustomLocale.getInstance(languageCode);
-                    GuiMessage guiMessage = new GuiMessage(new Message(global, text), true, isFinal);
-                    if (isFinal) {
-                        textRecognized = "";  // to ensure that we continue to listen since in this case the result is automatically extracted
-                        // send the message
-                        sendMessage(new ConversationMessage(new CloudApiText(text, language)));
-
-                        notifyMessage(guiMessage);
-                        // we save every new message in the exchanged messages so that the fragment can restore them
-                        addMessage(guiMessage);
-                    } else {
-                        notifyMessage(guiMessage);
-                        textRecognized = text;  // if it equals something then when calling voiceEnd we stop recognition
-                    }
+                    final CustomLocale language = CustomLocale.getInstance(languageCode);
+                    GuiMessage guiMessage = new GuiMessage(new Message(global, text), true, true);
+                    // send the message (in the main thread, like the speculations of the utterance)
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            HashMap<String, SpeculativeTranslator> utteranceSpeculativeTranslators = speculativeTranslators;
+                            speculativeTranslators = new HashMap<>();
+                            sendMessage(new ConversationMessage(new CloudApiText(text, language)), utteranceSpeculativeTranslators);
+                        }
+                    });
+
+                    notifyMessage(guiMessage);
+                    // we save every new message in the exchanged messages so that the fragment can restore them
+                    addMessage(guiMessage);
+                } else {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            cancelSpeculativeTranslations(speculativeTranslators);
+                        }
+                    });
                 }
             }
 
+            @Override
+            public void onSpeechRecognizedDelta(TranscriptDelta delta, String languageCode) {
+                textRecognized = delta.applyTo(textRecognized);  // if it equals something then when calling voiceEnd we stop recognition
+                notifyPreviewDelta(delta);
+                final String text = textRecognized;
+                final int stableLength = delta.getStableLength();
+                final CustomLocale language = CustomLocale.getInstance(languageCode);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        speculate(text, stableLength, language);
+                    }
+                });
+            }
+
             @Override
             public void onError(int[] reasons, long value) {
                 ConversationService.super.notifyError(reasons, value);
@@ -247,9 +312,129 @@ public class ConversationService extends VoiceTranslationService {
         mBluetoothHelper.start();
     }
 
-    private void sendMessage(ConversationMessage conversationMessage) {
-        String languageCode = conversationMessage.getPayload().getLanguage().getCode();
-        global.getBluetoothCommunicator().sendMessage(new Message(global, conversationMessage.getPayload().getText() + languageCode + languageCode.length()));
+    @Override
+    protected void setStandbyRecognitionAllowed(boolean allowed) {
+        if (mVoiceRecognizer != null) {
+            mVoiceRecognizer.setStandbyAllowed(allowed);
+        }
+    }
+
+    /**
+     * Translates the stable part of the interim results in the languages of the peers, so when the final result arrives
+     * only its last words have to be translated (see {@link SpeculativeTranslator}), used only with the sender translation.
+     * The speculativeTranslators are used only in the main thread (the results of the recognizer are posted to it).
+     */
+    private void speculate(String text, int stableLength, CustomLocale language) {
+        if (mVoiceRecognizer == null) {
+            return;  // delta posted before the destruction of the service
+        }
+        if (speculativeTranslators.isEmpty()) {
+            for (CustomLocale targetLanguage : getTargetLanguages(language)) {
+                speculativeTranslators.put(targetLanguage.getCode(), new SpeculativeTranslator(translator, language, targetLanguage));
+            }
+        }
+        for (SpeculativeTranslator speculativeTranslator : speculativeTranslators.values()) {
+            speculativeTranslator.onInterimText(text, stableLength);
+        }
+    }
+
+    private void cancelSpeculativeTranslations(HashMap<String, SpeculativeTranslator> speculativeTranslators) {
+        for (SpeculativeTranslator speculativeTranslator : speculativeTranslators.values()) {
+            speculativeTranslator.cancel();
+        }
+        speculativeTranslators.clear();
+    }
+
+    /**
+     * @return the languages in which the messages have to be translated before sending them, empty if the sender translation
+     * is disabled or some peers did not send their language.
+     */
+    private ArrayList<CustomLocale> getTargetLanguages(CustomLocale language) {
+        HashSet<String> peersLanguages = null;
+        if (global.isSenderTranslationEnabled()) {
+            peersLanguages = global.getBluetoothCommunicator().getConnectedPeersLanguages();
+        }
+        final ArrayList<CustomLocale> targetLanguages = new ArrayList<>();
+        if (peersLanguages != null) {
+            for (String peerLanguageCode : peersLanguages) {
+                CustomLocale peerLanguage = CustomLocale.getInstance(peerLanguageCode);
+                if (!translator.isSameLanguage(peerLanguage, language)) {  // the peers with our language (also of another country) do not translate
+                    targetLanguages.add(peerLanguage);
+                }
+            }
+        }
+        return targetLanguages;
+    }
+
+    /**
+     * @param speculativeTranslators the translators of the speculations done during the recognition of the message, null if it has been written.
+     */
+    private void sendMessage(ConversationMessage conversationMessage, @Nullable HashMap<String, SpeculativeTranslator> speculativeTranslators) {
+        final String text = conversationMessage.getPayload().getText();
+        final CustomLocale language = conversationMessage.getPayload().getLanguage();
+        final String languageCode = language.getCode();
+        final ArrayList<CustomLocale> targetLanguages = getTargetLanguages(language);
+        if (targetLanguages.isEmpty()) {
+            if (speculativeTranslators != null) {
+                cancelSpeculativeTranslations(speculativeTranslators);
+            }
+            // the text is sent without translations (the sender translation is disabled or some peers did not send their language)
+            global.getBluetoothCommunicator().sendMessage(new Message(global, text + languageCode + languageCode.length()));
+            return;
+        }
+        // the text is translated once for each language of the peers (the translations are grouped by the TranslationBatcher)
+        // and is sent when all the translations are completed or after SENDER_TRANSLATION_TIMEOUT (if a translation is waiting for
+        // the token or has been cancelled), the failed and missing ones are omitted and translated by the receivers
+        final HashMap<String, String> translations = new HashMap<>();
+        final int[] pendingTranslations = {targetLanguages.size()};
+        final Runnable sendTranslatedMessage = new Runnable() {
+            private boolean sent = false;
+
+            @Override
+            public void run() {  // always called in the main thread
+                if (!sent) {
+                    sent = true;
+                    mainHandler.removeCallbacks(this);
+                    if (pendingTranslations[0] > 0) {
+                        Tracer.instant(Tracer.TRANSLATOR, "senderTranslationTimeout", pendingTranslations[0]);
+                    }
+                    global.getBluetoothCommunicator().sendTranslatedMessage(text, languageCode, new HashMap<>(translations));
+                }
+            }
+        };
+        mainHandler.postDelayed(sendTranslatedMessage, SENDER_TRANSLATION_TIMEOUT);
+        for (final CustomLocale targetLanguage : targetLanguages) {
+            SpeculativeTranslator speculativeTranslator = null;
+            if (speculativeTranslators != null) {
+                speculativeTranslator = speculativeTranslators.remove(targetLanguage.getCode());
+            }
+            if (speculativeTranslator == null) {
+                // without speculations the text is translated entirely
+                speculativeTranslator = new SpeculativeTranslator(translator, language, targetLanguage);
+            }
+            speculativeTranslator.translateFinal(text, new Translator.TranslateListener() {
+                @Override
+                public void onTranslatedText(String translatedText, CustomLocale languageOfText) {
+                    translations.put(targetLanguage.getCode(), translatedText);
+                    onTranslationCompleted();
+                }
+
+                @Override
+                public void onFailure(int[] reasons, long value) {
+                    onTranslationCompleted();
+                }
+
+                private void onTranslationCompleted() {  // always called in the main thread
+                    pendingTranslations[0]--;
+                    if (pendingTranslations[0] == 0) {
+                        sendTranslatedMessage.run();
+                    }
+                }
+            });
+        }
+        if (speculativeTranslators != null) {
+            cancelSpeculativeTranslations(speculativeTranslators);  // of the peers disconnected during the recognition
+        }
     }
 
     public String getMyPeerName() {
@@ -310,6 +495,7 @@ public class ConversationService extends VoiceTranslationService {
         // Stop Cloud Speech API
         mVoiceRecognizer.destroy();
         mVoiceRecognizer = null;
+        cancelSpeculativeTranslations(speculativeTranslators);
         //stop Bluetooth helper
         mBluetoothHelper.stop();
         super.onDestroy();
@@ -20,6 +20,7 @@ import android.bluetooth.BluetoothAdapter;
 import android.graphics.Bitmap;
 import android.os.Handler;
 import android.os.Looper;
+import androidx.annotation.Nullable;
 
 import com.bluetooth.communicator.BluetoothCommunicator;
 import com.bluetooth.communicator.Message;
@@ -28,9 +29,17 @@ import com.gallery.imageselector.GalleryImageSelector;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import nie.translator.rtranslatordevedition.Global;
+import nie.translator.rtranslatordevedition.tools.CustomLocale;
 import nie.translator.rtranslatordevedition.tools.Tools;
+import nie.translator.rtranslatordevedition.tools.Tracer;
 import nie.translator.rtranslatordevedition.tools.gui.peers.GuiPeer;
 import nie.translator.rtranslatordevedition.voice_translation._conversation_mode.communication.recent_peer.RecentPeer;
 import nie.translator.rtranslatordevedition.voice_translation._conversation_mode.communication.recent_peer.RecentPeersDataManager;
@@ -43,6 +52,7 @@ public class ConversationBluetoothCommunicator {
     private Handler mainHandler;
     private ArrayList<Peer> connectingPeers = new ArrayList<>();
     private ArrayList<GuiPeer> connectedPeers = new ArrayList<>();
+    private final HashMap<String, String> peersLanguages = new HashMap<>();  // code of the personal language announced by each peer (key: unique name)
 
 
     public ConversationBluetoothCommunicator(final Global global, String name, int strategy) {
@@ -107,12 +117,14 @@ public class ConversationBluetoothCommunicator {
 
             @Override
             public void onConnectionSuccess(final Peer peer, final int source) {
+                Tracer.instant(Tracer.BLUETOOTH, "connectionSuccess", peer.getUniqueName());
                 connectingPeers.remove(peer);
                 GuiPeer guiPeer = new GuiPeer(peer, null);
                 connectedPeers.add(guiPeer);
                 if (source == BluetoothCommunicator.CLIENT) {
                     sendID(peer);
                 }
+                sendLanguage(peer);
 
                 // if exist the corresponding recent peer, we take the image from him
                 global.getRecentPeersDataManager().getRecentPeerByName(peer.getUniqueName(), new RecentPeersDataManager.RecentPeerListener() {
@@ -138,6 +150,7 @@ public class ConversationBluetoothCommunicator {
 
             @Override
             public void onConnectionLost(Peer peer) {
+                Tracer.instant(Tracer.BLUETOOTH, "connectionLost", peer.getUniqueName());
                 int index = connectedPeers.indexOf(peer);
                 if (index != -1) {
                     connectedPeers.set(index, new GuiPeer(peer, connectedPeers.get(index).getUserImage()));
@@ -147,6 +160,7 @@ public class ConversationBluetoothCommunicator {
 
             @Override
             public void onConnectionResumed(Peer peer) {
+                Tracer.instant(Tracer.BLUETOOTH, "connectionResumed", peer.getUniqueName());
                 int index = connectedPeers.indexOf(peer);   // the mac of the peer is different from the connectedPeer
                 if (index != -1) {
                     connectedPeers.set(index, new GuiPeer(peer, connectedPeers.get(index).getUserImage()));
@@ -157,10 +171,18 @@ public class ConversationBluetoothCommunicator {
             @Override
             public void onMessageReceived(final Message message, int source) {
                 switch (message.getHeader()) {
-                    case "m": {
+                    case "m":
+                    case "t": {
+                        Tracer.instant(Tracer.BLUETOOTH, "messageReceived", message.getText().length());
                         notifyMessageReceived(message);
                         break;
                     }
+                    case "l": {
+                        synchronized (peersLanguages) {
+                            peersLanguages.put(message.getSender().getUniqueName(), message.getText());
+                        }
+                        break;
+                    }
                     case "d": {
                         if (source == BluetoothCommunicator.SERVER) {
                             sendID(message.getSender());
@@ -231,6 +253,12 @@ public class ConversationBluetoothCommunicator {
                             }
                         }
                     });
+                    synchronized (peersLanguages) {
+                        String languageCode = peersLanguages.remove(peer.getUniqueName());
+                        if (languageCode != null) {
+                            peersLanguages.put(newPeer.getUniqueName(), languageCode);
+                        }
+                    }
                 }
                 int index = connectedPeers.indexOf(peer);
                 if (index != -1) {
@@ -243,6 +271,9 @@ public class ConversationBluetoothCommunicator {
             @Override
             public void onDisconnected(Peer peer, int peersLeft) {
                 connectedPeers.remove(new GuiPeer(peer, null));   // peers during reconnection can change macs without notification if reconnection fails
+                synchronized (peersLanguages) {
+                    peersLanguages.remove(peer.getUniqueName());
+                }
                 notifyDisconnection(new GuiPeer(peer, null), peersLeft);
             }
 
@@ -298,9 +329,79 @@ public class ConversationBluetoothCommunicator {
 
     public void sendMessage(Message message) {
         message.setHeader("m");
+        Tracer.instant(Tracer.BLUETOOTH, "sendMessage", message.getText().length());
         bluetoothCommunicator.sendMessage(message);
     }
 
+    /**
+     * Sends a message with the text already translated in the personal languages of the other peers, so the peers whose language
+     * is included do not translate it (header "t", the text is a json object with the text, its language and the translations).
+     *
+     * @param translations the translations of the text, the keys are the codes of the languages announced by the peers.
+     */
+    public void sendTranslatedMessage(String text, String languageCode, HashMap<String, String> translations) {
+        try {
+            JSONObject jsonTranslations = new JSONObject();
+            for (Map.Entry<String, String> translation : translations.entrySet()) {
+                jsonTranslations.put(translation.getKey(), translation.getValue());
+            }
+            JSONObject json = new JSONObject();
+            json.put("text", text);
+            json.put("language", languageCode);
+            json.put("translations", jsonTranslations);
+            Message message = new Message(global, json.toString());
+            message.setHeader("t");
+            Tracer.instant(Tracer.BLUETOOTH, "sendTranslatedMessage", translations.size());
+            bluetoothCommunicator.sendMessage(message);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends the code of the personal language to the receiver (header "l"), so that the peers know the languages in which the sent messages
+     * have to be translated (see {@link #getConnectedPeersLanguages()}).
+     *
+     * @param receiver the peer to which the language is sent, if null it is sent to all the connected peers.
+     */
+    public void sendLanguage(@Nullable final Peer receiver) {
+        global.getLanguage(true, new Global.GetLocaleListener() {
+            @Override
+            public void onSuccess(CustomLocale result) {
+                if (receiver != null) {
+                    bluetoothCommunicator.sendMessage(new Message(global, "l", result.getCode(), receiver));
+                } else {
+                    Message message = new Message(global, result.getCode());
+                    message.setHeader("l");
+                    bluetoothCommunicator.sendMessage(message);
+                }
+            }
+
+            @Override
+            public void onFailure(int[] reasons, long value) {
+            }
+        });
+    }
+
+    /**
+     * @return the codes of the personal languages of the connected peers (without repetitions), or null if some peers
+     * have not sent their language (for example because they use a version of the app that does not send it).
+     */
+    @Nullable
+    public HashSet<String> getConnectedPeersLanguages() {
+        HashSet<String> languages = new HashSet<>();
+        synchronized (peersLanguages) {
+            for (GuiPeer peer : connectedPeers) {
+                String languageCode = peersLanguages.get(peer.getUniqueName());
+                if (languageCode == null) {
+                    return null;
+                }
+                languages.add(languageCode);
+            }
+        }
+        return languages;
+    }
+
     private void sendID(final Peer receiver) {
         global.getMyID(new Global.MyIDListener() {
             @Override
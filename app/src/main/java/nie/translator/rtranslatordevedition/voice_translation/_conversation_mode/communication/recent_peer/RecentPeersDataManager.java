@@ -16,12 +16,10 @@
 
 package nie.translator.rtranslatordevedition.voice_translation._conversation_mode.communication.recent_peer;
 
-import android.content.Context;
 import android.graphics.Bitmap;
 import android.os.AsyncTask;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.room.Room;
 import java.util.ArrayList;
 import nie.translator.rtranslatordevedition.database.AppDatabase;
 import nie.translator.rtranslatordevedition.database.dao.MyDao;
@@ -32,8 +30,11 @@ public class RecentPeersDataManager {
     private AppDatabase database;
     private ArrayList<RecentPeer> cachedRecentPeers;
 
-    public RecentPeersDataManager(Context context) {
-        database = Room.databaseBuilder(context, AppDatabase.class, "consumption_credit_dp").build();
+    /**
+     * @param database the database of the app, obtained with {@link nie.translator.rtranslatordevedition.Global#getDatabase()}.
+     */
+    public RecentPeersDataManager(AppDatabase database) {
+        this.database = database;
     }
 
     public void insertRecentPeer(@NonNull final String deviceId, final String uniqueName, final Bitmap userImage) {
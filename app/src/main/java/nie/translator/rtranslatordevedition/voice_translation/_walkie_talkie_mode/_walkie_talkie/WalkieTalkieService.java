@@ -37,6 +37,7 @@ import nie.translator.rtranslatordevedition.voice_translation._walkie_talkie_mod
 import nie.translator.rtranslatordevedition.voice_translation._walkie_talkie_mode.recognizer_services.SecondLanguageRecognizerService;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.CloudApiResult;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.Translator;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.AudioFrame;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.Recorder;
 
 
@@ -55,6 +56,8 @@ public class WalkieTalkieService extends VoiceTranslationService {
     private CustomLocale secondLanguage;
     private Translator.TranslateListener firstResultTranslateListener;
     private Translator.TranslateListener secondResultTranslateListener;
+    // if true both languages are recognized by the first RecognizerService with a single stream, which detects the language of the results
+    private boolean singleStream;
     // sending and receiving messages to and from children
     private ArrayList<CloudApiResult> firstLanguageQueue = new ArrayList<>();
     private ArrayList<CloudApiResult> secondLanguageQueue = new ArrayList<>();
@@ -68,6 +71,7 @@ public class WalkieTalkieService extends VoiceTranslationService {
     public void onCreate() {
         super.onCreate();
         translator = new Translator((Global) getApplication());
+        singleStream = ((Global) getApplication()).isSingleStreamWalkieTalkieEnabled();
         clientHandler = new Handler(new Handler.Callback() {
             @Override
             public boolean handleMessage(android.os.Message message) {
@@ -79,14 +83,22 @@ public class WalkieTalkieService extends VoiceTranslationService {
                                 CustomLocale newFirstLanguage = (CustomLocale) message.getData().getSerializable("language");
                                 if (!firstLanguage.equals(newFirstLanguage)) {
                                     firstLanguage = newFirstLanguage;
-                                    firstLanguageServiceCommunicator.changeLanguage(firstLanguage);
+                                    if (singleStream) {
+                                        firstLanguageServiceCommunicator.changeLanguage(firstLanguage, getAlternativeLanguages());
+                                    } else {
+                                        firstLanguageServiceCommunicator.changeLanguage(firstLanguage);
+                                    }
                                 }
                                 break;
                             case CHANGE_SECOND_LANGUAGE:
                                 CustomLocale newSecondLanguage = (CustomLocale) message.getData().getSerializable("language");
                                 if (!secondLanguage.equals(newSecondLanguage)) {
                                     secondLanguage = newSecondLanguage;
-                                    secondLanguageServiceCommunicator.changeLanguage(secondLanguage);
+                                    if (singleStream) {
+                                        firstLanguageServiceCommunicator.changeLanguage(firstLanguage, getAlternativeLanguages());
+                                    } else {
+                                        secondLanguageServiceCommunicator.changeLanguage(secondLanguage);
+                                    }
                                 }
                                 break;
                             case GET_FIRST_LANGUAGE:
@@ -136,8 +148,12 @@ public class WalkieTalkieService extends VoiceTranslationService {
                     @Override
                     public void onResult(CloudApiResult result) {
                         super.onResult(result);
-                        firstLanguageQueue.add(result);
-                        compareResults();
+                        if (singleStream) {
+                            translateDetectedResult(result);
+                        } else {
+                            firstLanguageQueue.add(result);
+                            compareResults();
+                        }
                     }
                 });
 
@@ -179,26 +195,33 @@ public class WalkieTalkieService extends VoiceTranslationService {
                 int sampleRate = WalkieTalkieService.super.getVoiceRecorderSampleRate();
                 if(sampleRate!=0) {
                     firstLanguageServiceCommunicator.startRecognition(sampleRate);
-                    secondLanguageServiceCommunicator.startRecognition(sampleRate);
+                    if (!singleStream) {
+                        secondLanguageServiceCommunicator.startRecognition(sampleRate);
+                    }
                     // we notify the client
                     WalkieTalkieService.super.notifyVoiceStart();
                 }
             }
 
             @Override
-            public void onVoice(@NonNull byte[] data, int size) {
-                super.onVoice(data,size);
-                // children are asked to recognize the data we send
-                firstLanguageServiceCommunicator.recognize(data, size);
-                secondLanguageServiceCommunicator.recognize(data, size);
+            public void onVoice(@NonNull AudioFrame frame) {
+                super.onVoice(frame);
+                // children are asked to recognize the data we send (the same frame is shared without copies)
+                firstLanguageServiceCommunicator.recognize(frame);
+                if (!singleStream) {
+                    secondLanguageServiceCommunicator.recognize(frame);
+                }
             }
 
             @Override
             public void onVoiceEnd() {
                 super.onVoiceEnd();
                 // we ask to the children to stop the acknowledgment
+                recorderMetrics.onFinishRecognizing();
                 firstLanguageServiceCommunicator.stopRecognition();
-                secondLanguageServiceCommunicator.stopRecognition();
+                if (!singleStream) {
+                    secondLanguageServiceCommunicator.stopRecognition();
+                }
                 // we notify the client
                 WalkieTalkieService.super.notifyVoiceEnd();
             }
@@ -247,30 +270,92 @@ public class WalkieTalkieService extends VoiceTranslationService {
         if(finalFirstLanguage==null || finalSecondLanguage==null ) {  //se è il primo avvio
             //create parameters for starting
             Intent intent1 = new Intent(this, FirstLanguageRecognizerService.class);
-            Intent intent2 = new Intent(this, SecondLanguageRecognizerService.class);
             intent1.putExtra("language", firstLanguage);
-            intent2.putExtra("language", secondLanguage);
-            //bind services
-            bindService(intent1, firstLanguageConnection, Service.BIND_AUTO_CREATE);
-            bindService(intent2, secondLanguageConnection, Service.BIND_AUTO_CREATE);
+            if (singleStream) {
+                // a single service recognizes both languages
+                intent1.putExtra("alternativeLanguages", getAlternativeLanguages());
+                bindService(intent1, firstLanguageConnection, Service.BIND_AUTO_CREATE);
+            } else {
+                Intent intent2 = new Intent(this, SecondLanguageRecognizerService.class);
+                intent2.putExtra("language", secondLanguage);
+                //bind services
+                bindService(intent1, firstLanguageConnection, Service.BIND_AUTO_CREATE);
+                bindService(intent2, secondLanguageConnection, Service.BIND_AUTO_CREATE);
+            }
         }else{
             //change languages
-            firstLanguageServiceCommunicator.changeLanguage(firstLanguage);
-            secondLanguageServiceCommunicator.changeLanguage(secondLanguage);
+            if (singleStream) {
+                firstLanguageServiceCommunicator.changeLanguage(firstLanguage, getAlternativeLanguages());
+            } else {
+                firstLanguageServiceCommunicator.changeLanguage(firstLanguage);
+                secondLanguageServiceCommunicator.changeLanguage(secondLanguage);
+            }
         }
         return super.onStartCommand(intent, flags, startId);
     }
 
+    @Override
+    public void startVoiceRecorder() {
+        super.startVoiceRecorder();
+        // the children open in advance the streams of the next recognition, so when the voice starts they only have to send the audio
+        int sampleRate = getVoiceRecorderSampleRate();
+        if (sampleRate != 0) {
+            firstLanguageServiceCommunicator.prepareRecognition(sampleRate);
+            if (!singleStream) {
+                secondLanguageServiceCommunicator.prepareRecognition(sampleRate);
+            }
+        }
+    }
+
+    @Override
+    protected void setStandbyRecognitionAllowed(boolean allowed) {
+        firstLanguageServiceCommunicator.setStandbyRecognitionAllowed(allowed);
+        if (!singleStream) {
+            secondLanguageServiceCommunicator.setStandbyRecognitionAllowed(allowed);
+        }
+        // when the app returns in foreground the recorder is already active, so the streams are prepared here
+        int sampleRate = getVoiceRecorderSampleRate();
+        if (allowed && sampleRate != 0) {
+            firstLanguageServiceCommunicator.prepareRecognition(sampleRate);
+            if (!singleStream) {
+                secondLanguageServiceCommunicator.prepareRecognition(sampleRate);
+            }
+        }
+    }
+
     @Override
     public void onDestroy() {
-        //stop the two services that recognizes voice
+        //stop the services that recognize voice
         firstLanguageServiceCommunicator.stopCommunication();
-        secondLanguageServiceCommunicator.stopCommunication();
         unbindService(firstLanguageConnection);
-        unbindService(secondLanguageConnection);
+        if (!singleStream) {
+            secondLanguageServiceCommunicator.stopCommunication();
+            unbindService(secondLanguageConnection);
+        }
         super.onDestroy();
     }
 
+    private ArrayList<CustomLocale> getAlternativeLanguages() {
+        ArrayList<CustomLocale> alternativeLanguages = new ArrayList<>();
+        alternativeLanguages.add(secondLanguage);
+        return alternativeLanguages;
+    }
+
+    /**
+     * Translates a result of the single stream recognition in the other language than the one detected by the Recognizer,
+     * if the detected language is neither of the two (the server detects only between them, but it can return a variant) it is treated as the first.
+     */
+    private void translateDetectedResult(CloudApiResult result) {
+        if (result.getText() == null || result.getText().equals("")) {
+            return;
+        }
+        if (result.getLanguage() != null && result.getLanguage().equalsLanguage(secondLanguage) && !secondLanguage.equalsLanguage(firstLanguage)) {
+            translator.translate(result.getText(), firstLanguage, secondResultTranslateListener);
+        } else {
+            translator.translate(result.getText(), secondLanguage, firstResultTranslateListener);
+        }
+    }
+
     private void
     compareResults() {
         if (firstLanguageQueue.size() >= 1 && secondLanguageQueue.size() >= 1) {
@@ -31,8 +31,10 @@ import nie.translator.rtranslatordevedition.tools.services_communication.Service
 import com.bluetooth.communicator.Peer;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.CloudApiResult;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation.Translator;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.AudioFrame;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.Recognizer;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.RecognizerListener;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.TranscriptDelta;
 
 
 public abstract class RecognizerService extends GeneralService {
@@ -41,6 +43,8 @@ public abstract class RecognizerService extends GeneralService {
     public static final int RECOGNIZE = 1;
     public static final int STOP_RECOGNITION = 2;
     public static final int CHANGE_LANGUAGE = 5;
+    public static final int PREPARE_RECOGNITION = 6;
+    public static final int SET_STANDBY_ALLOWED = 7;
     // callbacks
     public static final int ON_RESULT = 2;
     // objects
@@ -48,6 +52,7 @@ public abstract class RecognizerService extends GeneralService {
     private Recognizer mVoiceRecognizer;
     private Handler fatherHandler;
     private String languageCode="";
+    private String[] alternativeLanguageCodes = new String[0];  // if not empty the Recognizer detects the language between these and languageCode
 
 
     @Override
@@ -62,12 +67,27 @@ public abstract class RecognizerService extends GeneralService {
                     switch (command) {
                         case START_RECOGNITION: {
                             if(languageCode.length()>0) {
-                                mVoiceRecognizer.startRecognizing(languageCode,data.getInt("sampleRate"), true);
+                                mVoiceRecognizer.startRecognizing(languageCode, alternativeLanguageCodes, data.getInt("sampleRate"), true);
                             }
                             break;
                         }
                         case RECOGNIZE: {
-                            mVoiceRecognizer.recognize(data.getByteArray("data"), data.getInt("size"));
+                            // the frame has been retained by the RecognizerServiceCommunicator
+                            AudioFrame frame = (AudioFrame) message.obj;
+                            if (frame != null) {
+                                mVoiceRecognizer.recognize(frame);
+                                frame.release();
+                            }
+                            break;
+                        }
+                        case PREPARE_RECOGNITION: {
+                            if(languageCode.length()>0) {
+                                mVoiceRecognizer.prepareRecognizing(languageCode, alternativeLanguageCodes, data.getInt("sampleRate"));
+                            }
+                            break;
+                        }
+                        case SET_STANDBY_ALLOWED: {
+                            mVoiceRecognizer.setStandbyAllowed(data.getBoolean("value"));
                             break;
                         }
                         case STOP_RECOGNITION: {
@@ -80,6 +100,8 @@ public abstract class RecognizerService extends GeneralService {
                                 public void run() {
                                     super.run();
                                     languageCode=data.getString("language");
+                                    String[] alternatives = data.getStringArray("alternativeLanguages");
+                                    alternativeLanguageCodes = alternatives != null ? alternatives : new String[0];
                                 }
                             }.start();
                             break;
@@ -96,20 +118,30 @@ public abstract class RecognizerService extends GeneralService {
 
     @Nullable
     @Override
+    @SuppressWarnings("unchecked")
     public IBinder onBind(Intent intent) {
         // receive the language to listen with
         languageCode = ((CustomLocale) intent.getSerializableExtra("language")).getCode();
+        alternativeLanguageCodes = getCodes((ArrayList<CustomLocale>) intent.getSerializableExtra("alternativeLanguages"));
 
         // start Cloud Speech API
         mVoiceRecognizer = new Recognizer(this, true, new RecognizerListener() {
             @Override
-            public void onSpeechRecognizedResult(final String text, String languageCode, final float confidenceScore, final boolean isFinal) {
+            public void onSpeechRecognizedResult(final String text, final String detectedLanguageCode, final float confidenceScore, final boolean isFinal) {
                 new Thread("elaborateSpeechResult") {
                     @Override
                     public void run() {
                         super.run();
                         // the result is always final
-                        if (text != null && !text.equals("")) {
+                        if (text != null && !text.equals("") && alternativeLanguageCodes.length > 0) {
+                            // the language has already been detected by the Recognizer
+                            CloudApiResult result = new CloudApiResult(text, confidenceScore, isFinal);
+                            result.setLanguage(CustomLocale.getInstance(detectedLanguageCode));
+                            Bundle bundle = new Bundle();
+                            bundle.putInt("callback", ON_RESULT);
+                            bundle.putSerializable("result", result);
+                            RecognizerService.super.notifyToClient(bundle);
+                        } else if (text != null && !text.equals("")) {
                             translator.detectLanguage(new CloudApiResult(text, confidenceScore, isFinal), new Translator.DetectLanguageListener() {
                                 @Override
                                 public void onDetectedText(CloudApiResult result) {
@@ -136,6 +168,11 @@ public abstract class RecognizerService extends GeneralService {
                 }.start();
             }
 
+            @Override
+            public void onSpeechRecognizedDelta(TranscriptDelta delta, String languageCode) {
+                // not called, only the final result is used
+            }
+
             @Override
             public void onError(int[] reasons, long value) {
                 notifyError(reasons,value);
@@ -144,6 +181,17 @@ public abstract class RecognizerService extends GeneralService {
         return new Messenger(fatherHandler).getBinder();   // send the messenger with which the father will send messages to this service
     }
 
+    private static String[] getCodes(@Nullable ArrayList<CustomLocale> languages) {
+        if (languages == null) {
+            return new String[0];
+        }
+        String[] codes = new String[languages.size()];
+        for (int i = 0; i < languages.size(); i++) {
+            codes[i] = languages.get(i).getCode();
+        }
+        return codes;
+    }
+
     @Override
     public boolean onUnbind(Intent intent) {
         return super.onUnbind(intent);
@@ -211,14 +259,37 @@ public abstract class RecognizerService extends GeneralService {
             super.sendToService(bundle);
         }
 
-        public void recognize(byte[] data, int size) {
+        /**
+         * Opens in advance the stream of the next recognition, so the recognition starts without waiting for the connection.
+         */
+        public void prepareRecognition(int sampleRate) {
+            Bundle bundle = new Bundle();
+            bundle.putInt("command", PREPARE_RECOGNITION);
+            bundle.putInt("sampleRate", sampleRate);
+            super.sendToService(bundle);
+        }
+
+        /**
+         * With false the standby stream is closed and no longer prepared, until this is called with true.
+         */
+        public void setStandbyRecognitionAllowed(boolean allowed) {
             Bundle bundle = new Bundle();
-            bundle.putInt("command", RecognizerService.RECOGNIZE);
-            bundle.putByteArray("data", data);
-            bundle.putInt("size", size);
+            bundle.putInt("command", SET_STANDBY_ALLOWED);
+            bundle.putBoolean("value", allowed);
             super.sendToService(bundle);
         }
 
+        /**
+         * The frame is retained until the service has passed it to its Recognizer.
+         */
+        public void recognize(AudioFrame frame) {
+            if (isCommunicating()) {
+                Bundle bundle = new Bundle();
+                bundle.putInt("command", RecognizerService.RECOGNIZE);
+                super.sendToService(bundle, frame.retain());
+            }
+        }
+
         public void stopRecognition() {
             Bundle bundle = new Bundle();
             bundle.putInt("command", STOP_RECOGNITION);
@@ -232,6 +303,18 @@ public abstract class RecognizerService extends GeneralService {
             super.sendToService(bundle);
         }
 
+        /**
+         * Changes the language of the recognition and the alternative languages, between which the Recognizer detects the language
+         * of each result (so the languages of the results are not detected with the Translator).
+         */
+        public void changeLanguage(CustomLocale language, ArrayList<CustomLocale> alternativeLanguages) {
+            Bundle bundle = new Bundle();
+            bundle.putInt("command", CHANGE_LANGUAGE);
+            bundle.putString("language", language.getCode());
+            bundle.putStringArray("alternativeLanguages", getCodes(alternativeLanguages));
+            super.sendToService(bundle);
+        }
+
         public void addCallback(ServiceCallback callback) {
             clientCallbacks.add((RecognizerServiceCallback) callback);
         }
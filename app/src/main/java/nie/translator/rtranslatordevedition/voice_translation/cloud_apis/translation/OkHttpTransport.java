@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import androidx.annotation.Nullable;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.util.StreamingContent;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import nie.translator.rtranslatordevedition.tools.Tracer;
+import okio.BufferedSink;
+
+
+/**
+ * HttpTransport of the Translate clients (see {@link Translator#createTranslateClient(nie.translator.rtranslatordevedition.Global)}) that executes
+ * the requests with a single OkHttpClient instead of a new HttpURLConnection for each request, so all the requests share its pool of connections:
+ * the connections are kept alive between the translations (a translation does not pay the TCP and TLS handshakes if the previous one is recent),
+ * they use HTTP/2 when the server supports it (one connection for all the concurrent requests) and the first one can be opened before
+ * the first translation with {@link #prewarm(String)}. The responses are compressed with gzip (requested by the google client or, if it does not,
+ * by OkHttp). The client has the timeouts that the HttpRequestInitializer of the Translate clients sets on every request, so the requests use
+ * it directly; a request with other timeouts uses a copy of the client with them.
+ * There is one transport for all the process, obtained with {@link nie.translator.rtranslatordevedition.Global#getTranslateTransport()}.
+ */
+public class OkHttpTransport extends HttpTransport {
+    public static final int MAX_IDLE_CONNECTIONS = TranslatorExecutor.THREADS;  // with HTTP/1.1 a connection for each thread that can execute a request
+    public static final long KEEP_ALIVE_MILLIS = 5 * 60 * 1000;  // 5 minutes
+    private final OkHttpClient client;
+
+    public OkHttpTransport() {
+        client = new OkHttpClient();
+        client.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MILLIS));
+        client.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        client.setConnectTimeout(Translator.CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        client.setReadTimeout(Translator.READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        client.setWriteTimeout(Translator.READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) {
+        return new OkHttpRequest(method, url);
+    }
+
+    /**
+     * Opens in background a connection with the server of the url (with a GET request whose response is ignored), so it is already
+     * in the pool when the first request arrives. If the pool has already a connection with the server the request reuses it.
+     */
+    public void prewarm(String url) {
+        final long startTime = System.nanoTime();
+        client.newCall(new Request.Builder().url(url).build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                Tracer.instant(Tracer.TRANSLATOR, "prewarmFailed", e.toString());
+            }
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                response.body().bytes();  // the response is read entirely, otherwise the connection would be closed instead of returning to the pool
+                Tracer.instant(Tracer.TRANSLATOR, "prewarmed", (System.nanoTime() - startTime) / 1000000);
+            }
+        });
+    }
+
+    /**
+     * Closes the idle connections, the transport can still be used.
+     */
+    @Override
+    public void shutdown() {
+        client.getConnectionPool().evictAll();
+    }
+
+    private class OkHttpRequest extends LowLevelHttpRequest {
+        private final String method;
+        private final Request.Builder builder;
+        private int connectTimeout = Translator.CONNECT_TIMEOUT_MILLIS;
+        private int readTimeout = Translator.READ_TIMEOUT_MILLIS;
+
+        private OkHttpRequest(String method, String url) {
+            this.method = method;
+            this.builder = new Request.Builder().url(url);
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            builder.addHeader(name, value);
+        }
+
+        @Override
+        public void setTimeout(int connectTimeout, int readTimeout) {
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            RequestBody body = null;
+            final StreamingContent content = getStreamingContent();
+            if (content != null) {
+                final MediaType contentType = getContentType() != null ? MediaType.parse(getContentType()) : null;
+                final long contentLength = getContentLength();
+                body = new RequestBody() {
+                    @Override
+                    public MediaType contentType() {
+                        return contentType;
+                    }
+
+                    @Override
+                    public long contentLength() {
+                        return contentLength;
+                    }
+
+                    @Override
+                    public void writeTo(BufferedSink sink) throws IOException {
+                        content.writeTo(sink.outputStream());
+                    }
+                };
+                if (getContentEncoding() != null) {
+                    builder.header("Content-Encoding", getContentEncoding());
+                }
+            } else if (!method.equals("GET") && !method.equals("HEAD")) {
+                body = RequestBody.create(null, new byte[0]);  // OkHttp does not accept a POST or a PUT without body
+            }
+            builder.method(method, body);
+
+            OkHttpClient requestClient = client;
+            if (connectTimeout != Translator.CONNECT_TIMEOUT_MILLIS || readTimeout != Translator.READ_TIMEOUT_MILLIS) {
+                // the copy of the client shares the pool of connections
+                requestClient = client.clone();
+                requestClient.setConnectTimeout(connectTimeout, TimeUnit.MILLISECONDS);
+                requestClient.setReadTimeout(readTimeout, TimeUnit.MILLISECONDS);
+                requestClient.setWriteTimeout(readTimeout, TimeUnit.MILLISECONDS);
+            }
+            return new OkHttpResponse(requestClient.newCall(builder.build()).execute());
+        }
+    }
+
+    private static class OkHttpResponse extends LowLevelHttpResponse {
+        private final Response response;
+
+        private OkHttpResponse(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return response.body().byteStream();
+        }
+
+        @Nullable
+        @Override
+        public String getContentEncoding() {
+            return response.header("Content-Encoding");
+        }
+
+        @Override
+        public long getContentLength() throws IOException {
+            return response.body().contentLength();
+        }
+
+        @Nullable
+        @Override
+        public String getContentType() {
+            return response.header("Content-Type");
+        }
+
+        @Override
+        public String getStatusLine() {
+            return response.protocol() + " " + response.code() + " " + response.message();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.code();
+        }
+
+        @Override
+        public String getReasonPhrase() {
+            return response.message();
+        }
+
+        @Override
+        public int getHeaderCount() {
+            return response.headers().size();
+        }
+
+        @Override
+        public String getHeaderName(int index) {
+            return response.headers().name(index);
+        }
+
+        @Override
+        public String getHeaderValue(int index) {
+            return response.headers().value(index);
+        }
+
+        @Override
+        public void disconnect() {
+            try {
+                response.body().close();  // the connection returns to the pool
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import androidx.annotation.Nullable;
+import java.util.concurrent.Future;
+import nie.translator.rtranslatordevedition.tools.CustomLocale;
+import nie.translator.rtranslatordevedition.tools.Tracer;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.TranscriptDelta;
+
+
+/**
+ * Translates the text of an utterance while it is still being recognized: the stable part of the interim results
+ * (see {@link TranscriptDelta#getStableLength()}) is translated as it grows (a speculation), so when the final result arrives
+ * only the words added after the last speculation are translated and joined to its translation.
+ * There is only one speculation in progress at a time, when it ends the next one translates the stable text of the latest interim result
+ * (starting a new speculation for each interim result would cancel them all before the end of their translation when the speaker is fast).
+ * A speculation whose words are changed by the recognizer is superseded: it is cancelled if still in progress, or discarded.
+ * The speculations end only after a complete word (followed by a space), so for the languages that do not separate the words with spaces
+ * the final text is always translated entirely.
+ * There is one instance for each utterance and each output language, the listeners are notified in the thread of the {@link TextTranslator}.
+ */
+public class SpeculativeTranslator {
+    public static final int MIN_NEW_CHARACTERS = 8;  // a new speculation starts only if the stable text has grown at least this much since the previous one
+    private final TextTranslator translator;
+    private final CustomLocale inputLanguage;
+    private final CustomLocale outputLanguage;
+    @Nullable
+    private Speculation pendingSpeculation;  // the last speculation started, while it is being translated
+    @Nullable
+    private Speculation completedSpeculation;  // the last speculation translated
+    private String stableText = "";  // of the latest interim result
+    private boolean finished = false;
+
+    public SpeculativeTranslator(TextTranslator translator, CustomLocale inputLanguage, CustomLocale outputLanguage) {
+        this.translator = translator;
+        this.inputLanguage = inputLanguage;
+        this.outputLanguage = outputLanguage;
+    }
+
+    /**
+     * @param text         the text of the interim results of the utterance.
+     * @param stableLength the length of the beginning of the text that is unlikely to change.
+     */
+    public synchronized void onInterimText(String text, int stableLength) {
+        if (finished) {
+            return;
+        }
+        stableText = getStableWords(text, stableLength);
+        if (completedSpeculation != null && !isWordPrefix(completedSpeculation.sourceText, stableText)) {
+            completedSpeculation = null;  // the recognizer has changed the words already translated
+        }
+        if (pendingSpeculation != null) {
+            if (isWordPrefix(pendingSpeculation.sourceText, stableText)) {
+                return;  // the next speculation will start at the end of this one
+            }
+            pendingSpeculation.cancel();  // superseded
+            pendingSpeculation = null;
+        }
+        startSpeculation();
+    }
+
+    private void startSpeculation() {
+        int speculatedLength = 0;
+        if (completedSpeculation != null) {
+            speculatedLength = completedSpeculation.sourceText.length();
+        }
+        if (stableText.length() - speculatedLength >= MIN_NEW_CHARACTERS) {
+            pendingSpeculation = new Speculation(stableText);
+            pendingSpeculation.start();
+        }
+    }
+
+    /**
+     * Translates the final text of the utterance, reusing the last speculation that is still valid (also if its translation is not completed),
+     * after this call the interim texts are ignored.
+     */
+    public synchronized void translateFinal(String finalText, Translator.TranslateListener responseListener) {
+        finished = true;
+        Speculation base = null;
+        if (pendingSpeculation != null) {
+            if (isWordPrefix(pendingSpeculation.sourceText, finalText)) {
+                base = pendingSpeculation;
+            } else {
+                pendingSpeculation.cancel();
+            }
+        }
+        if (base == null && completedSpeculation != null && isWordPrefix(completedSpeculation.sourceText, finalText)) {
+            base = completedSpeculation;
+        }
+        pendingSpeculation = null;
+        completedSpeculation = null;
+        if (base != null) {
+            Tracer.instant(Tracer.TRANSLATOR, "speculationUsed", base.sourceText.length());
+            new FinalTranslation(finalText, base, responseListener).start();
+        } else {
+            translator.translate(finalText, inputLanguage, outputLanguage, true, responseListener);
+        }
+    }
+
+    /**
+     * Cancels the speculation in progress, to call if the utterance ends without a final text.
+     */
+    public synchronized void cancel() {
+        finished = true;
+        if (pendingSpeculation != null) {
+            pendingSpeculation.cancel();
+            pendingSpeculation = null;
+        }
+        completedSpeculation = null;
+    }
+
+    /**
+     * @return the stable part of the text cut at the end of its last complete word.
+     */
+    private static String getStableWords(String text, int stableLength) {
+        int end = Math.min(stableLength, text.length());
+        // a word is complete only if it is followed by a space (the last word of the text could still grow)
+        while (end > 0 && (end == text.length() || !Character.isWhitespace(text.charAt(end)))) {
+            end--;
+        }
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    private static boolean isWordPrefix(String prefix, String text) {
+        return text.startsWith(prefix) && (text.length() == prefix.length() || Character.isWhitespace(text.charAt(prefix.length())));
+    }
+
+    private class Speculation implements Translator.TranslateListener {
+        private final String sourceText;
+        private Future<?> future;
+        @Nullable
+        private String translatedText;
+        private boolean failed = false;
+        @Nullable
+        private FinalTranslation finalTranslation;  // the translation of the final text that uses this speculation
+
+        private Speculation(String sourceText) {
+            this.sourceText = sourceText;
+        }
+
+        private void start() {
+            Tracer.instant(Tracer.TRANSLATOR, "speculationStarted", sourceText.length());
+            future = translator.translate(sourceText, inputLanguage, outputLanguage, false, this);
+        }
+
+        private void cancel() {
+            if (future != null) {
+                future.cancel(false);
+            }
+            Tracer.instant(Tracer.TRANSLATOR, "speculationCancelled", sourceText.length());
+        }
+
+        @Override
+        public void onTranslatedText(String text, CustomLocale languageOfText) {
+            synchronized (SpeculativeTranslator.this) {
+                translatedText = text;
+                if (pendingSpeculation == this) {
+                    pendingSpeculation = null;
+                    completedSpeculation = this;
+                    if (!finished) {
+                        startSpeculation();
+                    }
+                }
+                if (finalTranslation != null) {
+                    finalTranslation.onPartCompleted();
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(int[] reasons, long value) {
+            synchronized (SpeculativeTranslator.this) {
+                failed = true;
+                if (pendingSpeculation == this) {
+                    pendingSpeculation = null;
+                }
+                if (finalTranslation != null) {
+                    finalTranslation.onPartCompleted();
+                }
+            }
+        }
+    }
+
+    /**
+     * Translation of the words of the final text that follow a speculation, when both are translated the result is the two translations joined.
+     */
+    private class FinalTranslation implements Translator.TranslateListener {
+        private final String finalText;
+        private final Speculation base;
+        private final Translator.TranslateListener responseListener;
+        private Future<?> tailFuture;
+        @Nullable
+        private String translatedTail;
+        private boolean notified = false;
+
+        private FinalTranslation(String finalText, Speculation base, Translator.TranslateListener responseListener) {
+            this.finalText = finalText;
+            this.base = base;
+            this.responseListener = responseListener;
+        }
+
+        private void start() {
+            base.finalTranslation = this;
+            final String tail = finalText.substring(base.sourceText.length()).trim();
+            if (tail.isEmpty()) {
+                translatedTail = "";
+            } else {
+                tailFuture = translator.translate(tail, inputLanguage, outputLanguage, false, this);
+            }
+            onPartCompleted();
+        }
+
+        private void onPartCompleted() {  // always called with the lock of the SpeculativeTranslator
+            if (notified) {
+                return;
+            }
+            if (base.failed) {
+                // the final text is translated entirely
+                notified = true;
+                if (tailFuture != null) {
+                    tailFuture.cancel(false);
+                }
+                translator.translate(finalText, inputLanguage, outputLanguage, true, responseListener);
+            } else if (base.translatedText != null && translatedTail != null) {
+                notified = true;
+                if (translatedTail.isEmpty()) {
+                    responseListener.onTranslatedText(base.translatedText, outputLanguage);
+                } else {
+                    responseListener.onTranslatedText(base.translatedText + " " + translatedTail, outputLanguage);
+                }
+            }
+        }
+
+        @Override
+        public void onTranslatedText(String text, CustomLocale languageOfText) {
+            synchronized (SpeculativeTranslator.this) {
+                translatedTail = text;
+                onPartCompleted();
+            }
+        }
+
+        @Override
+        public void onFailure(int[] reasons, long value) {
+            synchronized (SpeculativeTranslator.this) {
+                if (!notified) {
+                    notified = true;
+                    responseListener.onFailure(reasons, value);
+                }
+            }
+        }
+    }
+}
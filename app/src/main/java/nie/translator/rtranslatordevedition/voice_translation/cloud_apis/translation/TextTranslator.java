@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import androidx.annotation.Nullable;
+import java.util.concurrent.Future;
+import nie.translator.rtranslatordevedition.tools.CustomLocale;
+
+
+/**
+ * Translation of a text, implemented by the {@link Translator} and used by the {@link SpeculativeTranslator}.
+ */
+public interface TextTranslator {
+    /**
+     * @param inputLanguage the language of the text, if null it is detected by the Translate API.
+     * @param cacheTranslation false for the fragments of a text (the speculations), so they do not fill the TranslationCache.
+     * @return the future of the translation, cancelling it the responseListener is no longer notified.
+     */
+    Future<?> translate(String textToTranslate, @Nullable CustomLocale inputLanguage, CustomLocale outputLanguage, boolean cacheTranslation, Translator.TranslateListener responseListener);
+}
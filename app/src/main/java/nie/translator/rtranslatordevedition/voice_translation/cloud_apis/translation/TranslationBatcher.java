@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Html;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.api.services.translate.Translate;
+import com.google.api.services.translate.model.TranslationsListResponse;
+import com.google.api.services.translate.model.TranslationsResource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import nie.translator.rtranslatordevedition.Global;
+import nie.translator.rtranslatordevedition.tools.ErrorCodes;
+import nie.translator.rtranslatordevedition.tools.Tracer;
+
+
+/**
+ * Groups the texts to translate that arrive close to each other (for example the messages of several peers) and translates each group
+ * with a single request of Translations.list, which accepts a list of texts, instead of a request for each text.
+ * The texts are grouped by source and target language, a group is sent when the window (Global.getTranslationBatchWindow()) after
+ * its first text expires or as soon as it reaches MAX_BATCH_SIZE texts or MAX_BATCH_CHARACTERS characters.
+ * The requests are executed by the {@link TranslatorExecutor} and the results are returned to the callback of each text.
+ * There is one batcher for all the process, obtained with {@link Global#getTranslationBatcher()}.
+ */
+public class TranslationBatcher {
+    public static final int DEFAULT_WINDOW_MILLIS = 25;
+    public static final int MAX_BATCH_SIZE = 32;
+    public static final int MAX_BATCH_CHARACTERS = 5000;  // maximum size of a request recommended by the api
+    private final Global global;
+    private final Translate translator;
+    private final Handler mainHandler;
+    private final ScheduledExecutorService scheduler;  // only waits the windows, the requests are executed by the TranslatorExecutor
+    private final HashMap<String, Batch> pendingBatches = new HashMap<>();
+    private final Object lock = new Object();
+
+    public TranslationBatcher(Global global) {
+        this.global = global;
+        this.translator = Translator.createTranslateClient(global);
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                return new Thread(runnable, "translationBatcher");
+            }
+        });
+    }
+
+    /**
+     * Adds the text to the group of its languages, the callback is called in a thread of the TranslatorExecutor (or in the
+     * thread that sends the group if the executor rejects it). If the task is cancelled before the group is sent the text is not translated.
+     */
+    public void translate(TranslatorExecutor.Task task, String text, @Nullable String sourceLanguageCode, String targetLanguageCode, String accessToken, Callback callback) {
+        final String key = sourceLanguageCode + "|" + targetLanguageCode;
+        final Request request = new Request(task, text, accessToken, callback);
+        Batch fullBatch = null;
+        Batch batchToSend = null;
+        synchronized (lock) {
+            Batch batch = pendingBatches.get(key);
+            if (batch != null && batch.characters + text.length() > MAX_BATCH_CHARACTERS) {
+                // the text does not fit in the group, so the group is sent and the text starts a new one
+                pendingBatches.remove(key);
+                batch.cancelFlush();
+                fullBatch = batch;
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new Batch(key, sourceLanguageCode, targetLanguageCode);
+                pendingBatches.put(key, batch);
+                final int window = global.getTranslationBatchWindow();
+                if (window > 0) {
+                    final Batch scheduledBatch = batch;
+                    batch.flushFuture = scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush(scheduledBatch);
+                        }
+                    }, window, TimeUnit.MILLISECONDS);
+                }
+            }
+            batch.add(request);
+            if (batch.flushFuture == null || batch.requests.size() >= MAX_BATCH_SIZE || batch.characters >= MAX_BATCH_CHARACTERS) {
+                pendingBatches.remove(key);
+                batch.cancelFlush();
+                batchToSend = batch;
+            }
+        }
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+        if (batchToSend != null) {
+            send(batchToSend);
+        }
+    }
+
+    private void flush(Batch batch) {
+        synchronized (lock) {
+            if (pendingBatches.get(batch.key) != batch) {
+                return;  // already sent because it was full
+            }
+            pendingBatches.remove(batch.key);
+        }
+        send(batch);
+    }
+
+    private void send(final Batch batch) {
+        global.getTranslatorExecutor().submit(new TranslatorExecutor.Task(mainHandler) {
+            @Override
+            public void run() {
+                performBatchTranslation(batch);
+            }
+
+            @Override
+            protected void onRejected() {
+                for (Request request : batch.requests) {
+                    request.callback.onFailure(new int[]{ErrorCodes.TRANSLATOR_OVERLOADED});
+                }
+            }
+        });
+    }
+
+    private void performBatchTranslation(Batch batch) {
+        // the texts of the cancelled tasks are not translated
+        ArrayList<Request> requests = new ArrayList<>();
+        ArrayList<String> texts = new ArrayList<>();
+        int characters = 0;
+        for (Request request : batch.requests) {
+            if (!request.task.isCancelled()) {
+                requests.add(request);
+                texts.add(request.text);
+                characters += request.text.length();
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        ArrayList<String> translatedTexts = new ArrayList<>();
+        try {
+            Translate.Translations.List list = translator.new Translations().list(texts, batch.targetLanguageCode); //Pass in list of strings to be translated and the target language
+            if (batch.sourceLanguageCode != null) {
+                list.setSource(batch.sourceLanguageCode);
+            }
+            list.setAccessToken(requests.get(requests.size() - 1).accessToken);  // the most recent token
+            final long requestStartTime = Tracer.beginSpan();
+            TranslationsListResponse response = list.execute();
+            Tracer.endSpan(Tracer.TRANSLATOR, "translate", requestStartTime, characters);
+            global.getTranslatorMetrics().onBatchSent(requests.size());
+            List<TranslationsResource> translations = response.getTranslations();
+            if (translations == null || translations.size() != requests.size()) {
+                throw new IllegalStateException("wrong number of translations");
+            }
+            for (TranslationsResource translation : translations) {
+                translatedTexts.add(Html.fromHtml(translation.getTranslatedText()).toString());   // serves to transform &#39; in apostrophe
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            Tracer.instant(Tracer.TRANSLATOR, "translateError");
+            for (Request request : requests) {
+                request.callback.onFailure(new int[]{ErrorCodes.MISSED_CONNECTION});
+            }
+            return;
+        }
+        // the callbacks are notified outside the try, so an exception thrown by one of them does not turn the others into failures
+        for (int i = 0; i < requests.size(); i++) {
+            requests.get(i).callback.onTranslated(translatedTexts.get(i));
+        }
+    }
+
+    public interface Callback {
+        void onTranslated(String translatedText);
+
+        void onFailure(int[] reasons);
+    }
+
+    private static class Request {
+        private final TranslatorExecutor.Task task;
+        private final String text;
+        private final String accessToken;
+        private final Callback callback;
+
+        private Request(TranslatorExecutor.Task task, String text, String accessToken, Callback callback) {
+            this.task = task;
+            this.text = text;
+            this.accessToken = accessToken;
+            this.callback = callback;
+        }
+    }
+
+    private static class Batch {
+        private final String key;
+        @Nullable
+        private final String sourceLanguageCode;
+        private final String targetLanguageCode;
+        private final ArrayList<Request> requests = new ArrayList<>();
+        private int characters = 0;
+        @Nullable
+        private ScheduledFuture<?> flushFuture;  // null if the window is disabled
+
+        private Batch(String key, @Nullable String sourceLanguageCode, String targetLanguageCode) {
+            this.key = key;
+            this.sourceLanguageCode = sourceLanguageCode;
+            this.targetLanguageCode = targetLanguageCode;
+        }
+
+        private void add(Request request) {
+            requests.add(request);
+            characters += request.text.length();
+        }
+
+        private void cancelFlush() {
+            if (flushFuture != null) {
+                flushFuture.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import nie.translator.rtranslatordevedition.database.AppDatabase;
+import nie.translator.rtranslatordevedition.database.dao.MyDao;
+import nie.translator.rtranslatordevedition.database.entities.CachedTranslation;
+
+
+/**
+ * Cache of the translations, so the phrases that are repeated often (greetings, confirmations ecc.) are translated by the api only once.
+ * The most recently used translations are kept in memory, all the others are saved in the database (table CachedTranslation),
+ * in both cases when the maximum number of entries is reached the least recently used are removed (from the database
+ * in batches of {@link #EVICTION_BATCH} entries, so the table is not counted and trimmed at every insertion).
+ * The key is formed by the text (with normalized spaces), the source language (empty if not specified) and the target language.
+ * There is one cache for all the process, obtained with {@link nie.translator.rtranslatordevedition.Global#getTranslationCache()}.
+ */
+public class TranslationCache {
+    public static final int MAX_MEMORY_ENTRIES = 256;
+    public static final int MAX_DATABASE_ENTRIES = 5000;
+    public static final int EVICTION_BATCH = 500;
+    private final AppDatabase database;
+    private final TranslatorMetrics metrics;
+    private final Object databaseLock = new Object();
+    private int databaseEntries = -1;  // approximate (the replaced translations are counted again), loaded at the first insertion
+    private final LinkedHashMap<String, String> memoryCache = new LinkedHashMap<String, String>(MAX_MEMORY_ENTRIES, 0.75f, true) {  // ordered by access
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+
+    /**
+     * @param database the database of the app, obtained with {@link nie.translator.rtranslatordevedition.Global#getDatabase()}.
+     */
+    public TranslationCache(AppDatabase database, TranslatorMetrics metrics) {
+        this.database = database;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the cached translation of the text or null if it is not in the cache.
+     */
+    @Nullable
+    @WorkerThread
+    public String get(String text, @Nullable String sourceLanguage, String targetLanguage) {
+        final String normalizedText = normalize(text);
+        final String normalizedSourceLanguage = sourceLanguage != null ? sourceLanguage : "";
+        final String key = getKey(normalizedText, normalizedSourceLanguage, targetLanguage);
+        String translation;
+        synchronized (memoryCache) {
+            translation = memoryCache.get(key);
+        }
+        if (translation != null) {
+            metrics.onCacheHit(false);
+            return translation;
+        }
+        MyDao dao = database.myDao();
+        CachedTranslation cachedTranslation = dao.loadCachedTranslation(normalizedText, normalizedSourceLanguage, targetLanguage);
+        if (cachedTranslation != null && cachedTranslation.translation != null) {
+            dao.updateCachedTranslationLastUse(normalizedText, normalizedSourceLanguage, targetLanguage, System.currentTimeMillis());
+            synchronized (memoryCache) {
+                memoryCache.put(key, cachedTranslation.translation);
+            }
+            metrics.onCacheHit(true);
+            return cachedTranslation.translation;
+        }
+        metrics.onCacheMiss();
+        return null;
+    }
+
+    @WorkerThread
+    public void put(String text, @Nullable String sourceLanguage, String targetLanguage, String translation) {
+        CachedTranslation cachedTranslation = new CachedTranslation();
+        cachedTranslation.text = normalize(text);
+        cachedTranslation.sourceLanguage = sourceLanguage != null ? sourceLanguage : "";
+        cachedTranslation.targetLanguage = targetLanguage;
+        cachedTranslation.translation = translation;
+        cachedTranslation.lastUse = System.currentTimeMillis();
+        synchronized (memoryCache) {
+            memoryCache.put(getKey(cachedTranslation.text, cachedTranslation.sourceLanguage, targetLanguage), translation);
+        }
+        MyDao dao = database.myDao();
+        dao.insertCachedTranslations(cachedTranslation);
+        synchronized (databaseLock) {
+            if (databaseEntries < 0) {
+                databaseEntries = dao.loadCachedTranslationsCount();
+            } else {
+                databaseEntries++;
+            }
+            // size-bounded eviction of the least recently used translations, done only when the limit is exceeded by a whole batch
+            if (databaseEntries > MAX_DATABASE_ENTRIES + EVICTION_BATCH) {
+                databaseEntries = dao.loadCachedTranslationsCount();
+                if (databaseEntries > MAX_DATABASE_ENTRIES) {
+                    dao.deleteOldestCachedTranslations(databaseEntries - MAX_DATABASE_ENTRIES);
+                    databaseEntries = MAX_DATABASE_ENTRIES;
+                }
+            }
+        }
+    }
+
+    static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ");
+    }
+
+    private static String getKey(String normalizedText, String sourceLanguage, String targetLanguage) {
+        return sourceLanguage + "|" + targetLanguage + "|" + normalizedText;  // the language codes do not contain "|"
+    }
+}
@@ -19,38 +19,48 @@ package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.transl
 import android.content.SharedPreferences;
 import android.os.Looper;
 import android.speech.tts.Voice;
-import android.text.Html;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
 import com.google.api.services.translate.Translate;
 import com.google.api.services.translate.model.DetectionsListResponse;
 import com.google.api.services.translate.model.LanguagesListResponse;
 import com.google.api.services.translate.model.LanguagesResource;
-import com.google.api.services.translate.model.TranslationsListResponse;
-import com.google.api.services.translate.model.TranslationsResource;
 import com.google.auth.oauth2.AccessToken;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import nie.translator.rtranslatordevedition.Global;
 import nie.translator.rtranslatordevedition.tools.CustomLocale;
 import nie.translator.rtranslatordevedition.tools.ErrorCodes;
+import nie.translator.rtranslatordevedition.tools.LanguageIndex;
 import nie.translator.rtranslatordevedition.tools.TTS;
+import nie.translator.rtranslatordevedition.tools.Tracer;
 import nie.translator.rtranslatordevedition.voice_translation._conversation_mode._conversation.ConversationMessage;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.CloudApi;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.CloudApiResult;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.Recognizer;
 
 
-public class Translator extends CloudApi {  // separate thread for internet translation
+public class Translator extends CloudApi implements TextTranslator {  // the work is executed by the TranslatorExecutor shared by all the Translators
     public static final float COST_PER_CHAR = 0.00002f;
+    public static final int CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final long API_TOKEN_TIMEOUT_MILLIS = 15000;  // after which the token is considered missing for lack of connection
     private Translate translator;
     private TTS tts;
-    private Thread getSupportedLanguageThread;
+    private TranslatorExecutor executor;
+    private TranslationCache cache;
+    private TranslationBatcher batcher;
+    private Future<?> getSupportedLanguageFuture;
     private ArrayDeque<SupportedLanguagesListener> supportedLanguagesListeners = new ArrayDeque<>();
     private final Object lock = new Object();
     private android.os.Handler mainHandler;   // handler that can be used to post to the main thread
@@ -58,6 +68,9 @@ public class Translator extends CloudApi {  // separate thread for internet tran
 
     public Translator(@NonNull Global global) {
         this.global = global;
+        executor = global.getTranslatorExecutor();
+        cache = global.getTranslationCache();
+        batcher = global.getTranslationBatcher();
         mainHandler = new android.os.Handler(Looper.getMainLooper());
         this.apiTokenListener = new Global.ApiTokenListener() {
             @Override
@@ -72,118 +85,119 @@ public class Translator extends CloudApi {  // separate thread for internet tran
 
         global.getApiToken(true, apiTokenListener);
 
-        translator = new Translate.Builder(
-                com.google.api.client.extensions.android.http.AndroidHttp.newCompatibleTransport()
-                , com.google.api.client.json.jackson2.JacksonFactory.getDefaultInstance(), null)
+        translator = createTranslateClient(global);
+    }
+
+    /**
+     * @return a client of the Translate API that executes its requests with the transport shared by all the clients (see {@link OkHttpTransport}).
+     */
+    static Translate createTranslateClient(Global global) {
+        return new Translate.Builder(global.getTranslateTransport(), com.google.api.client.json.jackson2.JacksonFactory.getDefaultInstance(), new HttpRequestInitializer() {
+            @Override
+            public void initialize(HttpRequest request) {
+                request.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+                request.setReadTimeout(READ_TIMEOUT_MILLIS);
+            }
+        })
                 .setApplicationName("speechGoogle")
                 .build();
     }
 
-    public void translate(final String textToTranslate, final CustomLocale languageOutput, final TranslateListener responseListener) {  // what the thread does
-        final Thread t = new Thread("textTranslation") {
+    /**
+     * Opens in background the connection with the Translate API, so the first translation does not wait for it.
+     */
+    public static void prewarmConnection(Global global) {
+        global.getTranslateTransport().prewarm(Translate.DEFAULT_ROOT_URL);
+    }
+
+    /**
+     * @return the future of the translation, cancelling it the responseListener is no longer notified.
+     */
+    public Future<?> translate(final String textToTranslate, final CustomLocale languageOutput, final TranslateListener responseListener) {
+        return translate(textToTranslate, null, languageOutput, responseListener);
+    }
+
+    /**
+     * @param languageInput the language of the text, if null it is detected by the Translate API.
+     * @return the future of the translation, cancelling it the responseListener is no longer notified.
+     */
+    public Future<?> translate(final String textToTranslate, @Nullable final CustomLocale languageInput, final CustomLocale languageOutput, final TranslateListener responseListener) {
+        return translate(textToTranslate, languageInput, languageOutput, true, responseListener);
+    }
+
+    /**
+     * @param languageInput the language of the text, if null it is detected by the Translate API.
+     * @param cacheTranslation false for the fragments of a text (the speculations), so they do not fill the TranslationCache.
+     * @return the future of the translation, cancelling it the responseListener is no longer notified.
+     */
+    @Override
+    public Future<?> translate(final String textToTranslate, @Nullable final CustomLocale languageInput, final CustomLocale languageOutput, final boolean cacheTranslation, final TranslateListener responseListener) {
+        return executor.submit(new TranslatorTask(responseListener) {
+            @Override
             public void run() {
+                final String cachedText = cache.get(textToTranslate, languageInput != null ? getLanguageCode(languageInput) : null, getLanguageCode(languageOutput));
+                if (cachedText != null) {  // the cached translations are not charged
+                    notifyTranslatedText(this, cachedText, languageOutput, responseListener);
+                    return;
+                }
                 final float cost = calculateCreditConsumption(textToTranslate.length());
-                if (apiToken != null && apiToken.getExpirationTime().getTime() > System.currentTimeMillis()) {
-                    performTextTranslation(textToTranslate, null, languageOutput, cost, responseListener);
-                } else {
-                    global.getApiToken(true, new Global.ApiTokenListener() {
-                        @Override
-                        public void onSuccess(AccessToken apiToken) {
-                            apiTokenListener.onSuccess(apiToken);
-                            performTextTranslation(textToTranslate, null, languageOutput, cost, responseListener);
-                        }
-
-                        @Override
-                        public void onFailure(final int[] reasons, final long value) {
-                            mainHandler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    responseListener.onFailure(reasons, value);
-                                }
-                            });
-                            global.getApiToken(true, apiTokenListener);
-                        }
-                    });
+                if (waitApiToken(this, responseListener)) {
+                    performTextTranslation(this, textToTranslate, languageInput, languageOutput, cacheTranslation, cost, responseListener);
                 }
             }
-        };
-        t.start();
+        });
     }
 
     public interface TranslateListener extends TranslatorListener {
         void onTranslatedText(String text, CustomLocale languageOfText);
     }
 
-    public void translateMessage(final ConversationMessage conversationMessageToTranslate, final CustomLocale languageOutput, final TranslateMessageListener responseListener) {  // what the thread does
-        Thread t = new Thread("messageTranslationPerformer") {
+    /**
+     * @return the future of the translation, cancelling it the responseListener is no longer notified.
+     */
+    public Future<?> translateMessage(final ConversationMessage conversationMessageToTranslate, final CustomLocale languageOutput, final TranslateMessageListener responseListener) {
+        return executor.submit(new TranslatorTask(responseListener) {
+            @Override
             public void run() {
                 final String text = conversationMessageToTranslate.getPayload().getText();
                 final float cost = calculateCreditConsumption(text.length());
                 final CustomLocale languageInput = conversationMessageToTranslate.getPayload().getLanguage();
                 if (!languageInput.equals(languageOutput)) {
-                    if (apiToken != null && apiToken.getExpirationTime().getTime() > System.currentTimeMillis()) {
-                        performMessageTranslation(conversationMessageToTranslate, languageInput, languageOutput, cost, responseListener);
-                    } else {
-                        global.getApiToken(true, new Global.ApiTokenListener() {
-                            @Override
-                            public void onSuccess(AccessToken apiToken) {
-                                apiTokenListener.onSuccess(apiToken);
-                                performMessageTranslation(conversationMessageToTranslate, languageInput, languageOutput, cost, responseListener);
-                            }
-
-                            @Override
-                            public void onFailure(final int[] reasons, final long value) {
-                                mainHandler.post(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        responseListener.onFailure(reasons, value);
-                                    }
-                                });
-                                global.getApiToken(true, apiTokenListener);
-                            }
-                        });
+                    final String cachedText = cache.get(text, getLanguageCode(languageInput), getLanguageCode(languageOutput));
+                    if (cachedText != null) {  // the cached translations are not charged
+                        notifyTranslatedMessage(this, conversationMessageToTranslate, cachedText, languageOutput, responseListener);
+                    } else if (waitApiToken(this, responseListener)) {
+                        performMessageTranslation(this, conversationMessageToTranslate, languageInput, languageOutput, cost, responseListener);
                     }
                 } else {  // means that the language to be translated corresponds to ours
-                    responseListener.onTranslatedMessage(conversationMessageToTranslate);
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            responseListener.onTranslatedMessage(conversationMessageToTranslate);
+                        }
+                    });
                 }
             }
-        };
-        t.start();
+        });
     }
 
     public interface TranslateMessageListener extends TranslatorListener {
         void onTranslatedMessage(ConversationMessage conversationMessage);
     }
 
-    public void detectLanguage(final CloudApiResult result, final DetectLanguageListener responseListener) {
-        Thread t = new Thread("languageDetectionPerformer") {
+    /**
+     * @return the future of the detection, cancelling it the responseListener is no longer notified.
+     */
+    public Future<?> detectLanguage(final CloudApiResult result, final DetectLanguageListener responseListener) {
+        return executor.submit(new TranslatorTask(responseListener) {
+            @Override
             public void run() {
                 final float cost = calculateCreditConsumption(result.getText().length());
-                if (apiToken != null && apiToken.getExpirationTime().getTime() > System.currentTimeMillis()) {
-                    performLanguageDetection(result, cost, responseListener);
-                } else {
-                    global.getApiToken(true, new Global.ApiTokenListener() {
-                        @Override
-                        public void onSuccess(AccessToken apiToken) {
-                            apiTokenListener.onSuccess(apiToken);
-                            performLanguageDetection(result, cost, responseListener);
-                        }
-
-                        @Override
-                        public void onFailure(final int[] reasons, final long value) {
-                            mainHandler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    responseListener.onFailure(reasons, value);
-                                }
-                            });
-                            global.getApiToken(true, apiTokenListener);
-                        }
-                    });
+                if (waitApiToken(this, responseListener)) {
+                    performLanguageDetection(this, result, cost, responseListener);
                 }
             }
-        };
-        t.start();
+        });
     }
 
     public interface DetectLanguageListener extends TranslatorListener {
@@ -195,8 +209,8 @@ public class Translator extends CloudApi {  // separate thread for internet tran
             if (responseListener != null) {
                 supportedLanguagesListeners.addLast(responseListener);
             }
-            if (getSupportedLanguageThread == null) {
-                getSupportedLanguageThread = new Thread(new GetSupportedLanguageRunnable(languageReturned, new SupportedLanguagesListener() {
+            if (getSupportedLanguageFuture == null) {
+                getSupportedLanguageFuture = executor.submit(new GetSupportedLanguageTask(languageReturned, new SupportedLanguagesListener() {
                     @Override
                     public void onLanguagesListAvailable(ArrayList<CustomLocale> languages) {
                         notifyGetSupportedLanguagesSuccess(languages);
@@ -206,8 +220,7 @@ public class Translator extends CloudApi {  // separate thread for internet tran
                     public void onFailure(int[] reasons, long value) {
                         notifyGetSupportedLanguagesFailure(reasons, value);
                     }
-                }), "getSupportedLanguagePerformer");
-                getSupportedLanguageThread.start();
+                }));
             }
         }
     }
@@ -217,7 +230,7 @@ public class Translator extends CloudApi {  // separate thread for internet tran
             while (supportedLanguagesListeners.peekFirst() != null) {
                 supportedLanguagesListeners.pollFirst().onLanguagesListAvailable(languages);
             }
-            getSupportedLanguageThread = null;
+            getSupportedLanguageFuture = null;
         }
     }
 
@@ -226,39 +239,25 @@ public class Translator extends CloudApi {  // separate thread for internet tran
             while (supportedLanguagesListeners.peekFirst() != null) {
                 supportedLanguagesListeners.pollFirst().onFailure(reasons, value);
             }
-            getSupportedLanguageThread = null;
+            getSupportedLanguageFuture = null;
         }
     }
 
-    private class GetSupportedLanguageRunnable implements Runnable {
+    private class GetSupportedLanguageTask extends TranslatorTask {
         private CustomLocale languageReturned;
         private SupportedLanguagesListener responseListener;
 
-        private GetSupportedLanguageRunnable(final CustomLocale languageReturned, final SupportedLanguagesListener responseListener) {
+        private GetSupportedLanguageTask(final CustomLocale languageReturned, final SupportedLanguagesListener responseListener) {
+            super(responseListener);
             this.languageReturned = languageReturned;
             this.responseListener = responseListener;
         }
 
         @Override
         public void run() {
-            global.getApiToken(true, new Global.ApiTokenListener() {
-                @Override
-                public void onSuccess(AccessToken apiToken) {
-                    apiTokenListener.onSuccess(apiToken);
-                    performGetSupportedLanguages(languageReturned, responseListener);
-                }
-
-                @Override
-                public void onFailure(final int[] reasons, final long value) {
-                    mainHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            responseListener.onFailure(reasons, value);
-                        }
-                    });
-                    global.getApiToken(true, apiTokenListener);
-                }
-            });
+            if (waitApiToken(this, responseListener)) {
+                performGetSupportedLanguages(this, languageReturned, responseListener);
+            }
         }
     }
 
@@ -266,138 +265,208 @@ public class Translator extends CloudApi {  // separate thread for internet tran
         void onLanguagesListAvailable(ArrayList<CustomLocale> languages);
     }
 
-    private void performTextTranslation(final String textToTranslate, @Nullable final CustomLocale inputLanguage, final CustomLocale outputLanguage, final float cost, final TranslateListener responseListener) {
-        new Thread("textTranslationPerformer") {
-            public void run() {
-                final String translatedText = translateSimply(textToTranslate, inputLanguage, outputLanguage, responseListener);
-                mainHandler.post(new Runnable() {
+    /**
+     * Blocks the thread of the executor until a valid api token is available, or for at most API_TOKEN_TIMEOUT_MILLIS
+     * (then the failure is notified as a missed connection).
+     *
+     * @return false if the token could not be obtained, in that case the responseListener has already been notified of the failure.
+     */
+    private boolean waitApiToken(final TranslatorTask task, final TranslatorListener responseListener) {
+        if (apiToken != null && apiToken.getExpirationTime().getTime() > System.currentTimeMillis()) {
+            return true;
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        final int[][] failureReasons = new int[1][];
+        final long[] failureValue = new long[1];
+        global.getApiToken(true, new Global.ApiTokenListener() {
+            @Override
+            public void onSuccess(AccessToken apiToken) {
+                apiTokenListener.onSuccess(apiToken);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(int[] reasons, long value) {
+                failureReasons[0] = reasons;
+                failureValue[0] = value;
+                latch.countDown();
+            }
+        });
+        try {
+            if (!latch.await(API_TOKEN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                task.post(new Runnable() {
                     @Override
                     public void run() {
-                        responseListener.onTranslatedText(translatedText, outputLanguage);
+                        responseListener.onFailure(new int[]{ErrorCodes.MISSED_CONNECTION}, 0);
                     }
                 });
+                return false;
+            }
+        } catch (InterruptedException e) {
+            return false;
+        }
+        if (failureReasons[0] != null) {
+            final int[] reasons = failureReasons[0];
+            final long value = failureValue[0];
+            task.post(new Runnable() {
+                @Override
+                public void run() {
+                    responseListener.onFailure(reasons, value);
+                }
+            });
+            global.getApiToken(true, apiTokenListener);
+            return false;
+        }
+        return true;
+    }
 
+    private void performTextTranslation(final TranslatorTask task, final String textToTranslate, @Nullable final CustomLocale inputLanguage, final CustomLocale outputLanguage, boolean cacheTranslation, final float cost, final TranslateListener responseListener) {
+        translateSimply(task, textToTranslate, inputLanguage, outputLanguage, cacheTranslation, responseListener, new TranslatedTextListener() {
+            @Override
+            public void onTranslatedText(String translatedText) {
+                notifyTranslatedText(task, translatedText, outputLanguage, responseListener);
                 global.addUsage(cost);
             }
-        }.start();
+        });
     }
 
-    private void performMessageTranslation(final ConversationMessage conversationMessageToTranslate, final CustomLocale inputLanguage, final CustomLocale outputLanguage, final float cost, final TranslateMessageListener responseListener) {
-        new Thread("messageTranslationPerformer") {
+    private void notifyTranslatedText(final TranslatorTask task, final String translatedText, final CustomLocale outputLanguage, final TranslateListener responseListener) {
+        task.post(new Runnable() {
+            @Override
             public void run() {
-                final String text = conversationMessageToTranslate.getPayload().getText();
-                String translatedText = translateSimply(text, inputLanguage, outputLanguage, responseListener);
-                conversationMessageToTranslate.getPayload().setText(translatedText);
-                conversationMessageToTranslate.getPayload().setLanguage(outputLanguage);
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        responseListener.onTranslatedMessage(conversationMessageToTranslate);
-                    }
-                });
+                responseListener.onTranslatedText(translatedText, outputLanguage);
+            }
+        });
+    }
 
+    private void performMessageTranslation(final TranslatorTask task, final ConversationMessage conversationMessageToTranslate, final CustomLocale inputLanguage, final CustomLocale outputLanguage, final float cost, final TranslateMessageListener responseListener) {
+        final String text = conversationMessageToTranslate.getPayload().getText();
+        translateSimply(task, text, inputLanguage, outputLanguage, true, responseListener, new TranslatedTextListener() {
+            @Override
+            public void onTranslatedText(String translatedText) {
+                notifyTranslatedMessage(task, conversationMessageToTranslate, translatedText, outputLanguage, responseListener);
                 global.addUsage(cost);
             }
-        }.start();
+        });
     }
 
-    private void performLanguageDetection(final CloudApiResult result, final float cost, final DetectLanguageListener responseListener) {
-        new Thread("languageDetectionPerformer") {
+    private void notifyTranslatedMessage(final TranslatorTask task, final ConversationMessage conversationMessageToTranslate, String translatedText, CustomLocale outputLanguage, final TranslateMessageListener responseListener) {
+        conversationMessageToTranslate.getPayload().setText(translatedText);
+        conversationMessageToTranslate.getPayload().setLanguage(outputLanguage);
+        task.post(new Runnable() {
+            @Override
             public void run() {
-                DetectionsListResponse response = null;
-                List<String> parameters = new ArrayList<>();
-                parameters.add(result.getText());
-                try {
-                    Translate.Detections.List list = translator.new Detections().list(parameters); //Pass in list of strings to be translated and the target language
-                    list.setAccessToken(apiToken.getTokenValue());
-                    response = list.execute();
-                    result.setLanguage(CustomLocale.getInstance(response.getDetections().get(0).get(0).getLanguage()));
+                responseListener.onTranslatedMessage(conversationMessageToTranslate);
+            }
+        });
+    }
 
-                    mainHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            responseListener.onDetectedText(result);
-                        }
-                    });
+    private void performLanguageDetection(final TranslatorTask task, final CloudApiResult result, final float cost, final DetectLanguageListener responseListener) {
+        DetectionsListResponse response = null;
+        List<String> parameters = new ArrayList<>();
+        parameters.add(result.getText());
+        try {
+            Translate.Detections.List list = translator.new Detections().list(parameters); //Pass in list of strings to be translated and the target language
+            list.setAccessToken(apiToken.getTokenValue());
+            final long requestStartTime = Tracer.beginSpan();
+            response = list.execute();
+            Tracer.endSpan(Tracer.TRANSLATOR, "detectLanguage", requestStartTime, result.getText().length());
+            result.setLanguage(CustomLocale.getInstance(response.getDetections().get(0).get(0).getLanguage()));
 
-                    global.addUsage(cost);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    mainHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            responseListener.onFailure(new int[]{ErrorCodes.MISSED_CONNECTION}, 0);
-                        }
-                    });
+            task.post(new Runnable() {
+                @Override
+                public void run() {
+                    responseListener.onDetectedText(result);
                 }
-            }
-        }.start();
-    }
+            });
 
-    private void performGetSupportedLanguages(final CustomLocale languageReturned, final SupportedLanguagesListener responseListener) {
-        new Thread("getSupportedLanguagePerformer") {
-            public void run() {
-                ArrayList<CustomLocale> listLanguages = new ArrayList<>();
-                LanguagesListResponse response = null;
-                String localLanguage = languageReturned.getLanguage();
-                try {
-                    Translate.Languages.List list = translator.new Languages().list();  //Pass in list of strings to be translated and the target language
-                    list.setTarget(localLanguage);
-                    list.setAccessToken(apiToken.getTokenValue());
-                    response = list.execute();
-                    List<LanguagesResource> languages = response.getLanguages();
-                    for (int i = 0; i < languages.size(); i++) {
-                        listLanguages.add(CustomLocale.getInstance(languages.get(i).getLanguage().toLowerCase()));
-                    }
-                    filterAndSendLanguages(listLanguages, responseListener);
-                } catch (IOException e) {
-                    mainHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            responseListener.onFailure(new int[]{ErrorCodes.MISSED_CONNECTION}, 0);
-                        }
-                    });
-                    e.printStackTrace();
+            global.addUsage(cost);
+        } catch (IOException e) {
+            e.printStackTrace();
+            task.post(new Runnable() {
+                @Override
+                public void run() {
+                    responseListener.onFailure(new int[]{ErrorCodes.MISSED_CONNECTION}, 0);
                 }
-            }
-        }.start();
+            });
+        }
     }
 
-    private String translateSimply(String text, @Nullable final CustomLocale inputLanguage, final CustomLocale outputLanguage, final TranslatorListener responseListener) {
-        TranslationsListResponse response = null;
-        String inputLanguageCode = null;
-        String outputLanguageCode;
-        if (inputLanguage != null) {
-            if (fullySupportedLanguages.contains(inputLanguage)) {
-                inputLanguageCode = inputLanguage.getCode();
-            } else {
-                inputLanguageCode = inputLanguage.getLanguage();
-            }
-        }
-        if (fullySupportedLanguages.contains(outputLanguage)) {
-            outputLanguageCode = outputLanguage.getCode();
-        } else {
-            outputLanguageCode = outputLanguage.getLanguage();
-        }
+    private void performGetSupportedLanguages(final TranslatorTask task, final CustomLocale languageReturned, final SupportedLanguagesListener responseListener) {
+        ArrayList<CustomLocale> listLanguages = new ArrayList<>();
+        LanguagesListResponse response = null;
+        String localLanguage = languageReturned.getLanguage();
         try {
-            Translate.Translations.List list = translator.new Translations().list(Arrays.asList(text), outputLanguageCode); //Pass in list of strings to be translated and the target language
-            if (inputLanguageCode != null) {
-                list.setSource(inputLanguageCode);
-            }
+            Translate.Languages.List list = translator.new Languages().list();  //Pass in list of strings to be translated and the target language
+            list.setTarget(localLanguage);
             list.setAccessToken(apiToken.getTokenValue());
             response = list.execute();
-            List<TranslationsResource> tr = response.getTranslations();
-            return Html.fromHtml(tr.get(0).getTranslatedText()).toString();   // serves to transform &#39; in apostrophe
-        } catch (Exception e) {
-            e.printStackTrace();
-            mainHandler.post(new Runnable() {
+            List<LanguagesResource> languages = response.getLanguages();
+            for (int i = 0; i < languages.size(); i++) {
+                listLanguages.add(CustomLocale.getInstance(languages.get(i).getLanguage().toLowerCase()));
+            }
+            filterAndSendLanguages(listLanguages, responseListener);
+        } catch (IOException e) {
+            task.post(new Runnable() {
                 @Override
                 public void run() {
                     responseListener.onFailure(new int[]{ErrorCodes.MISSED_CONNECTION}, 0);
                 }
             });
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds the text to the TranslationBatcher, which translates it together with the other texts to translate in the same languages.
+     * The translation is saved in the cache (if cacheTranslation is true) and passed to translatedTextListener in a thread of the TranslatorExecutor,
+     * the failures are notified to responseListener.
+     */
+    private void translateSimply(final TranslatorTask task, final String text, @Nullable final CustomLocale inputLanguage, final CustomLocale outputLanguage, final boolean cacheTranslation, final TranslatorListener responseListener, final TranslatedTextListener translatedTextListener) {
+        String inputLanguageCode = null;
+        if (inputLanguage != null) {
+            inputLanguageCode = getLanguageCode(inputLanguage);
+        }
+        final String finalInputLanguageCode = inputLanguageCode;
+        final String outputLanguageCode = getLanguageCode(outputLanguage);
+        batcher.translate(task, text, inputLanguageCode, outputLanguageCode, apiToken.getTokenValue(), new TranslationBatcher.Callback() {
+            @Override
+            public void onTranslated(String translatedText) {
+                if (cacheTranslation) {
+                    cache.put(text, finalInputLanguageCode, outputLanguageCode, translatedText);
+                }
+                translatedTextListener.onTranslatedText(translatedText);
+            }
+
+            @Override
+            public void onFailure(final int[] reasons) {
+                task.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        responseListener.onFailure(reasons, 0);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the code with which the language is passed to the api (the country is used only if supported).
+     */
+    private String getLanguageCode(CustomLocale language) {
+        if (fullySupportedLanguages.contains(language)) {
+            return language.getCode();
+        } else {
+            return language.getLanguage();
         }
-        return null;
+    }
+
+    /**
+     * @return true if the two languages are passed to the api with the same code (they differ only by a country that is not supported),
+     * so a text in one of them does not have to be translated in the other.
+     */
+    public boolean isSameLanguage(CustomLocale firstLanguage, CustomLocale secondLanguage) {
+        return getLanguageCode(firstLanguage).equals(getLanguageCode(secondLanguage));
     }
 
     private void filterAndSendLanguages(final ArrayList<CustomLocale> translatorLanguages, final SupportedLanguagesListener responseListener) {
@@ -422,23 +491,20 @@ public class Translator extends CloudApi {  // separate thread for internet tran
                             ttsLanguages.add(language);
                         }
                     }
-                    ArrayList<CustomLocale> recognizerLanguages = Recognizer.getSupportedLanguages(global);
+                    LanguageIndex recognizerLanguages = Recognizer.getSupportedLanguageIndex(global);
 
                     // the languages ​​are filtered so that they are compatible with both the Recognizer and the Translator and with the TTS
+                    HashSet<String> compatibleLanguageCodes = LanguageIndex.intersectLanguages(new LanguageIndex(translatorLanguages), new LanguageIndex(ttsLanguages), recognizerLanguages);
                     fullySupportedLanguages.clear();
-                    final ArrayList<CustomLocale> compatibleLanguages = new ArrayList<>();
-                    ArrayList<CustomLocale> compatibleTranslatorLanguages = new ArrayList<>();   // the list of compatible languages, later it will be used to get all the variants from the recognizerLanguages
                     for (CustomLocale translatorLanguage : translatorLanguages) {
-                        if (CustomLocale.containsLanguage(ttsLanguages, translatorLanguage) && CustomLocale.containsLanguage(recognizerLanguages, translatorLanguage)) {
-                            if (!translatorLanguage.getCountry().isEmpty()) {
-                                fullySupportedLanguages.add(translatorLanguage);
-                            }
-                            compatibleTranslatorLanguages.add(translatorLanguage);
+                        if (!translatorLanguage.getCountry().isEmpty() && compatibleLanguageCodes.contains(translatorLanguage.getLanguage())) {
+                            fullySupportedLanguages.add(translatorLanguage);
                         }
                     }
-
-                    for (CustomLocale recognizerLanguage : recognizerLanguages) {
-                        if (CustomLocale.containsLanguage(compatibleTranslatorLanguages, recognizerLanguage)) {
+                    // all the variants of the compatible languages are taken from the recognizerLanguages
+                    final ArrayList<CustomLocale> compatibleLanguages = new ArrayList<>();
+                    for (CustomLocale recognizerLanguage : recognizerLanguages.getLocales()) {
+                        if (compatibleLanguageCodes.contains(recognizerLanguage.getLanguage())) {
                             compatibleLanguages.add(recognizerLanguage);
                         }
                     }
@@ -477,4 +543,30 @@ public class Translator extends CloudApi {  // separate thread for internet tran
     private interface TranslatorListener {
         void onFailure(int[] reasons, long value);
     }
+
+    private interface TranslatedTextListener {
+        void onTranslatedText(String translatedText);
+    }
+
+    /**
+     * Task of the TranslatorExecutor whose listener is notified in the main thread, also when the task is rejected.
+     */
+    private abstract class TranslatorTask extends TranslatorExecutor.Task {
+        private final TranslatorListener responseListener;
+
+        private TranslatorTask(TranslatorListener responseListener) {
+            super(mainHandler);
+            this.responseListener = responseListener;
+        }
+
+        @Override
+        protected void onRejected() {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    responseListener.onFailure(new int[]{ErrorCodes.TRANSLATOR_OVERLOADED}, 0);
+                }
+            });
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import android.os.Handler;
+import androidx.annotation.NonNull;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import nie.translator.rtranslatordevedition.tools.Tracer;
+
+
+/**
+ * Executes the work of all the {@link Translator}s (translations, language detections and requests of the supported languages)
+ * with a few threads, so a burst of messages does not create a thread for each of them. The tasks wait in a bounded queue,
+ * when it is full the new tasks are rejected and their listeners are notified of the failure ({@link Task#onRejected()}).
+ * There is one executor for all the process, obtained with {@link nie.translator.rtranslatordevedition.Global#getTranslatorExecutor()}.
+ */
+public class TranslatorExecutor extends ThreadPoolExecutor {
+    public static final int THREADS = 3;
+    public static final int MAX_QUEUED_TASKS = 32;
+    private static final long KEEP_ALIVE_SECONDS = 30;  // the threads are terminated when there is nothing to translate
+    private final TranslatorMetrics metrics;
+
+    public TranslatorExecutor(TranslatorMetrics metrics) {
+        super(THREADS, THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED_TASKS), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                return new Thread(runnable, "translator" + threadCount.incrementAndGet());
+            }
+        }, new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                if (runnable instanceof TaskFuture) {
+                    ((TaskFuture) runnable).reject();
+                }
+            }
+        });
+        allowCoreThreadTimeOut(true);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds the task to the queue.
+     *
+     * @return the future of the task, with which it can be cancelled: after the cancellation its listener is no longer notified.
+     */
+    public TaskFuture submit(Task task) {
+        TaskFuture future = new TaskFuture(task);
+        execute(future);
+        if (!future.isCancelled()) {  // a rejected task is cancelled
+            metrics.onTaskQueued(getQueue().size());
+        }
+        return future;
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        super.beforeExecute(thread, runnable);
+        if (runnable instanceof TaskFuture) {
+            final long waitNanos = System.nanoTime() - ((TaskFuture) runnable).queuedTime;
+            metrics.onTaskStarted(waitNanos);
+            Tracer.counter(Tracer.TRANSLATOR, "queuedTasks", getQueue().size());
+        }
+    }
+
+    /**
+     * Work executed by the executor, the notifications to the listener have to be sent with {@link #post(Runnable)},
+     * so they are not sent after the cancellation of the task.
+     */
+    public abstract static class Task implements Runnable {
+        private final Handler handler;
+        private volatile boolean cancelled = false;
+
+        /**
+         * @param handler the handler of the thread in which the listener is notified.
+         */
+        protected Task(Handler handler) {
+            this.handler = handler;
+        }
+
+        protected boolean isCancelled() {
+            return cancelled;
+        }
+
+        protected void post(final Runnable notification) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled) {
+                        notification.run();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Called when the task is rejected because the queue is full, in the thread that submitted it.
+         */
+        protected abstract void onRejected();
+    }
+
+    public class TaskFuture extends FutureTask<Void> {
+        private final Task task;
+        private final long queuedTime = System.nanoTime();
+
+        private TaskFuture(Task task) {
+            super(task, null);
+            this.task = task;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            task.cancelled = true;
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        private void reject() {
+            super.cancel(false);
+            metrics.onTaskRejected();
+            Tracer.instant(Tracer.TRANSLATOR, "taskRejected");
+            task.onRejected();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import java.util.Locale;
+
+
+/**
+ * Collects the metrics of the {@link TranslatorExecutor}: time waited in the queue by the tasks before being executed, depth of the queue
+ * and tasks rejected because the queue was full, the hits and misses of the {@link TranslationCache} and the size of the requests
+ * sent by the {@link TranslationBatcher}.
+ * There is one object for all the process, obtained with {@link nie.translator.rtranslatordevedition.Global#getTranslatorMetrics()}.
+ */
+public class TranslatorMetrics {
+    private final Object lock = new Object();
+    private long queuedTaskCount = 0;
+    private long startedTaskCount = 0;
+    private long rejectedTaskCount = 0;
+    private long totalQueueWaitMillis = 0;
+    private long lastQueueWaitMillis = 0;
+    private long maxQueueWaitMillis = 0;
+    private int maxQueueDepth = 0;
+    private long memoryCacheHitCount = 0;
+    private long databaseCacheHitCount = 0;
+    private long cacheMissCount = 0;
+    private long batchCount = 0;
+    private long batchedTextCount = 0;
+    private int maxBatchSize = 0;
+
+    /**
+     * @param queueDepth the number of tasks waiting in the queue after the addition.
+     */
+    void onTaskQueued(int queueDepth) {
+        synchronized (lock) {
+            queuedTaskCount++;
+            maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+        }
+    }
+
+    void onTaskStarted(long queueWaitNanos) {
+        final long waitMillis = queueWaitNanos / 1000000;
+        synchronized (lock) {
+            startedTaskCount++;
+            totalQueueWaitMillis += waitMillis;
+            lastQueueWaitMillis = waitMillis;
+            maxQueueWaitMillis = Math.max(maxQueueWaitMillis, waitMillis);
+        }
+    }
+
+    void onTaskRejected() {
+        synchronized (lock) {
+            rejectedTaskCount++;
+        }
+    }
+
+    /**
+     * @param fromDatabase true if the translation was not in memory and has been read from the database.
+     */
+    void onCacheHit(boolean fromDatabase) {
+        synchronized (lock) {
+            if (fromDatabase) {
+                databaseCacheHitCount++;
+            } else {
+                memoryCacheHitCount++;
+            }
+        }
+    }
+
+    void onCacheMiss() {
+        synchronized (lock) {
+            cacheMissCount++;
+        }
+    }
+
+    /**
+     * @param size the number of texts translated by the request.
+     */
+    void onBatchSent(int size) {
+        synchronized (lock) {
+            batchCount++;
+            batchedTextCount += size;
+            maxBatchSize = Math.max(maxBatchSize, size);
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        final Snapshot snapshot = new Snapshot();
+        synchronized (lock) {
+            snapshot.queuedTaskCount = queuedTaskCount;
+            snapshot.startedTaskCount = startedTaskCount;
+            snapshot.rejectedTaskCount = rejectedTaskCount;
+            snapshot.averageQueueWaitMillis = startedTaskCount > 0 ? totalQueueWaitMillis / startedTaskCount : 0;
+            snapshot.lastQueueWaitMillis = lastQueueWaitMillis;
+            snapshot.maxQueueWaitMillis = maxQueueWaitMillis;
+            snapshot.maxQueueDepth = maxQueueDepth;
+            snapshot.memoryCacheHitCount = memoryCacheHitCount;
+            snapshot.databaseCacheHitCount = databaseCacheHitCount;
+            snapshot.cacheMissCount = cacheMissCount;
+            snapshot.batchCount = batchCount;
+            snapshot.batchedTextCount = batchedTextCount;
+            snapshot.maxBatchSize = maxBatchSize;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Immutable copy of the metrics, it can be sent to the clients of the services.
+     */
+    public static class Snapshot implements Parcelable {
+        private long queuedTaskCount;
+        private long startedTaskCount;
+        private long rejectedTaskCount;
+        private long averageQueueWaitMillis;
+        private long lastQueueWaitMillis;
+        private long maxQueueWaitMillis;
+        private int maxQueueDepth;
+        private long memoryCacheHitCount;
+        private long databaseCacheHitCount;
+        private long cacheMissCount;
+        private long batchCount;
+        private long batchedTextCount;
+        private int maxBatchSize;
+
+        private Snapshot() {
+        }
+
+        public static final Creator<Snapshot> CREATOR = new Creator<Snapshot>() {
+            @Override
+            public Snapshot createFromParcel(Parcel in) {
+                return new Snapshot(in);
+            }
+
+            @Override
+            public Snapshot[] newArray(int size) {
+                return new Snapshot[size];
+            }
+        };
+
+        private Snapshot(Parcel in) {
+            queuedTaskCount = in.readLong();
+            startedTaskCount = in.readLong();
+            rejectedTaskCount = in.readLong();
+            averageQueueWaitMillis = in.readLong();
+            lastQueueWaitMillis = in.readLong();
+            maxQueueWaitMillis = in.readLong();
+            maxQueueDepth = in.readInt();
+            memoryCacheHitCount = in.readLong();
+            databaseCacheHitCount = in.readLong();
+            cacheMissCount = in.readLong();
+            batchCount = in.readLong();
+            batchedTextCount = in.readLong();
+            maxBatchSize = in.readInt();
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel parcel, int i) {
+            parcel.writeLong(queuedTaskCount);
+            parcel.writeLong(startedTaskCount);
+            parcel.writeLong(rejectedTaskCount);
+            parcel.writeLong(averageQueueWaitMillis);
+            parcel.writeLong(lastQueueWaitMillis);
+            parcel.writeLong(maxQueueWaitMillis);
+            parcel.writeInt(maxQueueDepth);
+            parcel.writeLong(memoryCacheHitCount);
+            parcel.writeLong(databaseCacheHitCount);
+            parcel.writeLong(cacheMissCount);
+            parcel.writeLong(batchCount);
+            parcel.writeLong(batchedTextCount);
+            parcel.writeInt(maxBatchSize);
+        }
+
+        public long getQueuedTaskCount() {
+            return queuedTaskCount;
+        }
+
+        public long getStartedTaskCount() {
+            return startedTaskCount;
+        }
+
+        public long getRejectedTaskCount() {
+            return rejectedTaskCount;
+        }
+
+        public long getAverageQueueWaitMillis() {
+            return averageQueueWaitMillis;
+        }
+
+        public long getLastQueueWaitMillis() {
+            return lastQueueWaitMillis;
+        }
+
+        public long getMaxQueueWaitMillis() {
+            return maxQueueWaitMillis;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getMemoryCacheHitCount() {
+            return memoryCacheHitCount;
+        }
+
+        public long getDatabaseCacheHitCount() {
+            return databaseCacheHitCount;
+        }
+
+        public long getCacheMissCount() {
+            return cacheMissCount;
+        }
+
+        public long getBatchCount() {
+            return batchCount;
+        }
+
+        public long getBatchedTextCount() {
+            return batchedTextCount;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        /**
+         * @return a textual report of the metrics, used by the debug screen and for the logs.
+         */
+        public String toReport() {
+            StringBuilder report = new StringBuilder();
+            report.append(String.format(Locale.US, "translator tasks: %d queued, %d executed, %d rejected\n", queuedTaskCount, startedTaskCount, rejectedTaskCount));
+            report.append(String.format(Locale.US, "translator queue wait: last %d ms, average %d ms, max %d ms\n", lastQueueWaitMillis, averageQueueWaitMillis, maxQueueWaitMillis));
+            report.append(String.format(Locale.US, "translator queue depth: max %d tasks\n", maxQueueDepth));
+            report.append(String.format(Locale.US, "translation cache: %d memory hits, %d database hits, %d misses\n", memoryCacheHitCount, databaseCacheHitCount, cacheMissCount));
+            report.append(String.format(Locale.US, "translation requests: %d for %d texts, max %d texts per request", batchCount, batchedTextCount, maxBatchSize));
+            return report.toString();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import nie.translator.rtranslatordevedition.Global;
+
+
+/**
+ * The original detector: there is voice if any sample exceeds the amplitude threshold decided by the mic sensitivity.
+ */
+public class AmplitudeVoiceActivityDetector implements VoiceActivityDetector {
+    private Global global;
+
+    public AmplitudeVoiceActivityDetector(Global global) {
+        this.global = global;
+    }
+
+    @Override
+    public void reset(int sampleRate) {
+    }
+
+    @Override
+    public boolean isVoice(byte[] buffer, int size) {
+        final int amplitudeThreshold = global.getAmplitudeThreshold();
+        for (int i = 0; i < size - 1; i += 2) {
+            // The buffer has LINEAR16 in little endian.
+            int s = buffer[i + 1];
+            if (s < 0) s *= -1;
+            s <<= 8;
+            s += Math.abs(buffer[i]);
+            if (s > amplitudeThreshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import android.media.AudioFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A chunk of audio in {@link AudioFormat#ENCODING_PCM_16BIT} taken from an {@link AudioFramePool}.
+ * The frame is reference counted: who receives a frame (for example in {@link Recorder.Callback#onVoice(AudioFrame)}) can use it only
+ * for the duration of the call, if he wants to keep it longer he must call {@link #retain()} and then {@link #release()} when he has finished,
+ * when the last reference is released the frame returns to its pool and its data will be overwritten.
+ */
+public class AudioFrame {
+    private final AudioFramePool pool;
+    private final byte[] data;
+    private int size;
+    private final AtomicInteger references = new AtomicInteger(0);
+
+    AudioFrame(AudioFramePool pool, int capacity) {
+        this.pool = pool;
+        this.data = new byte[capacity];
+    }
+
+    /**
+     * @return the audio data, only the first {@link #getSize()} bytes are relevant.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    void setSize(int size) {
+        this.size = Math.max(size, 0);
+    }
+
+    public AudioFrame retain() {
+        if (references.getAndIncrement() <= 0) {
+            references.getAndDecrement();
+            throw new IllegalStateException("retain of a released AudioFrame");
+        }
+        return this;
+    }
+
+    public void release() {
+        int remainingReferences = references.decrementAndGet();
+        if (remainingReferences == 0) {
+            pool.recycle(this);
+        } else if (remainingReferences < 0) {
+            references.incrementAndGet();
+            throw new IllegalStateException("AudioFrame released too many times");
+        }
+    }
+
+    void acquire() {
+        references.set(1);
+    }
+}
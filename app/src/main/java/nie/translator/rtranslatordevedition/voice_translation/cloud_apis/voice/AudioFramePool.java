@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import java.util.ArrayDeque;
+
+
+/**
+ * Pool of {@link AudioFrame} of the same capacity, frames are created only when the pool is empty,
+ * so once the consumers have reached their steady state the recording does not allocate anything.
+ * Frames can be released from any thread.
+ */
+public class AudioFramePool {
+    private final int frameCapacity;
+    private final ArrayDeque<AudioFrame> freeFrames = new ArrayDeque<>();
+    private int createdFrames = 0;
+    private final Object lock = new Object();
+
+    public AudioFramePool(int frameCapacity, int preallocatedFrames) {
+        this.frameCapacity = frameCapacity;
+        for (int i = 0; i < preallocatedFrames; i++) {
+            freeFrames.addLast(new AudioFrame(this, frameCapacity));
+            createdFrames++;
+        }
+    }
+
+    /**
+     * Returns a free frame with a reference already taken by the caller, who must call {@link AudioFrame#release()} when he has finished using it.
+     */
+    public AudioFrame acquire() {
+        AudioFrame frame;
+        synchronized (lock) {
+            frame = freeFrames.pollFirst();
+            if (frame == null) {
+                frame = new AudioFrame(this, frameCapacity);
+                createdFrames++;
+            }
+        }
+        frame.setSize(0);
+        frame.acquire();
+        return frame;
+    }
+
+    void recycle(AudioFrame frame) {
+        synchronized (lock) {
+            freeFrames.addLast(frame);
+        }
+    }
+
+    public int getFrameCapacity() {
+        return frameCapacity;
+    }
+
+    /**
+     * @return the number of frames allocated since the creation of the pool.
+     */
+    public int getCreatedFrames() {
+        synchronized (lock) {
+            return createdFrames;
+        }
+    }
+}
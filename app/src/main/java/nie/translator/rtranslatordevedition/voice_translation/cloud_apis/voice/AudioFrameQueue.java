@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Bounded queue of {@link AudioFrame} between exactly one producer thread (the capture) and one consumer thread (the dispatch).
+ * Offering and polling never lock and never allocate, so the capture thread cannot be blocked by a slow consumer:
+ * when the queue is full the frame is refused and the producer drops it.
+ * The consumer can wait for new frames with {@link #take()}, the producer wakes it up at every frame offered.
+ */
+class AudioFrameQueue {
+    private final AudioFrame[] frames;
+    // increasing indexes, the position in the array is index % frames.length
+    private final AtomicLong head = new AtomicLong(0);  // next frame to poll, written only by the consumer
+    private final AtomicLong tail = new AtomicLong(0);  // next free position, written only by the producer
+    private volatile Thread consumer;
+    private volatile boolean closed = false;
+
+    AudioFrameQueue(int capacity) {
+        if (capacity < 1) {
+            capacity = 1;
+        }
+        frames = new AudioFrame[capacity];
+    }
+
+    /**
+     * Called by the producer, the queue takes the reference of the frame only if it returns true.
+     *
+     * @return false if the queue is full.
+     */
+    boolean offer(AudioFrame frame) {
+        final long currentTail = tail.get();
+        if (currentTail - head.get() == frames.length) {
+            return false;
+        }
+        frames[(int) (currentTail % frames.length)] = frame;
+        tail.lazySet(currentTail + 1);  // publishes the frame to the consumer
+        wakeUpConsumer();
+        return true;
+    }
+
+    /**
+     * Called by the producer when it will not offer other frames, after the remaining frames {@link #take()} returns null.
+     */
+    void close() {
+        closed = true;
+        wakeUpConsumer();
+    }
+
+    /**
+     * Called by the consumer, the caller takes the reference of the returned frame.
+     *
+     * @return the oldest frame or null if the queue is empty.
+     */
+    AudioFrame poll() {
+        final long currentHead = head.get();
+        if (currentHead == tail.get()) {
+            return null;
+        }
+        final int index = (int) (currentHead % frames.length);
+        final AudioFrame frame = frames[index];
+        frames[index] = null;
+        head.lazySet(currentHead + 1);  // frees the position for the producer
+        return frame;
+    }
+
+    /**
+     * Called by the consumer, waits until a frame is available.
+     *
+     * @return the oldest frame, or null if the queue has been closed and is empty or if the thread has been interrupted.
+     */
+    AudioFrame take() {
+        consumer = Thread.currentThread();
+        while (true) {
+            final boolean wasClosed = closed;  // read before polling, so the frames offered before the closing are not lost
+            final AudioFrame frame = poll();
+            if (frame != null) {
+                return frame;
+            }
+            if (wasClosed || Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            LockSupport.park(this);  // if the producer has already woken us up park returns immediately
+        }
+    }
+
+    /**
+     * Called by the consumer, releases all the frames contained.
+     */
+    void clear() {
+        AudioFrame frame;
+        while ((frame = poll()) != null) {
+            frame.release();
+        }
+    }
+
+    /**
+     * Called by the consumer when it stops taking frames: releases the frames contained and those offered until the producer
+     * closes the queue, so no frame is left in the queue.
+     */
+    void drain() {
+        consumer = Thread.currentThread();
+        final boolean interrupted = Thread.interrupted();  // otherwise park would not wait
+        while (true) {
+            final boolean wasClosed = closed;  // read before clearing, so the frames offered before the closing are released
+            clear();
+            if (wasClosed) {
+                break;
+            }
+            LockSupport.park(this);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    int getCapacity() {
+        return frames.length;
+    }
+
+    private void wakeUpConsumer() {
+        final Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+
+/**
+ * Used by the finite {@link AudioSource}s to deliver the audio in real time, like the microphone does, instead of as fast as possible.
+ */
+class AudioPacer {
+    private final boolean paced;
+    private int sampleRate;
+    private long startNanos;
+
+    /**
+     * @param paced if false {@link #waitFor(long)} never waits.
+     */
+    AudioPacer(boolean paced) {
+        this.paced = paced;
+    }
+
+    void start(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Waits until the real time elapsed since {@link #start(int)} reaches the duration of the audio delivered.
+     *
+     * @param deliveredBytes the bytes of LINEAR16 mono audio delivered since the start.
+     * @return false if the thread has been interrupted while waiting.
+     */
+    boolean waitFor(long deliveredBytes) {
+        if (paced && sampleRate > 0) {
+            final long audioNanos = (deliveredBytes / 2) * 1000000000L / sampleRate;
+            final long waitMillis = (startNanos + audioNanos - System.nanoTime()) / 1000000;
+            if (waitMillis > 0) {
+                try {
+                    Thread.sleep(waitMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
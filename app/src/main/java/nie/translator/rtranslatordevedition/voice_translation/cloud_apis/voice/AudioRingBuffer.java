@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+
+/**
+ * Circular buffer of {@link AudioFrame}, the array of frames is allocated in the constructor so adding and reading never allocate.
+ * The buffer owns a reference of every frame it contains: when the buffer is full the oldest frame is released to make room for the new one,
+ * so the buffer always contains the last {@link #getCapacity()} frames read (used for the audio before the start of the voice).
+ */
+class AudioRingBuffer {
+    private final AudioFrame[] frames;
+    private int first = 0;  // index of the oldest frame
+    private int count = 0;
+
+    AudioRingBuffer(int capacity) {
+        if (capacity < 1) {
+            capacity = 1;
+        }
+        frames = new AudioFrame[capacity];
+    }
+
+    /**
+     * Adds the frame taking ownership of the reference of the caller, if the buffer is full the oldest frame is released.
+     */
+    void add(AudioFrame frame) {
+        int index = (first + count) % frames.length;
+        if (count == frames.length) {
+            frames[index].release();
+            first = (first + 1) % frames.length;  // the oldest frame has been overwritten
+        } else {
+            count++;
+        }
+        frames[index] = frame;
+    }
+
+    /**
+     * @param i position of the frame, 0 is the oldest.
+     */
+    AudioFrame get(int i) {
+        return frames[(first + i) % frames.length];
+    }
+
+    int size() {
+        return count;
+    }
+
+    int getCapacity() {
+        return frames.length;
+    }
+
+    /**
+     * Releases all the frames contained.
+     */
+    void clear() {
+        for (int i = 0; i < count; i++) {
+            int index = (first + i) % frames.length;
+            frames[index].release();
+            frames[index] = null;
+        }
+        first = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+
+/**
+ * Source of the audio read by the {@link Recorder}, the audio is always LINEAR16 mono (little endian).
+ * Besides the microphone ({@link MicrophoneAudioSource}) the audio can come from a file ({@link FileAudioSource})
+ * or be generated ({@link SyntheticAudioSource}), so the Recorder and what follows it can be used without a device.
+ */
+public interface AudioSource {
+    /**
+     * Returned by {@link #read(byte[], int, int)} when the audio is finished (only for finite sources).
+     */
+    int END_OF_STREAM = Integer.MIN_VALUE;  // distinct from the errors of AudioRecord.read
+    /**
+     * Generic read error (the same value of AudioRecord.ERROR).
+     */
+    int ERROR = -1;
+
+    /**
+     * Starts the source, after this call {@link #getSampleRate()} and {@link #getBufferSize()} are valid.
+     *
+     * @return false if the source cannot be started.
+     */
+    boolean start();
+
+    /**
+     * @return the sample rate of the audio, valid after {@link #start()}.
+     */
+    int getSampleRate();
+
+    /**
+     * @return the suggested size in bytes of each read, valid after {@link #start()}.
+     */
+    int getBufferSize();
+
+    /**
+     * Reads the audio, blocking until some data is available.
+     *
+     * @return the number of bytes read, {@link #END_OF_STREAM} if the audio is finished or another negative value in case of error.
+     */
+    int read(byte[] buffer, int offset, int size);
+
+    /**
+     * Stops the source and releases its resources, it can be started again with {@link #start()}.
+     */
+    void stop();
+}
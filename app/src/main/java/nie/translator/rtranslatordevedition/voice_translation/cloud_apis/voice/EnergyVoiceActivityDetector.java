@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import nie.translator.rtranslatordevedition.Global;
+
+
+/**
+ * Divides the buffer in windows of {@link #WINDOW_MILLIS} and calculates the RMS energy of each window, a window is active if its energy exceeds
+ * both the threshold decided by the mic sensitivity and the noise floor multiplied by {@link #NOISE_MARGIN}.
+ * There is voice only if at least {@link #MIN_ACTIVE_WINDOWS} consecutive windows are active, so isolated peaks (a door slam) are ignored;
+ * the run of active windows continues between the buffers, so the result does not depend on their size.
+ * The noise floor is the lowest window energy of the last {@link #NOISE_FLOOR_MILLIS}: even during a speech there are pauses between words,
+ * so this value follows the background noise of the place, which is thus gradually excluded from the voice.
+ */
+public class EnergyVoiceActivityDetector implements VoiceActivityDetector {
+    private static final int WINDOW_MILLIS = 10;
+    private static final int MIN_ACTIVE_WINDOWS = 3;
+    private static final int NOISE_FLOOR_MILLIS = 2000;
+    private static final float NOISE_MARGIN = 2.5f;
+    private static final float RMS_PER_AMPLITUDE = 0.3f;  // ratio between the rms of a voice and its peaks, used to convert the amplitude threshold
+    private Global global;
+    private int sampleRate;
+    private int windowSamples;
+    private float[] windowsRms = new float[NOISE_FLOOR_MILLIS / WINDOW_MILLIS];   // circular history used for the noise floor
+    private int windowsRmsIndex = 0;
+    private int activeWindowsRun = 0;  // consecutive active windows until the last one analyzed, also of the previous buffers
+
+    public EnergyVoiceActivityDetector(Global global) {
+        this.global = global;
+    }
+
+    @Override
+    public void reset(int sampleRate) {
+        this.sampleRate = sampleRate;
+        windowSamples = Math.max(sampleRate * WINDOW_MILLIS / 1000, 1);
+        for (int i = 0; i < windowsRms.length; i++) {
+            windowsRms[i] = 0;
+        }
+        windowsRmsIndex = 0;
+        activeWindowsRun = 0;
+    }
+
+    @Override
+    public boolean isVoice(byte[] buffer, int size) {
+        final float threshold = Math.max(global.getAmplitudeThreshold() * RMS_PER_AMPLITUDE, getNoiseFloor() * NOISE_MARGIN);
+        final int samples = size / 2;
+        boolean voice = false;
+        for (int start = 0; start < samples; start += windowSamples) {
+            int end = Math.min(start + windowSamples, samples);
+            double energy = 0;
+            for (int i = start; i < end; i++) {
+                int sample = getSample(buffer, i);
+                energy += sample * sample;
+            }
+            float rms = (float) Math.sqrt(energy / (end - start));
+            windowsRms[windowsRmsIndex] = rms;
+            windowsRmsIndex = (windowsRmsIndex + 1) % windowsRms.length;
+            if (rms > threshold && isActiveWindow(buffer, start, end)) {
+                activeWindowsRun++;
+                if (activeWindowsRun >= MIN_ACTIVE_WINDOWS) {
+                    voice = true;
+                }
+            } else {
+                activeWindowsRun = 0;
+            }
+        }
+        return voice;
+    }
+
+    /**
+     * Further condition that a window with enough energy must satisfy to be considered active.
+     *
+     * @param start index of the first sample of the window.
+     * @param end   index after the last sample of the window.
+     */
+    protected boolean isActiveWindow(byte[] buffer, int start, int end) {
+        return true;
+    }
+
+    private float getNoiseFloor() {
+        float min = Float.MAX_VALUE;
+        for (float rms : windowsRms) {
+            if (rms < min) {
+                min = rms;
+            }
+        }
+        return min;
+    }
+
+    protected int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the sample of index i of a buffer in LINEAR16 little endian.
+     */
+    protected static int getSample(byte[] buffer, int i) {
+        return (buffer[i * 2] & 0xFF) | (buffer[i * 2 + 1] << 8);
+    }
+}
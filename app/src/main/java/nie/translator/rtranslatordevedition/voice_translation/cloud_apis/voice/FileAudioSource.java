@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * {@link AudioSource} that reads the audio from a WAV file (PCM 16 bit mono) or from a file of raw LINEAR16 mono samples.
+ * The audio can be delivered in real time (paced), like the microphone, or as fast as it can be read.
+ */
+public class FileAudioSource implements AudioSource {
+    private static final int BUFFER_MILLIS = 100;
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+    private final File file;
+    private final boolean wav;
+    private final AudioPacer pacer;
+    private int sampleRate;
+    private InputStream inputStream;
+    private long remainingBytes;  // of the data chunk, Long.MAX_VALUE if unknown
+    private long deliveredBytes;
+
+    /**
+     * Creates a source that reads a WAV file, the sample rate is read from the file.
+     *
+     * @param paced if true the audio is delivered in real time, otherwise as fast as possible.
+     */
+    public FileAudioSource(File wavFile, boolean paced) {
+        this.file = wavFile;
+        this.wav = true;
+        this.pacer = new AudioPacer(paced);
+    }
+
+    /**
+     * Creates a source that reads a file of raw LINEAR16 mono samples.
+     *
+     * @param paced if true the audio is delivered in real time, otherwise as fast as possible.
+     */
+    public FileAudioSource(File pcmFile, int sampleRate, boolean paced) {
+        this.file = pcmFile;
+        this.wav = false;
+        this.sampleRate = sampleRate;
+        this.pacer = new AudioPacer(paced);
+    }
+
+    @Override
+    public boolean start() {
+        stop();
+        try {
+            inputStream = new BufferedInputStream(new FileInputStream(file));
+            remainingBytes = Long.MAX_VALUE;
+            if (wav) {
+                readWavHeader();
+            }
+        } catch (IOException e) {
+            Log.e("fileAudioSource", "cannot read " + file + ": " + e.getMessage());
+            stop();
+            return false;
+        }
+        deliveredBytes = 0;
+        pacer.start(sampleRate);
+        return true;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return (sampleRate * BUFFER_MILLIS / 1000) * 2;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int size) {
+        if (inputStream == null || remainingBytes == 0) {
+            return END_OF_STREAM;
+        }
+        size = (int) Math.min(size & ~1, remainingBytes);  // only whole samples
+        int read = 0;
+        try {
+            while (read < size) {
+                final int result = inputStream.read(buffer, offset + read, size - read);
+                if (result == -1) {
+                    break;
+                }
+                read += result;
+            }
+        } catch (IOException e) {
+            Log.e("fileAudioSource", "read error: " + e.getMessage());
+            return ERROR;
+        }
+        read &= ~1;  // an incomplete last sample is discarded
+        if (read == 0 && size > 0) {
+            return END_OF_STREAM;
+        }
+        if (remainingBytes != Long.MAX_VALUE) {
+            remainingBytes -= read;
+        }
+        deliveredBytes += read;
+        pacer.waitFor(deliveredBytes);
+        return read;
+    }
+
+    @Override
+    public void stop() {
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            inputStream = null;
+        }
+    }
+
+    /**
+     * Reads the chunks of the file until the beginning of the audio data, checking that the format is supported.
+     */
+    private void readWavHeader() throws IOException {
+        if (readTag() != 0x46464952 /* "RIFF" */) {
+            throw new IOException("not a RIFF file");
+        }
+        readInt();
+        if (readTag() != 0x45564157 /* "WAVE" */) {
+            throw new IOException("not a WAVE file");
+        }
+        boolean formatRead = false;
+        while (true) {
+            final int tag = readTag();
+            final long chunkSize = readInt() & 0xFFFFFFFFL;
+            if (tag == 0x20746D66 /* "fmt " */) {
+                final int format = readShort();
+                final int channels = readShort();
+                sampleRate = readInt();
+                readInt();   // byte rate
+                readShort(); // block align
+                final int bitsPerSample = readShort();
+                if ((format != WAVE_FORMAT_PCM && format != WAVE_FORMAT_EXTENSIBLE) || channels != 1 || bitsPerSample != 16 || sampleRate <= 0) {
+                    throw new IOException("unsupported format (only PCM 16 bit mono is supported)");
+                }
+                skip(chunkSize - 16 + (chunkSize & 1));
+                formatRead = true;
+            } else if (tag == 0x61746164 /* "data" */) {
+                if (!formatRead) {
+                    throw new IOException("data chunk before the fmt chunk");
+                }
+                // some writers of streams don't know the size of the data in advance
+                remainingBytes = (chunkSize == 0 || chunkSize == 0xFFFFFFFFL) ? Long.MAX_VALUE : chunkSize;
+                return;
+            } else {
+                skip(chunkSize + (chunkSize & 1));  // the chunks are aligned to 2 bytes
+            }
+        }
+    }
+
+    private int readTag() throws IOException {
+        return readInt();
+    }
+
+    private int readInt() throws IOException {
+        return readByte() | (readByte() << 8) | (readByte() << 16) | (readByte() << 24);
+    }
+
+    private int readShort() throws IOException {
+        return readByte() | (readByte() << 8);
+    }
+
+    private int readByte() throws IOException {
+        final int value = inputStream.read();
+        if (value == -1) {
+            throw new EOFException("truncated WAV header");
+        }
+        return value;
+    }
+
+    private void skip(long bytes) throws IOException {
+        while (bytes > 0) {
+            final long skipped = inputStream.skip(bytes);
+            if (skipped <= 0) {
+                readByte();
+                bytes--;
+            } else {
+                bytes -= skipped;
+            }
+        }
+    }
+}
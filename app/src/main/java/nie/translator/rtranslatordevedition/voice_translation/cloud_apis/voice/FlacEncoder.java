@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+
+/**
+ * Streaming FLAC encoder for LINEAR16 mono audio, used to reduce the data sent to the recognizer.
+ * Every buffer passed to {@link #encode(byte[], int)} becomes a FLAC frame (the stream uses the variable block size strategy,
+ * so no audio is kept waiting to fill a block), the first frame after {@link #start(int)} is preceded by the stream header.
+ * Each frame is encoded with the fixed predictor (order 0-4) that produces the smaller residual, coded with a single Rice partition,
+ * or verbatim if it is smaller. The memory is reused between the calls, it is reallocated only if a bigger buffer arrives.
+ */
+class FlacEncoder {
+    private static final int MAX_ORDER = 4;
+    private static final int MAX_RICE_PARAMETER = 14;  // 15 is the escape code
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int STREAM_HEADER_SIZE = 42;  // "fLaC" + metadata block header + STREAMINFO
+    private static final int MAX_FRAME_OVERHEAD = 32;  // frame header, subframe header and footer
+    private int sampleRate;
+    private long nextSampleNumber;
+    private boolean headerWritten;
+    private int[] samples = new int[0];
+    private final BitWriter writer = new BitWriter();
+    // statistics
+    private long encodedInputBytes = 0;
+    private long encodedOutputBytes = 0;
+    private long encodingNanos = 0;
+
+    /**
+     * Starts a new stream.
+     */
+    void start(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.nextSampleNumber = 0;
+        this.headerWritten = false;
+    }
+
+    /**
+     * Encodes a buffer of LINEAR16 audio.
+     *
+     * @return the number of bytes written at the beginning of {@link #getOutput()}.
+     */
+    int encode(byte[] pcm, int size) {
+        final long startTime = System.nanoTime();
+        final int blockSize = Math.max(size, 0) / 2;
+        if (samples.length < blockSize) {
+            samples = new int[blockSize];
+        }
+        writer.reset(STREAM_HEADER_SIZE + MAX_FRAME_OVERHEAD + MAX_ORDER * 4 + blockSize * 2);
+        if (!headerWritten) {
+            writeStreamHeader();
+            headerWritten = true;
+        }
+        if (blockSize > 0) {
+            for (int i = 0; i < blockSize; i++) {
+                samples[i] = (short) ((pcm[i * 2] & 0xFF) | (pcm[i * 2 + 1] << 8));
+            }
+            writeFrame(blockSize);
+            nextSampleNumber += blockSize;
+        }
+        final int outputSize = writer.getSize();
+        encodedInputBytes += blockSize * 2;
+        encodedOutputBytes += outputSize;
+        encodingNanos += System.nanoTime() - startTime;
+        return outputSize;
+    }
+
+    byte[] getOutput() {
+        return writer.getBuffer();
+    }
+
+    private void writeStreamHeader() {
+        writer.writeBits('f', 8);
+        writer.writeBits('L', 8);
+        writer.writeBits('a', 8);
+        writer.writeBits('C', 8);
+        // metadata block header: last block, type STREAMINFO, length
+        writer.writeBits(1, 1);
+        writer.writeBits(0, 7);
+        writer.writeBits(34, 24);
+        // STREAMINFO
+        writer.writeBits(16, 16);  // min block size
+        writer.writeBits(65535, 16);  // max block size
+        writer.writeBits(0, 24);  // min frame size (unknown)
+        writer.writeBits(0, 24);  // max frame size (unknown)
+        writer.writeBits(sampleRate, 20);
+        writer.writeBits(0, 3);  // channels - 1
+        writer.writeBits(BITS_PER_SAMPLE - 1, 5);
+        writer.writeBits(0, 36);  // total samples (unknown, it is a stream)
+        for (int i = 0; i < 4; i++) {
+            writer.writeBits(0, 32);  // MD5 (not calculated)
+        }
+    }
+
+    private void writeFrame(int blockSize) {
+        final int frameStart = writer.getSize();
+        // frame header
+        writer.writeBits(0x3FFE, 14);  // sync code
+        writer.writeBits(0, 1);
+        writer.writeBits(1, 1);  // variable block size
+        writer.writeBits(7, 4);  // block size - 1 written at the end of the header in 16 bits
+        writer.writeBits(0, 4);  // sample rate from STREAMINFO
+        writer.writeBits(0, 4);  // mono
+        writer.writeBits(4, 3);  // 16 bits per sample
+        writer.writeBits(0, 1);
+        writeUtf8Number(nextSampleNumber);
+        writer.writeBits(blockSize - 1, 16);
+        writer.writeBits(crc8(writer.getBuffer(), frameStart, writer.getSize()), 8);
+
+        // subframe
+        int bestOrder = -1;
+        long bestBits = (long) blockSize * BITS_PER_SAMPLE;  // verbatim
+        int bestRiceParameter = 0;
+        for (int order = 0; order <= MAX_ORDER && order < blockSize; order++) {
+            long sum = 0;
+            for (int i = order; i < blockSize; i++) {
+                sum += fold(residual(order, i));
+            }
+            int riceParameter = riceParameter(sum, blockSize - order);
+            long bits = (long) order * BITS_PER_SAMPLE + 6 + 4 + (long) (blockSize - order) * (riceParameter + 1) + (sum >> riceParameter);
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestOrder = order;
+                bestRiceParameter = riceParameter;
+            }
+        }
+        writer.writeBits(0, 1);
+        if (bestOrder == -1) {
+            writer.writeBits(1, 6);  // verbatim
+            writer.writeBits(0, 1);
+            for (int i = 0; i < blockSize; i++) {
+                writer.writeBits(samples[i], BITS_PER_SAMPLE);
+            }
+        } else {
+            writer.writeBits(8 | bestOrder, 6);  // fixed predictor
+            writer.writeBits(0, 1);
+            for (int i = 0; i < bestOrder; i++) {
+                writer.writeBits(samples[i], BITS_PER_SAMPLE);  // warm-up samples
+            }
+            writer.writeBits(0, 2);  // Rice coding with 4 bits parameters
+            writer.writeBits(0, 4);  // partition order 0
+            writer.writeBits(bestRiceParameter, 4);
+            for (int i = bestOrder; i < blockSize; i++) {
+                writer.writeRice(fold(residual(bestOrder, i)), bestRiceParameter);
+            }
+        }
+
+        // frame footer
+        writer.alignToByte();
+        writer.writeBits(crc16(writer.getBuffer(), frameStart, writer.getSize()), 16);
+    }
+
+    private int residual(int order, int i) {
+        switch (order) {
+            case 0:
+                return samples[i];
+            case 1:
+                return samples[i] - samples[i - 1];
+            case 2:
+                return samples[i] - 2 * samples[i - 1] + samples[i - 2];
+            case 3:
+                return samples[i] - 3 * samples[i - 1] + 3 * samples[i - 2] - samples[i - 3];
+            default:
+                return samples[i] - 4 * samples[i - 1] + 6 * samples[i - 2] - 4 * samples[i - 3] + samples[i - 4];
+        }
+    }
+
+    private static long fold(int residual) {
+        return residual >= 0 ? ((long) residual) << 1 : ((-(long) residual) << 1) - 1;
+    }
+
+    private static int riceParameter(long sum, int count) {
+        int parameter = 0;
+        if (count > 0) {
+            long mean = sum / count;
+            while (parameter < MAX_RICE_PARAMETER && (1L << (parameter + 1)) <= mean) {
+                parameter++;
+            }
+        }
+        return parameter;
+    }
+
+    private void writeUtf8Number(long value) {
+        if (value < 0x80) {
+            writer.writeBits((int) value, 8);
+            return;
+        }
+        int bytes = 2;
+        while (bytes < 7 && value >= (1L << (5 * bytes + 1))) {
+            bytes++;
+        }
+        int shift = (bytes - 1) * 6;
+        int firstByte = ((0xFF00 >> bytes) & 0xFF) | (int) (value >> shift);
+        writer.writeBits(firstByte, 8);
+        while (shift > 0) {
+            shift -= 6;
+            writer.writeBits(0x80 | (int) ((value >> shift) & 0x3F), 8);
+        }
+    }
+
+    private static int crc8(byte[] data, int start, int end) {
+        int crc = 0;
+        for (int i = start; i < end; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+            }
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] data, int start, int end) {
+        int crc = 0;
+        for (int i = start; i < end; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x8005) & 0xFFFF : (crc << 1) & 0xFFFF;
+            }
+        }
+        return crc;
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    long getEncodedInputBytes() {
+        return encodedInputBytes;
+    }
+
+    long getEncodedOutputBytes() {
+        return encodedOutputBytes;
+    }
+
+    long getEncodingNanos() {
+        return encodingNanos;
+    }
+
+    /**
+     * Writes bits in big endian order (as FLAC requires) in a reusable buffer.
+     */
+    private static class BitWriter {
+        private byte[] buffer = new byte[0];
+        private int size;
+        private long accumulator;
+        private int accumulatedBits;
+
+        void reset(int capacity) {
+            if (buffer.length < capacity) {
+                buffer = new byte[capacity];
+            }
+            size = 0;
+            accumulator = 0;
+            accumulatedBits = 0;
+        }
+
+        /**
+         * Writes the lower count bits of value, count must be at most 32.
+         */
+        void writeBits(long value, int count) {
+            if (count > 32) {
+                writeBits(value >>> 32, count - 32);
+                count = 32;
+            }
+            accumulator = (accumulator << count) | (value & ((1L << count) - 1));
+            accumulatedBits += count;
+            while (accumulatedBits >= 8) {
+                accumulatedBits -= 8;
+                buffer[size++] = (byte) (accumulator >>> accumulatedBits);
+            }
+        }
+
+        void writeRice(long value, int parameter) {
+            long quotient = value >>> parameter;
+            while (quotient >= 32) {
+                writeBits(0, 32);
+                quotient -= 32;
+            }
+            writeBits(1, (int) quotient + 1);  // quotient zeros followed by a one
+            if (parameter > 0) {
+                writeBits(value, parameter);
+            }
+        }
+
+        void alignToByte() {
+            if (accumulatedBits > 0) {
+                writeBits(0, 8 - accumulatedBits);
+            }
+        }
+
+        /**
+         * @return the number of complete bytes written.
+         */
+        int getSize() {
+            return size;
+        }
+
+        byte[] getBuffer() {
+            return buffer;
+        }
+    }
+}
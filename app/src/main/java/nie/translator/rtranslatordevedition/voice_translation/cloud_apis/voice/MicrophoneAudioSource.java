@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+
+/**
+ * {@link AudioSource} that records from the microphone with an {@link AudioRecord}, choosing the first sample rate supported by the device.
+ */
+public class MicrophoneAudioSource implements AudioSource {
+    private static final int[] SAMPLE_RATE_CANDIDATES = new int[]{16000, 44100, 22050, 11025};
+    private static final int CHANNEL = AudioFormat.CHANNEL_IN_MONO;
+    private static final int ENCODING = AudioFormat.ENCODING_PCM_16BIT;
+    private AudioRecord mAudioRecord;
+    private int bufferSize;
+
+    @Override
+    public boolean start() {
+        stop();
+        mAudioRecord = createAudioRecord();
+        if (mAudioRecord == null) {
+            return false;
+        }
+        mAudioRecord.startRecording();  // here doesn't work with callback
+        return true;
+    }
+
+    @Override
+    public int getSampleRate() {
+        if (mAudioRecord != null) {
+            return mAudioRecord.getSampleRate();
+        }
+        return 0;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int size) {
+        return mAudioRecord.read(buffer, offset, size);
+    }
+
+    @Override
+    public void stop() {
+        if (mAudioRecord != null) {
+            mAudioRecord.stop();
+            mAudioRecord.release();
+            //mAudioRecord = null;
+        }
+    }
+
+    /**
+     * Creates a new {@link AudioRecord}.
+     *
+     * @return A newly created {@link AudioRecord}, or null if it cannot be created (missing
+     * permissions?).
+     */
+    private AudioRecord createAudioRecord() {
+        for (int sampleRate : SAMPLE_RATE_CANDIDATES) {
+            final int sizeInBytes = AudioRecord.getMinBufferSize(sampleRate, CHANNEL, ENCODING);
+            if (sizeInBytes == AudioRecord.ERROR_BAD_VALUE) {
+                continue;
+            }
+            final AudioRecord audioRecord;
+            /*if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
+                audioRecord = new AudioRecord(MediaRecorder.AudioSource.UNPROCESSED, sampleRate, CHANNEL, ENCODING, sizeInBytes);
+            }else{
+                audioRecord = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, sampleRate, CHANNEL, ENCODING, sizeInBytes);
+            }*/
+            audioRecord = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, sampleRate, CHANNEL, ENCODING, sizeInBytes);
+            if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
+                bufferSize = sizeInBytes * 2;  //attention here
+                return audioRecord;
+            } else {
+                audioRecord.release();
+            }
+        }
+        return null;
+    }
+}
@@ -18,76 +18,134 @@ package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
 
 import android.app.Service;
 import android.content.Context;
-import android.util.Log;
-import com.google.auth.Credentials;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
 import com.google.auth.oauth2.AccessToken;
-import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.speech.v1p1beta1.RecognitionConfig;
-import com.google.cloud.speech.v1p1beta1.SpeechGrpc;
 import com.google.cloud.speech.v1p1beta1.SpeechRecognitionAlternative;
 import com.google.cloud.speech.v1p1beta1.StreamingRecognitionConfig;
 import com.google.cloud.speech.v1p1beta1.StreamingRecognitionResult;
 import com.google.cloud.speech.v1p1beta1.StreamingRecognizeRequest;
 import com.google.cloud.speech.v1p1beta1.StreamingRecognizeResponse;
+import com.google.cloud.speech.v1p1beta1.WordInfo;
 import com.google.protobuf.ByteString;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import com.google.protobuf.Duration;
+import com.google.protobuf.ZeroCopyByteString;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.InputStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import io.grpc.CallOptions;
-import io.grpc.Channel;
-import io.grpc.ClientCall;
-import io.grpc.ClientInterceptor;
-import io.grpc.ClientInterceptors;
-import io.grpc.ManagedChannel;
-import io.grpc.Metadata;
-import io.grpc.MethodDescriptor;
+import java.util.Arrays;
 import io.grpc.Status;
-import io.grpc.StatusException;
-import io.grpc.internal.DnsNameResolverProvider;
-import io.grpc.okhttp.OkHttpChannelProvider;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.StreamObserver;
 import nie.translator.rtranslatordevedition.Global;
 import nie.translator.rtranslatordevedition.R;
 import nie.translator.rtranslatordevedition.tools.Chronometer;
 import nie.translator.rtranslatordevedition.tools.CustomLocale;
+import nie.translator.rtranslatordevedition.tools.LanguageIndex;
+import nie.translator.rtranslatordevedition.tools.Tracer;
 import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.CloudApi;
-import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.CloudApiResult;
 
 
 
 public class Recognizer extends CloudApi {
     public static final int CONSUMPTION_INTERVAL_IN_SECONDS = 15;
     public static final float COST_PER_INTERVAL = 0.006f;
-    private static final String HOSTNAME = "speech.googleapis.com";
-    private static final int PORT = 443;
+    public static final int ENCODING_LINEAR16 = 0;
+    public static final int ENCODING_FLAC = 1;
+    public static final int DEFAULT_AUDIO_ENCODING = ENCODING_LINEAR16;
+    // what to do with the audio when the network does not keep up and the queue of the audio to send grows
+    public static final int OVERLOAD_COALESCE = 0;  // the new audio is merged with the last queued one, so fewer and bigger messages are sent
+    public static final int OVERLOAD_DROP_OLDEST = 1;
+    public static final int OVERLOAD_BLOCK_CAPTURE = 2;  // the caller of recognize(AudioFrame) waits, used only if it is not the main thread
+    public static final int DEFAULT_OVERLOAD_POLICY = OVERLOAD_COALESCE;
+    // the audio is sent in frames of this duration, independently from the size of the buffers of the Recorder
+    public static final int DEFAULT_FRAME_DURATION_MILLIS = 100;
+    // with every policy the queue is bounded, when it is full the oldest audio is dropped
+    private static final int MAX_PENDING_AUDIO_MILLIS = 10000;
+    private static final int COALESCE_AFTER_PENDING_FRAMES = 4;
+    private static final int MAX_COALESCED_AUDIO_MILLIS = 500;
+    private static final long MAX_BLOCK_MILLIS = 1000;
+    // the server closes a stream that does not receive audio for about 10 seconds, so the standby stream is replaced before
+    private static final long STANDBY_STREAM_MAX_AGE_MILLIS = 8000;
+    // after this time without recognitions the standby stream is no longer replaced (the next recognition opens its stream normally)
+    private static final long STANDBY_STREAM_MAX_IDLE_MILLIS = 120000;
+    // the server closes a stream after about 5 minutes of audio, so long recognitions continue on a new stream before
+    private static final long STREAM_ROLLOVER_MILLIS = 240000;
+    // audio sent to both the old and the new stream, so the words said during the switch are not cut
+    private static final int ROLLOVER_OVERLAP_MILLIS = 2000;
+    // the server accepts at most 3 alternative languages
+    public static final int MAX_ALTERNATIVE_LANGUAGES = 3;
+    private static final String[] NO_ALTERNATIVE_LANGUAGES = new String[0];
     private RecognizerListener callback;
     private Chronometer chronometer = new Chronometer();
-    private RecognizerApi recognizerApi = new RecognizerApi();
-    private StreamObserver<StreamingRecognizeResponse> mResponseObserver;
-    private StreamObserver<StreamingRecognizeRequest> mRequestObserver;
+    private SpeechChannel speechChannel;
+    private boolean destroyed = false;
+    private final boolean returnResultOnlyAtTheEnd;
+    private final Object resultLock = new Object();
+    private Recognition currentRecognition;  // the last recognition started
+    private RecognitionStream currentStream;
     private boolean recognizing = false;
-    private ArrayDeque<ByteString> dataToRecognize = new ArrayDeque<>();
-    private String currentLanguageCode;
+    private ArrayDeque<PendingAudio> dataToRecognize = new ArrayDeque<>();
+    private int pendingBytes = 0;
+    private PendingAudio partialFrame;  // frame being filled, it is queued when it reaches frameBytes
+    private int frameBytes;
+    private final ArrayDeque<byte[]> freeFrameBuffers = new ArrayDeque<>();
+    private int overloadPolicy = DEFAULT_OVERLOAD_POLICY;
+    private final RecognizerMetrics metrics;
+    private boolean endlessStreaming;
+    private long recognitionSentBytes = 0;  // audio of the current recognition sent (without the audio sent again to the new streams)
+    private byte[] overlapBuffer = new byte[0];  // circular buffer with the last audio sent
+    private int overlapEnd = 0;
+    private int overlapSize = 0;
+    private FlacEncoder flacEncoder;  // not null only while recognizing with the FLAC encoding
+    private RecognitionStream standbyStream;  // stream already opened and configured for the next recognition
+    private boolean standbyAllowed = true;  // false while nobody is going to speak (microphone muted or app in background)
+    private long lastRecognitionTime;
+    private int lastSampleRate = 0;
+    private final Handler standbyHandler = new Handler(Looper.getMainLooper());
+    private final Runnable standbyRecycler = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (lock) {
+                if (standbyStream != null) {
+                    String languageCode = standbyStream.languageCode;
+                    String[] alternativeLanguageCodes = standbyStream.alternativeLanguageCodes;
+                    int sampleRate = standbyStream.sampleRate;
+                    discardStandbyStream();
+                    if (SystemClock.elapsedRealtime() - lastRecognitionTime < STANDBY_STREAM_MAX_IDLE_MILLIS) {
+                        prepareRecognizing(languageCode, alternativeLanguageCodes, sampleRate);
+                    }
+                }
+            }
+        }
+    };
     private final Object lock = new Object();
+    private static LanguageIndex supportedLanguages;  // loaded only when needed
 
 
     public Recognizer(Service service, final boolean returnResultOnlyAtTheEnd, final RecognizerListener callback) {
+        this((Global) service.getApplication(), returnResultOnlyAtTheEnd, callback);
+    }
+
+    /**
+     * Used also by the tests, which pass a Global with a {@link SpeechChannel} connected to a fake server.
+     */
+    Recognizer(Global global, final boolean returnResultOnlyAtTheEnd, final RecognizerListener callback) {
         this.callback = callback;
-        this.global = (Global) service.getApplication();
+        this.global = global;
+        // the channel is shared with the other Recognizers and it is connected here, before the first recognition
+        this.speechChannel = global.getSpeechChannel();
+        speechChannel.acquire();
+        this.metrics = global.getRecognizerMetrics();
         this.apiTokenListener = new Global.ApiTokenListener() {
             @Override
             public void onSuccess(AccessToken apiToken) {
-                recognizerApi.create(apiToken);
+                speechChannel.setApiToken(apiToken);
             }
 
             @Override
@@ -96,121 +154,264 @@ public class Recognizer extends CloudApi {
         };
 
         global.getApiToken(true, apiTokenListener);
+        lastRecognitionTime = SystemClock.elapsedRealtime();
 
-        mResponseObserver = new StreamObserver<StreamingRecognizeResponse>() {
-            private CloudApiResult ultimateInterimResult = new CloudApiResult("");
-            private CloudApiResult ultimateFinalResult = new CloudApiResult("", true);
+        this.returnResultOnlyAtTheEnd = returnResultOnlyAtTheEnd;
+    }
 
-            @Override
-            public void onNext(StreamingRecognizeResponse response) {
-                if (response.getResultsCount() > 0) {
-                    final StreamingRecognitionResult result = response.getResults(0);
-                    boolean isFinal = result.getIsFinal();
-                    if (result.getAlternativesCount() > 0) {
-                        final SpeechRecognitionAlternative alternative = result.getAlternatives(0);
-                        float confidence = alternative.getConfidence();
-                        String text = alternative.getTranscript();
-                        if (text != null) {
-                            if (isFinal) {
-                                Log.e("recognizerResultFinal",text);
-                                if (returnResultOnlyAtTheEnd) {
-                                    ultimateFinalResult.setText(ultimateFinalResult.getText() + " " + text);
-                                    ultimateFinalResult.setConfidenceScore(confidence);
-                                } else {
-                                    ultimateInterimResult = new CloudApiResult("");
-                                }
-                            } else {
-                                Log.e("recognizerResult",text);
-                                ultimateInterimResult.setText(text);
-                            }
-                            if (!returnResultOnlyAtTheEnd) {
-                                callback.onSpeechRecognizedResult(text, currentLanguageCode, confidence, isFinal);
-                            }
-                        }
+    /**
+     * Handles the responses of the streams of the current recognition. The final results are added to the {@link Transcript}
+     * (or returned one by one if returnResultOnlyAtTheEnd is false), the interim results of a response (more results with different stability)
+     * form the tail of the transcript, of which only the changes are returned.
+     * When the recognition continues on a new stream (see {@link #rolloverStream()}) the two streams overlap: the old stream returns only
+     * its final results and the words of the new stream that are before the end of the last final result (in the time of the audio
+     * of the recognition) are removed, because they have already been transcribed. So the final results of the new stream are held
+     * until the old stream is closed, otherwise the words of the old stream would be compared with the results that follow them.
+     */
+    private void onStreamResponse(RecognitionStream stream, StreamingRecognizeResponse response) {
+        final Recognition recognition = stream.recognition;
+        StringBuilder tailText = null;
+        int stableLength = 0;
+        for (int i = 0; i < response.getResultsCount(); i++) {
+            final StreamingRecognitionResult result = response.getResults(i);
+            if (result.getAlternativesCount() == 0 || result.getAlternatives(0).getTranscript() == null) {
+                continue;
+            }
+            final SpeechRecognitionAlternative alternative = result.getAlternatives(0);
+            if (result.getLanguageCode() != null && result.getLanguageCode().length() > 0) {
+                synchronized (resultLock) {
+                    recognition.detectedLanguageCode = result.getLanguageCode();
+                }
+            }
+            if (result.getIsFinal()) {
+                onFinalResult(stream, result, alternative);
+            } else if (!stream.retired) {
+                if (tailText == null) {
+                    tailText = new StringBuilder();
+                }
+                // the results after the first usually begin with a space, if not it is added
+                String text = alternative.getTranscript();
+                int previousLength = tailText.length();
+                if (tailText.length() > 0 && text.length() > 0 && !Character.isWhitespace(tailText.charAt(tailText.length() - 1)) && !Character.isWhitespace(text.charAt(0))) {
+                    tailText.append(' ');
+                }
+                tailText.append(text);
+                // once an unstable result is found the following ones are unstable too
+                if (stableLength == previousLength && result.getStability() >= Transcript.STABLE_STABILITY) {
+                    stableLength = tailText.length();
+                }
+            }
+        }
+        if (tailText != null) {
+            synchronized (resultLock) {
+                TranscriptDelta delta = recognition.transcript.setTail(tailText.toString(), stableLength);
+                if (delta != null) {
+                    Tracer.instant(Tracer.RECOGNIZER, "interimResult", recognition.transcript.getTail().length());
+                    if (!returnResultOnlyAtTheEnd) {
+                        callback.onSpeechRecognizedDelta(delta, recognition.getResultLanguageCode());
                     }
                 }
             }
+        }
+    }
 
-            @Override
-            public void onError(Throwable t) {
-                //callback.onError();
+    private void onFinalResult(RecognitionStream stream, StreamingRecognitionResult result, SpeechRecognitionAlternative alternative) {
+        synchronized (resultLock) {
+            final Recognition recognition = stream.recognition;
+            if (recognition.hasOlderOpenStream(stream)) {
+                Tracer.instant(Tracer.RECOGNIZER, "finalResultDeferred", alternative.getTranscript().length());
+                recognition.deferFinalResult(new FinalResult(stream, result, alternative));
+            } else {
+                addFinalResult(stream, result, alternative);
             }
+        }
+    }
 
-            @Override
-            public void onCompleted() {
-                Log.e("recognizerResult","completed");
-                String text;
-                float confidence = 0;
-
-                if (returnResultOnlyAtTheEnd) {
-                    if (!ultimateFinalResult.getText().equals("")) {
-                        text = ultimateFinalResult.getText();
-                        confidence = ultimateFinalResult.getConfidenceScore();
-                    } else {
-                        text = ultimateInterimResult.getText();
-                    }
-                } else {
-                    text = ultimateInterimResult.getText();
+    private void addFinalResult(RecognitionStream stream, StreamingRecognitionResult result, SpeechRecognitionAlternative alternative) {
+        synchronized (resultLock) {
+            final Recognition recognition = stream.recognition;
+            String text = alternative.getTranscript();
+            long resultEndMillis = stream.audioOffsetMillis + toMillis(result.getResultEndTime());
+            if (stream.audioOffsetMillis < recognition.lastFinalResultEndMillis) {
+                text = removeTranscribedWords(stream, alternative, resultEndMillis);
+            }
+            recognition.lastFinalResultEndMillis = Math.max(recognition.lastFinalResultEndMillis, resultEndMillis);
+            if (text.length() == 0) {
+                return;
+            }
+            Tracer.instant(Tracer.RECOGNIZER, "finalResult", text.length());
+            if (returnResultOnlyAtTheEnd) {
+                recognition.transcript.commit(text, alternative.getConfidence());
+            } else {
+                recognition.transcript.clearTail();
+                callback.onSpeechRecognizedResult(text, recognition.getResultLanguageCode(), alternative.getConfidence(), true);
+            }
+        }
+    }
+
+    /**
+     * @return the transcript without the words that end before the end of the last final result, if the result has no time offsets
+     * of the words it is kept entirely only if it ends after the last final result.
+     */
+    private String removeTranscribedWords(RecognitionStream stream, SpeechRecognitionAlternative alternative, long resultEndMillis) {
+        final long lastFinalResultEndMillis = stream.recognition.lastFinalResultEndMillis;
+        if (alternative.getWordsCount() == 0) {
+            return resultEndMillis > lastFinalResultEndMillis ? alternative.getTranscript() : "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < alternative.getWordsCount(); i++) {
+            WordInfo word = alternative.getWords(i);
+            long wordMiddleMillis = stream.audioOffsetMillis + (toMillis(word.getStartTime()) + toMillis(word.getEndTime())) / 2;
+            if (wordMiddleMillis > lastFinalResultEndMillis) {
+                if (text.length() > 0) {
+                    text.append(' ');
                 }
+                text.append(word.getWord());
+            }
+        }
+        return text.toString();
+    }
 
-                callback.onSpeechRecognizedResult(text, currentLanguageCode, confidence, true);
-                ultimateInterimResult = new CloudApiResult("");
-                ultimateFinalResult = new CloudApiResult("", true);
+    private static long toMillis(Duration duration) {
+        return duration.getSeconds() * 1000 + duration.getNanos() / 1000000;
+    }
+
+    /**
+     * Called when a stream used by a recognition is closed (completed or for an error). The recognition ends when all its streams are closed,
+     * including the ones replaced by a rollover, which return the final results of their audio also after the closing of the current stream.
+     */
+    private void onStreamEnd(RecognitionStream stream) {
+        synchronized (resultLock) {
+            final Recognition recognition = stream.recognition;
+            if (recognition.openStreams.remove(stream)) {
+                // the final results of the newer streams held until now, in the order of the streams
+                while (recognition.deferredFinalResults.size() > 0 && !recognition.hasOlderOpenStream(recognition.deferredFinalResults.get(0).stream)) {
+                    FinalResult finalResult = recognition.deferredFinalResults.remove(0);
+                    addFinalResult(finalResult.stream, finalResult.result, finalResult.alternative);
+                }
+                if (recognition.openStreams.isEmpty() && !destroyed) {
+                    onRecognitionEnd(recognition);
+                }
             }
-        };
+        }
+    }
+
+    /**
+     * Returns the result of the recognition, called when the last stream of the recognition is closed.
+     */
+    private void onRecognitionEnd(Recognition recognition) {
+        synchronized (resultLock) {
+            Tracer.endSpan(Tracer.RECOGNIZER, "recognition", recognition.startTime);
+            String text;
+            float confidence = 0;
 
+            if (returnResultOnlyAtTheEnd && recognition.transcript.hasCommittedText()) {
+                text = recognition.transcript.getCommittedText();
+                confidence = recognition.transcript.getCommittedConfidence();
+            } else {
+                // the interim results not followed by a final result
+                text = recognition.transcript.getTail();
+            }
 
+            callback.onSpeechRecognizedResult(text, recognition.getResultLanguageCode(), confidence, true);
+            recognition.transcript.clear();
+        }
     }
 
 
     /**
      * Starts recognizing speech audio.
      *
-     * @param sampleRate The sample rate of the audio.
+     * @param sampleRate The sample rate of the audio, that is the converted one returned by {@link Recorder#getSampleRate()}.
      */
     public void startRecognizing(final String laguageCode, final int sampleRate, final boolean singleUtterance) {
+        startRecognizing(laguageCode, NO_ALTERNATIVE_LANGUAGES, sampleRate, singleUtterance);
+    }
+
+    /**
+     * Starts recognizing speech audio that can be in more languages, with a single stream. The results are in the language detected
+     * by the server (between languageCode and the alternative languages) and the language code passed to the {@link RecognizerListener}
+     * is the detected one.
+     *
+     * @param alternativeLanguageCodes at most {@link #MAX_ALTERNATIVE_LANGUAGES} languages, the others are ignored.
+     * @param sampleRate               The sample rate of the audio, that is the converted one returned by {@link Recorder#getSampleRate()}.
+     */
+    public void startRecognizing(final String laguageCode, final String[] alternativeLanguageCodes, final int sampleRate, final boolean singleUtterance) {
         synchronized (lock) {
-            Log.e("recognizer","startRecognitionCalled");
             if (!recognizing) {
+                if (currentStream != null) {
+                    // the previous recognition is still sending its last audio (its stream was not ready): the rest of its audio is sent
+                    // without waiting and its stream is closed, so this recognition has its own stream
+                    Tracer.instant(Tracer.RECOGNIZER, "flushPreviousRecognition", bytesToMillis(pendingBytes));
+                    sendPendingAudio(true);
+                } else {
+                    // audio of a previous recognition whose stream has never been opened (the token has not arrived)
+                    clearDataToRecognize();
+                }
                 recognizing = true;
-                if (mRequestObserver == null) {
-                    currentLanguageCode = laguageCode;
-                    if (recognizerApi.isReady()) {
-                        performStartRecognition(currentLanguageCode, sampleRate, singleUtterance);
-                    } else {
-                        global.getApiToken(true, new Global.ApiTokenListener() {
-                            @Override
-                            public void onSuccess(AccessToken apiToken) {
-                                synchronized (lock) {
-                                    apiTokenListener.onSuccess(apiToken);
-                                    performStartRecognition(currentLanguageCode, sampleRate, singleUtterance);
+                final Recognition recognition = new Recognition(laguageCode, limitAlternativeLanguages(alternativeLanguageCodes));
+                currentRecognition = recognition;
+                lastSampleRate = sampleRate;
+                setFrameBytes(millisToBytes(global.getAudioFrameDuration()));
+                endlessStreaming = global.isEndlessStreamingEnabled();
+                recognitionSentBytes = 0;
+                overlapEnd = 0;
+                overlapSize = 0;
+                lastRecognitionTime = SystemClock.elapsedRealtime();
+                if (useStandbyStream(recognition, sampleRate)) {
+                    Tracer.instant(Tracer.RECOGNIZER, "useStandbyStream");
+                    sendPendingAudio();
+                } else if (speechChannel.isReady()) {
+                    performStartRecognition(recognition, sampleRate, singleUtterance);
+                } else {
+                    global.getApiToken(true, new Global.ApiTokenListener() {
+                        @Override
+                        public void onSuccess(AccessToken apiToken) {
+                            synchronized (lock) {
+                                apiTokenListener.onSuccess(apiToken);
+                                if (currentRecognition == recognition && !destroyed) {
+                                    performStartRecognition(recognition, sampleRate, singleUtterance);
                                 }
                             }
+                        }
 
-                            @Override
-                            public void onFailure(int[] reasons, long value) {
-                                synchronized (lock) {
+                        @Override
+                        public void onFailure(int[] reasons, long value) {
+                            synchronized (lock) {
+                                if (currentRecognition == recognition) {
                                     recognizing = false;
+                                    clearDataToRecognize();
                                     callback.onError(reasons, value);
                                 }
                             }
-                        });
-                    }
+                        }
+                    });
                 }
             }
         }
     }
 
-    private void performStartRecognition(final String languageCode, final int sampleRate, final boolean singleUtterance) {
+    private void performStartRecognition(final Recognition recognition, final int sampleRate, final boolean singleUtterance) {
         //start timer
         chronometer.start();
         // Configure the API
-        mRequestObserver = recognizerApi.getApi().streamingRecognize(mResponseObserver);
-        mRequestObserver.onNext(StreamingRecognizeRequest.newBuilder()
+        boolean flac = global.getAudioEncoding() == ENCODING_FLAC;
+        if (flac) {
+            flacEncoder = new FlacEncoder();
+            flacEncoder.start(sampleRate);
+        }
+        currentStream = new RecognitionStream(recognition, recognition.languageCode, recognition.alternativeLanguageCodes, sampleRate, flac);
+        Tracer.instant(Tracer.RECOGNIZER, "openStream");
+        sendPendingAudio();
+    }
+
+    private StreamingRecognizeRequest createConfigRequest(String languageCode, String[] alternativeLanguageCodes, int sampleRate, boolean flac) {
+        return StreamingRecognizeRequest.newBuilder()
                 .setStreamingConfig(StreamingRecognitionConfig.newBuilder()
                         .setConfig(RecognitionConfig.newBuilder()
                                 .setLanguageCode(languageCode)
-                                .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
+                                .addAllAlternativeLanguageCodes(Arrays.asList(alternativeLanguageCodes))
+                                .setEncoding(flac ? RecognitionConfig.AudioEncoding.FLAC : RecognitionConfig.AudioEncoding.LINEAR16)
                                 .setSampleRateHertz(sampleRate)
                                 .setEnableAutomaticPunctuation(true)
                                 .setUseEnhanced(true)
@@ -220,82 +421,482 @@ public class Recognizer extends CloudApi {
                         .setInterimResults(true)  //!singleUtterance
                         .setSingleUtterance(false)  //singleUtterance
                         .build())
-                .build());
-        Log.e("recognizer","startRecognition");
-        recognize();
+                .build();
+    }
+
+    /**
+     * Opens and configures in advance the stream of the next recognition, so when the voice starts the audio can be sent immediately,
+     * without waiting for the creation of the stream. The stream is replaced before the server closes it for inactivity,
+     * if no recognitions happen for a while it is closed and no longer replaced.
+     * It does nothing if the standby stream is disabled in the settings or with {@link #setStandbyAllowed(boolean)}, while recognizing
+     * or if the channel is not yet ready (the first recognition gets the token and after it the standby stream is prepared automatically).
+     *
+     * @param sampleRate The sample rate of the audio, that is the converted one returned by {@link Recorder#getSampleRate()}.
+     */
+    public void prepareRecognizing(final String languageCode, final int sampleRate) {
+        prepareRecognizing(languageCode, NO_ALTERNATIVE_LANGUAGES, sampleRate);
+    }
+
+    /**
+     * Like {@link #prepareRecognizing(String, int)}, for a recognition started with
+     * {@link #startRecognizing(String, String[], int, boolean)}.
+     */
+    public void prepareRecognizing(final String languageCode, final String[] alternativeLanguageCodes, final int sampleRate) {
+        synchronized (lock) {
+            if (destroyed || recognizing || !standbyAllowed || !global.isStandbyRecognitionEnabled() || !speechChannel.isReady()) {
+                return;
+            }
+            String[] alternatives = limitAlternativeLanguages(alternativeLanguageCodes);
+            boolean flac = global.getAudioEncoding() == ENCODING_FLAC;
+            if (standbyStream != null) {
+                if (standbyStream.matches(languageCode, alternatives, sampleRate, flac)) {
+                    return;
+                }
+                discardStandbyStream();
+            }
+            standbyStream = new RecognitionStream(null, languageCode, alternatives, sampleRate, flac);
+            standbyHandler.postDelayed(standbyRecycler, STANDBY_STREAM_MAX_AGE_MILLIS);
+            Tracer.instant(Tracer.RECOGNIZER, "openStandbyStream");
+        }
+    }
+
+    /**
+     * To call with false when the microphone is muted or the app goes in background: the standby stream is closed and no longer
+     * prepared (neither replaced nor opened at the end of the recognitions) until this is called with true, so the streams are not
+     * reopened every few seconds while nobody is speaking. With true the standby stream is opened again at the next
+     * {@link #prepareRecognizing(String, String[], int)}.
+     */
+    public void setStandbyAllowed(boolean allowed) {
+        synchronized (lock) {
+            standbyAllowed = allowed;
+            if (!allowed) {
+                discardStandbyStream();
+            }
+        }
+    }
+
+    /**
+     * If the standby stream is compatible with this recognition it becomes the current stream, otherwise it is closed.
+     *
+     * @return true if the standby stream has been used.
+     */
+    private boolean useStandbyStream(Recognition recognition, int sampleRate) {
+        if (standbyStream == null) {
+            return false;
+        }
+        RecognitionStream stream = standbyStream;
+        boolean flac = global.getAudioEncoding() == ENCODING_FLAC;
+        if (!stream.matches(recognition.languageCode, recognition.alternativeLanguageCodes, sampleRate, flac) || !speechChannel.isReady()) {
+            discardStandbyStream();
+            return false;
+        }
+        standbyHandler.removeCallbacks(standbyRecycler);
+        standbyStream = null;
+        synchronized (resultLock) {
+            recognition.addStream(stream);
+        }
+        stream.recognition = recognition;
+        stream.used = true;
+        currentStream = stream;
+        if (flac) {
+            flacEncoder = new FlacEncoder();
+            flacEncoder.start(sampleRate);
+        }
+        // the cost is counted from now, the standby stream has not received any audio before
+        chronometer.start();
+        return true;
+    }
+
+    private static String[] limitAlternativeLanguages(String[] alternativeLanguageCodes) {
+        if (alternativeLanguageCodes == null) {
+            return NO_ALTERNATIVE_LANGUAGES;
+        }
+        if (alternativeLanguageCodes.length > MAX_ALTERNATIVE_LANGUAGES) {
+            return Arrays.copyOf(alternativeLanguageCodes, MAX_ALTERNATIVE_LANGUAGES);
+        }
+        return alternativeLanguageCodes;
+    }
+
+    private void discardStandbyStream() {
+        standbyHandler.removeCallbacks(standbyRecycler);
+        if (standbyStream != null) {
+            standbyStream.close();
+            standbyStream = null;
+        }
     }
 
     /**
      * Recognizes the speech audio. This method should be called every time a chunk of byte buffer
      * is ready.
      *
-     * @param data The audio data.
-     * @param size The number of elements that are actually relevant in the {@code data}.
+     * @param frame The audio data, the Recognizer takes its own reference of the frame and releases it once sent.
      */
-    public void recognize(final byte[] data, final int size) {
+    public void recognize(final AudioFrame frame) {
         synchronized (lock) {
-            Log.e("recognizer","recognizingCalled");
-            if (recognizing && data != null) {
-                dataToRecognize.addLast(ByteString.copyFrom(data, 0, size));
-                if (dataToRecognize.size() == 1) {
-                    recognize();
+            if (recognizing && frame != null) {
+                if (addPendingAudio(frame)) {
+                    sendPendingAudio();
                 }
             }
         }
     }
 
-    private void recognize() {
-        if (mRequestObserver != null) {
-            ByteString data = dataToRecognize.pollFirst();
-            if (data != null) {
+    /**
+     * Sets what to do when the audio arrives faster than it can be sent, one of the OVERLOAD_ constants (the default is {@link #DEFAULT_OVERLOAD_POLICY}).
+     */
+    public void setOverloadPolicy(int overloadPolicy) {
+        synchronized (lock) {
+            this.overloadPolicy = overloadPolicy;
+        }
+    }
+
+    /**
+     * Adds the frame to the audio to send applying the overload policy.
+     *
+     * @return false if the frame has been discarded because the recognition ended while waiting for space.
+     */
+    private boolean addPendingAudio(AudioFrame frame) {
+        final int maxPendingBytes = millisToBytes(MAX_PENDING_AUDIO_MILLIS);
+        if (overloadPolicy == OVERLOAD_BLOCK_CAPTURE && pendingBytes + frame.getSize() > maxPendingBytes && Looper.myLooper() != Looper.getMainLooper()) {
+            // the caller (the dispatch thread of the Recorder) stops, so the delay is absorbed by the capture queue of the Recorder
+            final long startTime = SystemClock.elapsedRealtime();
+            long remainingMillis = MAX_BLOCK_MILLIS;
+            while (remainingMillis > 0 && currentStream != null && pendingBytes + frame.getSize() > maxPendingBytes) {
+                try {
+                    lock.wait(remainingMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remainingMillis = MAX_BLOCK_MILLIS - (SystemClock.elapsedRealtime() - startTime);
+            }
+            metrics.onCaptureBlocked(SystemClock.elapsedRealtime() - startTime);
+            if (currentStream == null && !recognizing) {
+                return false;
+            }
+        }
+        if (partialFrame == null && frame.getSize() == frameBytes) {
+            // the frame has already the right size, so it is sent without copy
+            addFrame(new PendingAudio(frame.retain()));
+        } else {
+            int offset = 0;
+            while (offset < frame.getSize()) {
+                if (partialFrame == null) {
+                    partialFrame = new PendingAudio(obtainFrameBuffer());
+                }
+                offset += partialFrame.fill(frame.getData(), offset, frame.getSize() - offset, frameBytes);
+                if (partialFrame.getSize() == frameBytes) {
+                    addFrame(partialFrame);
+                    partialFrame = null;
+                }
+            }
+        }
+        while (pendingBytes > maxPendingBytes && dataToRecognize.size() > 1) {
+            PendingAudio oldestAudio = dataToRecognize.pollFirst();
+            pendingBytes -= oldestAudio.getSize();
+            metrics.onFrameDropped(bytesToMillis(oldestAudio.getSize()));
+            releasePendingAudio(oldestAudio);
+        }
+        metrics.onQueueDepth(bytesToMillis(pendingBytes));
+        Tracer.counter(Tracer.RECOGNIZER, "pendingAudioMillis", bytesToMillis(pendingBytes));
+        return true;
+    }
+
+    private void addFrame(PendingAudio audio) {
+        PendingAudio lastAudio = dataToRecognize.peekLast();
+        if (overloadPolicy == OVERLOAD_COALESCE && dataToRecognize.size() >= COALESCE_AFTER_PENDING_FRAMES
+                && lastAudio.append(audio.getData(), audio.getSize(), millisToBytes(MAX_COALESCED_AUDIO_MILLIS))) {
+            metrics.onFrameCoalesced();
+            releasePendingAudio(audio);
+        } else {
+            dataToRecognize.addLast(audio);
+        }
+        pendingBytes += audio.getSize();
+    }
+
+    /**
+     * Queues the last frame of the recognition, even if it is shorter than the others.
+     */
+    private void flushPartialFrame() {
+        if (partialFrame != null) {
+            if (partialFrame.getSize() > 0) {
+                addFrame(partialFrame);
+            } else {
+                releasePendingAudio(partialFrame);
+            }
+            partialFrame = null;
+        }
+    }
+
+    private void setFrameBytes(int bytes) {
+        bytes = Math.max(bytes - bytes % 2, 2);  // whole samples
+        if (bytes != frameBytes) {
+            frameBytes = bytes;
+            freeFrameBuffers.clear();
+        }
+    }
+
+    private byte[] obtainFrameBuffer() {
+        byte[] buffer = freeFrameBuffers.pollFirst();
+        return buffer != null ? buffer : new byte[frameBytes];
+    }
+
+    /**
+     * Releases the audio and reuses its buffer for the next frames if it has the size of a frame (the buffers of the merged audio are bigger).
+     */
+    private void releasePendingAudio(PendingAudio audio) {
+        byte[] buffer = audio.release();
+        if (buffer != null && buffer.length == frameBytes) {
+            freeFrameBuffers.addLast(buffer);
+        }
+    }
+
+    /**
+     * Sends the queued audio as long as the stream is ready, when the stream is no longer ready (the network does not keep up)
+     * the sending is resumed by the onReady handler of the stream. When all the audio is sent and the recognition is finished the stream is closed.
+     */
+    private void sendPendingAudio() {
+        sendPendingAudio(false);
+    }
+
+    /**
+     * @param ignoreReadiness if true the audio is sent also if the stream is not ready (gRPC keeps it in memory), used only to close
+     *                        the stream of the previous recognition without waiting.
+     */
+    private void sendPendingAudio(boolean ignoreReadiness) {
+        if (currentStream == null) {
+            return;  // the stream is not yet opened (we are waiting for the token), the audio will be sent when it will be
+        }
+        PendingAudio audio;
+        while ((audio = dataToRecognize.peekFirst()) != null) {
+            if (!ignoreReadiness && !currentStream.requestObserver.isReady()) {
+                if (!currentStream.waitingForReady) {
+                    currentStream.waitingForReady = true;
+                    metrics.onNotReady();
+                }
+                lock.notifyAll();
+                return;
+            }
+            final long sendStartTime = Tracer.beginSpan();
+            dataToRecognize.pollFirst();
+            pendingBytes -= audio.getSize();
+            ByteString audioContent = toByteString(audio, ignoreReadiness || !currentStream.requestObserver.isReady());
+            if (!audioContent.isEmpty()) {
                 //Call the streaming recognition API
                 try {
-                    mRequestObserver.onNext(StreamingRecognizeRequest.newBuilder()
-                            .setAudioContent(data)
+                    currentStream.requestObserver.onNext(StreamingRecognizeRequest.newBuilder()
+                            .setAudioContent(audioContent)
                             .build());
+                    metrics.onAudioSent(audioContent.size(), System.nanoTime() - audio.getEnqueueTime());
                 } catch (IllegalStateException e) {
                     e.printStackTrace();
                     ////e("Recognizer","call was half-closed exception");
                 }
-                Log.e("recognizer","recognizing");
-                recognize();
-            } else {     // dataToRecognize cannot contain null values ​​so if the value is null it means that dataToRecognize is empty
-                if (!recognizing) {
-                    performFinishRecognizing();
+            }
+            currentStream.sentBytes += audio.getSize();
+            if (!audio.isReplayed()) {
+                recognitionSentBytes += audio.getSize();
+                if (endlessStreaming) {
+                    keepForOverlap(audio.getData(), audio.getSize());
                 }
             }
+            releasePendingAudio(audio);
+            Tracer.endSpan(Tracer.RECOGNIZER, "sendAudio", sendStartTime, audioContent.size());
+            if (endlessStreaming && recognizing && bytesToMillis(currentStream.sentBytes) >= STREAM_ROLLOVER_MILLIS) {
+                rolloverStream();
+            }
+        }
+        lock.notifyAll();
+        if (!recognizing) {
+            performFinishRecognizing();
         }
     }
 
+    /**
+     * Continues the recognition on a new stream before the server closes the current one. The new stream starts with the last
+     * {@link #ROLLOVER_OVERLAP_MILLIS} of audio already sent and the old stream is half-closed, so it returns the final results of its audio
+     * while the new one receives the new audio (the results of the two streams are joined in {@link #onStreamResponse}).
+     * The capture is not involved, the audio that arrives meanwhile is queued and sent to the new stream as soon as it is ready.
+     */
+    private void rolloverStream() {
+        RecognitionStream oldStream = currentStream;
+        oldStream.retired = true;
+        boolean flac = flacEncoder != null;
+        if (flac) {
+            // the new stream needs its own FLAC header
+            traceEncodingStats(flacEncoder);
+            flacEncoder = new FlacEncoder();
+            flacEncoder.start(lastSampleRate);
+        }
+        // every stream is billed separately
+        chargeUsage(chronometer.stop(Chronometer.SECONDS));
+        chronometer.start();
+        byte[] overlap = getOverlapAudio();
+        currentStream = new RecognitionStream(oldStream.recognition, oldStream.languageCode, oldStream.alternativeLanguageCodes, lastSampleRate, flac);
+        currentStream.audioOffsetMillis = bytesToMillis(recognitionSentBytes - overlap.length);
+        // the old stream is closed after the opening of the new one, so the recognition does not end when the old stream is closed
+        try {
+            oldStream.requestObserver.onCompleted();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+        for (int end = overlap.length; end > 0; end -= frameBytes) {
+            int start = Math.max(end - frameBytes, 0);
+            PendingAudio audio = new PendingAudio(obtainFrameBuffer());
+            audio.fill(overlap, start, end - start, frameBytes);
+            audio.setReplayed();
+            dataToRecognize.addFirst(audio);
+            pendingBytes += audio.getSize();
+        }
+        metrics.onStreamRollover();
+        Tracer.instant(Tracer.RECOGNIZER, "streamRollover", bytesToMillis(recognitionSentBytes));
+    }
+
+    private void keepForOverlap(byte[] audio, int size) {
+        final int capacity = millisToBytes(ROLLOVER_OVERLAP_MILLIS);
+        if (overlapBuffer.length != capacity) {
+            overlapBuffer = new byte[capacity];
+            overlapEnd = 0;
+            overlapSize = 0;
+        }
+        if (capacity == 0) {
+            return;
+        }
+        final int offset = Math.max(size - capacity, 0);
+        final int length = size - offset;
+        final int firstPart = Math.min(length, capacity - overlapEnd);
+        System.arraycopy(audio, offset, overlapBuffer, overlapEnd, firstPart);
+        System.arraycopy(audio, offset + firstPart, overlapBuffer, 0, length - firstPart);
+        overlapEnd = (overlapEnd + length) % capacity;
+        overlapSize = Math.min(overlapSize + length, capacity);
+    }
+
+    private byte[] getOverlapAudio() {
+        byte[] audio = new byte[overlapSize];
+        if (overlapSize > 0) {
+            final int capacity = overlapBuffer.length;
+            final int start = (overlapEnd - overlapSize + capacity) % capacity;
+            final int firstPart = Math.min(overlapSize, capacity - start);
+            System.arraycopy(overlapBuffer, start, audio, 0, firstPart);
+            System.arraycopy(overlapBuffer, 0, audio, firstPart, overlapSize - firstPart);
+        }
+        return audio;
+    }
+
+    /**
+     * With the FLAC encoding the audio is compressed and the encoded bytes are copied (the output of the encoder is reused).
+     * Otherwise the audio is wrapped without copy if the stream is ready: in that case gRPC serializes the request inside onNext,
+     * so we can release the frame and reuse its buffer immediately after. If the stream is not ready (the audio of the previous
+     * recognition is flushed without waiting) gRPC keeps the request in memory without serializing it, so the audio is copied.
+     *
+     * @param copy true if the request may not be serialized inside onNext.
+     */
+    private ByteString toByteString(PendingAudio audio, boolean copy) {
+        if (flacEncoder != null) {
+            int encodedSize = flacEncoder.encode(audio.getData(), audio.getSize());
+            return ByteString.copyFrom(flacEncoder.getOutput(), 0, encodedSize);
+        } else if (copy) {
+            return ByteString.copyFrom(audio.getData(), 0, audio.getSize());
+        } else {
+            return ZeroCopyByteString.wrap(audio.getData(), 0, audio.getSize());
+        }
+    }
+
+    private void clearDataToRecognize() {
+        while (dataToRecognize.peekFirst() != null) {
+            releasePendingAudio(dataToRecognize.pollFirst());
+        }
+        if (partialFrame != null) {
+            releasePendingAudio(partialFrame);
+            partialFrame = null;
+        }
+        pendingBytes = 0;
+        lock.notifyAll();
+    }
+
+    private int millisToBytes(int millis) {
+        return (int) ((long) lastSampleRate * 2 * millis / 1000);
+    }
+
+    private long bytesToMillis(long bytes) {
+        return lastSampleRate > 0 ? (long) bytes * 1000 / (2L * lastSampleRate) : 0;
+    }
+
     /**
      * Finishes recognizing speech audio.
      */
     public void finishRecognizing() {
         synchronized (lock) {
-            Log.e("recognizer","stopRecognitionCalled");
+            Tracer.instant(Tracer.RECOGNIZER, "finishRecognizing");
             if (recognizing) {
                 recognizing = false;
-                if (dataToRecognize.size() == 0) {
-                    performFinishRecognizing();
-                }
+                // the last frame is sent, then the stream is closed when all the audio has been sent
+                flushPartialFrame();
+                sendPendingAudio();
             }
         }
     }
 
     private void performFinishRecognizing() {
-        if (mRequestObserver != null) {
-            mRequestObserver.onCompleted();
-            mRequestObserver = null;
-            Log.e("recognizer","stopRecognition");
-            //stop timer e sottrazione credito
-            final float cost = calculateCreditConsumption(chronometer.stop(Chronometer.SECONDS));
-            new Thread() {
-                @Override
-                public void run() {
-                    super.run();
-                    global.addUsage(cost);
-                }
-            }.start();
+        if (currentStream != null) {
+            try {
+                currentStream.requestObserver.onCompleted();
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+            }
+            currentStream = null;
+            Tracer.instant(Tracer.RECOGNIZER, "closeStream");
+            onStreamFinished();
+        }
+    }
+
+    /**
+     * Called when the server closes the stream, if it is the current stream the recognition ends here
+     * and the audio not yet sent is discarded.
+     */
+    private void onStreamClosed(RecognitionStream stream) {
+        synchronized (lock) {
+            if (currentStream == stream) {
+                Tracer.instant(Tracer.RECOGNIZER, "streamClosedByServer");
+                currentStream = null;
+                recognizing = false;
+                clearDataToRecognize();
+                onStreamFinished();
+            }
+        }
+    }
+
+    private void onStreamFinished() {
+        if (flacEncoder != null) {
+            traceEncodingStats(flacEncoder);
+            flacEncoder = null;
+        }
+        //stop timer e sottrazione credito
+        chargeUsage(chronometer.stop(Chronometer.SECONDS));
+        // the stream of the next recognition is prepared in advance
+        if (lastSampleRate != 0 && currentRecognition != null) {
+            prepareRecognizing(currentRecognition.languageCode, currentRecognition.alternativeLanguageCodes, lastSampleRate);
+        }
+    }
+
+    private void chargeUsage(float seconds) {
+        final float cost = calculateCreditConsumption(seconds);
+        new Thread() {
+            @Override
+            public void run() {
+                super.run();
+                global.addUsage(cost);
+            }
+        }.start();
+    }
+
+    private void traceEncodingStats(FlacEncoder encoder) {
+        if (Tracer.ENABLED && encoder.getEncodedOutputBytes() > 0) {
+            float audioSeconds = encoder.getEncodedInputBytes() / (2f * encoder.getSampleRate());
+            float ratio = (float) encoder.getEncodedInputBytes() / encoder.getEncodedOutputBytes();
+            float cpuMillis = encoder.getEncodingNanos() / 1000000f;
+            Tracer.instant(Tracer.RECOGNIZER, "flacEncoding", "flac: " + encoder.getEncodedInputBytes() + " -> " + encoder.getEncodedOutputBytes() + " bytes (ratio " + ratio + "), "
+                    + cpuMillis + " ms of encoding for " + audioSeconds + " s of audio");
         }
     }
 
@@ -305,162 +906,308 @@ public class Recognizer extends CloudApi {
     }
 
     public static ArrayList<CustomLocale> getSupportedLanguages(Context context) {
-        ArrayList<CustomLocale> languages = new ArrayList<>();
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        try {
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            Document document = documentBuilder.parse(context.getResources().openRawResource(R.raw.recognizer_supported_launguages));
-            NodeList list = document.getElementsByTagName("code");
-            for (int i = 0; i < list.getLength(); i++) {
-                languages.add(CustomLocale.getInstance(list.item(i).getTextContent()));
+        return new ArrayList<>(getSupportedLanguageIndex(context).getLocales());
+    }
+
+    /**
+     * @return the languages supported by the recognizer, read (only the first time) from the index compiled at build time
+     * from src/main/languages/recognizer_supported_languages.xml.
+     */
+    public static synchronized LanguageIndex getSupportedLanguageIndex(Context context) {
+        if (supportedLanguages == null) {
+            InputStream input = context.getResources().openRawResource(R.raw.recognizer_language_index);
+            try {
+                supportedLanguages = LanguageIndex.read(input);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new LanguageIndex(new ArrayList<CustomLocale>());
+            } finally {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
-        } catch (IOException | SAXException | ParserConfigurationException e) {
-            e.printStackTrace();
         }
-        return languages;
+        return supportedLanguages;
     }
 
     public void destroy() {
-        synchronized (lock) {  // if it generates a block then we should have a thread perform the destroy operation
-            // Release the gRPC channel.
-            SpeechGrpc.SpeechStub mApi = recognizerApi.getApi();
-            if (mApi != null) {
-                final ManagedChannel channel = (ManagedChannel) mApi.getChannel();
-                if (channel != null && !channel.isShutdown()) {
-                    channel.shutdown();  //shutdown().awaitTermination(5, TimeUnit.SECONDS)  (it was changed because it slowed everything down if the user was talking)
+        synchronized (lock) {
+            discardStandbyStream();
+            if (currentStream != null) {
+                // nobody will read the result, so the call is cancelled (the channel is shared, so it is not closed)
+                currentStream.requestObserver.onError(Status.CANCELLED.withDescription("Recognizer destroyed").asException());
+            }
+            // Release the gRPC channel (it is closed when all the Recognizers have released it).
+            if (!destroyed) {
+                destroyed = true;
+                speechChannel.release();
+            }
+            recognizing = false;
+            currentStream = null;
+            flacEncoder = null;
+            clearDataToRecognize();
+        }
+    }
+
+    /**
+     * A StreamingRecognize call. The stream can be opened in advance as standby stream, its responses are handled
+     * only after it has been used, so the closing of an unused stream does not produce an empty result.
+     */
+    private class RecognitionStream {
+        private final String languageCode;
+        private final String[] alternativeLanguageCodes;
+        private final int sampleRate;
+        private final boolean flac;
+        private final ClientCallStreamObserver<StreamingRecognizeRequest> requestObserver;
+        private volatile Recognition recognition;  // null until the stream is used
+        private volatile boolean used;
+        private volatile boolean closed = false;  // closed by the server before being used
+        private volatile boolean retired = false;  // replaced by a new stream during the recognition, it only returns its last final results
+        private boolean waitingForReady = false;
+        private long audioOffsetMillis = 0;  // time of the beginning of the audio of this stream in the audio of the recognition
+        private int order = 0;  // position of the stream between the ones used by the recognition
+        private long sentBytes = 0;
+
+        /**
+         * @param recognition the recognition that uses the stream, null for a standby stream.
+         */
+        private RecognitionStream(@Nullable Recognition recognition, String languageCode, String[] alternativeLanguageCodes, int sampleRate, boolean flac) {
+            this.recognition = recognition;
+            this.languageCode = languageCode;
+            this.alternativeLanguageCodes = alternativeLanguageCodes;
+            this.sampleRate = sampleRate;
+            this.flac = flac;
+            this.used = recognition != null;
+            if (recognition != null) {
+                synchronized (resultLock) {
+                    recognition.addStream(this);
                 }
-                recognizerApi.destroy();
             }
-            mRequestObserver = null;
+            requestObserver = (ClientCallStreamObserver<StreamingRecognizeRequest>) speechChannel.getApi().streamingRecognize(new ClientResponseObserver<StreamingRecognizeRequest, StreamingRecognizeResponse>() {
+                @Override
+                public void beforeStart(ClientCallStreamObserver<StreamingRecognizeRequest> requestStream) {
+                    // when the stream becomes ready again the sending of the queued audio is resumed
+                    requestStream.setOnReadyHandler(new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (lock) {
+                                if (currentStream == RecognitionStream.this) {
+                                    waitingForReady = false;
+                                    sendPendingAudio();
+                                }
+                            }
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(StreamingRecognizeResponse response) {
+                    if (RecognitionStream.this.used) {
+                        onStreamResponse(RecognitionStream.this, response);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    if (RecognitionStream.this.used) {
+                        if (retired) {
+                            Tracer.instant(Tracer.RECOGNIZER, "replacedStreamError", t.getMessage());
+                        } else {
+                            onStreamClosed(RecognitionStream.this);
+                        }
+                        // the results received until now are not lost
+                        onStreamEnd(RecognitionStream.this);
+                    } else {
+                        closed = true;
+                        Tracer.instant(Tracer.RECOGNIZER, "standbyStreamClosed", t.getMessage());
+                    }
+                }
+
+                @Override
+                public void onCompleted() {
+                    if (RecognitionStream.this.used) {
+                        if (retired) {
+                            Tracer.instant(Tracer.RECOGNIZER, "replacedStreamCompleted");
+                        } else {
+                            onStreamClosed(RecognitionStream.this);
+                        }
+                        onStreamEnd(RecognitionStream.this);
+                    } else {
+                        closed = true;
+                    }
+                }
+            });
+            requestObserver.onNext(createConfigRequest(languageCode, alternativeLanguageCodes, sampleRate, flac));
+        }
+
+        private boolean matches(String languageCode, String[] alternativeLanguageCodes, int sampleRate, boolean flac) {
+            return !closed && this.languageCode.equals(languageCode) && Arrays.equals(this.alternativeLanguageCodes, alternativeLanguageCodes)
+                    && this.sampleRate == sampleRate && this.flac == flac;
+        }
+
+        private void close() {
+            try {
+                requestObserver.onCompleted();
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+            }
         }
     }
 
-    private static class RecognizerApi {
-        private SpeechGrpc.SpeechStub api;
-        private AccessToken apiToken;
+    /**
+     * State of a recognition, from {@link #startRecognizing} to its result. It is kept by the streams of the recognition, because they
+     * can return results also after the start of the next recognition. The fields that change are accessed with the resultLock.
+     */
+    private static class Recognition {
+        private final String languageCode;
+        private final String[] alternativeLanguageCodes;
+        private final long startTime = Tracer.beginSpan();  // for the tracing
+        private final Transcript transcript = new Transcript();
+        private final ArrayList<RecognitionStream> openStreams = new ArrayList<>();  // the streams used by the recognition not yet closed, in order of use
+        private final ArrayList<FinalResult> deferredFinalResults = new ArrayList<>();  // in the order of their streams
+        private int usedStreams = 0;
+        private long lastFinalResultEndMillis = 0;  // in the time of the audio of the recognition
+        private String detectedLanguageCode;  // language of the last result, if the server has detected it between the alternative languages
+
+        private Recognition(String languageCode, String[] alternativeLanguageCodes) {
+            this.languageCode = languageCode;
+            this.alternativeLanguageCodes = alternativeLanguageCodes;
+        }
 
-        public void create(AccessToken apiToken) {
-            final ManagedChannel channel = new OkHttpChannelProvider()
-                    .builderForAddress(HOSTNAME, PORT)
-                    .nameResolverFactory(new DnsNameResolverProvider())
-                    .intercept(new GoogleCredentialsInterceptor(GoogleCredentials.of(apiToken).createScoped(Global.SCOPE)))
-                    .build();
-            this.api = SpeechGrpc.newStub(channel);
-            this.apiToken = apiToken;
+        private void addStream(RecognitionStream stream) {
+            stream.order = usedStreams++;
+            openStreams.add(stream);
         }
 
-        public boolean isReady() {
-            return api != null && apiToken.getExpirationTime().getTime() > System.currentTimeMillis();
+        /**
+         * @return true if a stream used before the given one is still open, so the final results of the given stream must wait for its own.
+         */
+        private boolean hasOlderOpenStream(RecognitionStream stream) {
+            return openStreams.size() > 0 && openStreams.get(0).order < stream.order;
         }
 
-        public SpeechGrpc.SpeechStub getApi() {
-            return api;
+        private void deferFinalResult(FinalResult finalResult) {
+            int index = deferredFinalResults.size();
+            while (index > 0 && deferredFinalResults.get(index - 1).stream.order > finalResult.stream.order) {
+                index--;
+            }
+            deferredFinalResults.add(index, finalResult);
         }
 
-        public void destroy() {
-            api = null;
+        /**
+         * @return the language detected by the server if the recognition has alternative languages, otherwise the language of the recognition.
+         */
+        private String getResultLanguageCode() {
+            return detectedLanguageCode != null ? detectedLanguageCode : languageCode;
         }
     }
 
     /**
-     * Authenticates the gRPC channel using the specified {@link GoogleCredentials}.
+     * A final result held until the streams used before its stream are closed.
      */
-    private static class GoogleCredentialsInterceptor implements ClientInterceptor {
+    private static class FinalResult {
+        private final RecognitionStream stream;
+        private final StreamingRecognitionResult result;
+        private final SpeechRecognitionAlternative alternative;
 
-        private final Credentials mCredentials;
+        private FinalResult(RecognitionStream stream, StreamingRecognitionResult result, SpeechRecognitionAlternative alternative) {
+            this.stream = stream;
+            this.result = result;
+            this.alternative = alternative;
+        }
+    }
 
-        private Metadata mCached;
+    /**
+     * Audio waiting to be sent: a frame of the Recorder (retained until it is sent) or an own buffer, in which the audio is copied
+     * to form frames of fixed duration or to merge more frames.
+     */
+    private static class PendingAudio {
+        private AudioFrame frame;  // null if the audio is in an own buffer
+        private byte[] data;
+        private int size;
+        private long enqueueTime = System.nanoTime();
+        private boolean replayed = false;  // audio already sent to the previous stream
 
-        private Map<String, List<String>> mLastMetadata;
+        private PendingAudio(AudioFrame frame) {
+            this.frame = frame;
+            this.data = frame.getData();
+            this.size = frame.getSize();
+        }
 
-        GoogleCredentialsInterceptor(Credentials credentials) {
-            mCredentials = credentials;
-            String string = mCredentials.getAuthenticationType();
+        private PendingAudio(byte[] buffer) {
+            this.data = buffer;
+            this.size = 0;
         }
 
-        @Override
-        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(final MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, final Channel next) {
-            return new ClientInterceptors.CheckedForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
-                @Override
-                protected void checkedStart(Listener<RespT> responseListener, Metadata headers) throws StatusException {
-                    Metadata cachedSaved;
-                    URI uri = serviceUri(next, method);
-                    synchronized (this) {
-                        Map<String, List<String>> latestMetadata = getRequestMetadata(uri);
-                        if (mLastMetadata == null || mLastMetadata != latestMetadata) {
-                            mLastMetadata = latestMetadata;
-                            mCached = toHeaders(mLastMetadata);
-                        }
-                        cachedSaved = mCached;
-                    }
-                    headers.merge(cachedSaved);
-                    delegate().start(responseListener, headers);
-                }
-            };
+        /**
+         * Copies the audio in the own buffer until it contains capacity bytes (the buffer must be at least of that size).
+         *
+         * @return the number of bytes copied.
+         */
+        private int fill(byte[] audio, int offset, int length, int capacity) {
+            if (size == 0) {
+                enqueueTime = System.nanoTime();  // the lag is measured from the arrival of the first audio of the frame
+            }
+            int copiedBytes = Math.min(length, capacity - size);
+            System.arraycopy(audio, offset, data, size, copiedBytes);
+            size += copiedBytes;
+            return copiedBytes;
         }
 
         /**
-         * Generate a JWT-specific service URI. The URI is simply an identifier with enough
-         * information for a service to know that the JWT was intended for it. The URI will
-         * commonly be verified with a simple string equality check.
+         * Appends the audio if the total does not exceed maxSize, the first time the audio is copied in a new buffer of maxSize bytes
+         * (the data of a frame of the Recorder is never modified).
          */
-        private URI serviceUri(Channel channel, MethodDescriptor<?, ?> method) throws StatusException {
-            String authority = channel.authority();
-            if (authority == null) {
-                throw Status.UNAUTHENTICATED
-                        .withDescription("Channel has no authority")
-                        .asException();
-            }
-            // Always use HTTPS, by definition.
-            final String scheme = "https";
-            final int defaultPort = 443;
-            String path = "/" + MethodDescriptor.extractFullServiceName(method.getFullMethodName());
-            URI uri;
-            try {
-                uri = new URI(scheme, authority, path, null, null);
-            } catch (URISyntaxException e) {
-                throw Status.UNAUTHENTICATED
-                        .withDescription("Unable to construct service URI for auth")
-                        .withCause(e).asException();
+        private boolean append(byte[] audio, int audioSize, int maxSize) {
+            if (size + audioSize > maxSize) {
+                return false;
             }
-            // The default port must not be present. Alternative ports should be present.
-            if (uri.getPort() == defaultPort) {
-                uri = removePort(uri);
+            if (frame != null || data.length < size + audioSize) {
+                byte[] buffer = new byte[maxSize];
+                System.arraycopy(data, 0, buffer, 0, size);
+                if (frame != null) {
+                    frame.release();
+                    frame = null;
+                }
+                data = buffer;
             }
-            return uri;
+            System.arraycopy(audio, 0, data, size, audioSize);
+            size += audioSize;
+            return true;
         }
 
-        private URI removePort(URI uri) throws StatusException {
-            try {
-                return new URI(uri.getScheme(), uri.getUserInfo(), uri.getHost(), -1 /* port */,
-                        uri.getPath(), uri.getQuery(), uri.getFragment());
-            } catch (URISyntaxException e) {
-                throw Status.UNAUTHENTICATED
-                        .withDescription("Unable to construct service URI after removing port")
-                        .withCause(e).asException();
-            }
+        private byte[] getData() {
+            return data;
         }
 
-        private Map<String, List<String>> getRequestMetadata(URI uri) throws StatusException {
-            try {
-                return mCredentials.getRequestMetadata(uri);
-            } catch (IOException e) {
-                throw Status.UNAUTHENTICATED.withCause(e).asException();
-            }
+        private int getSize() {
+            return size;
         }
 
-        private static Metadata toHeaders(Map<String, List<String>> metadata) {
-            Metadata headers = new Metadata();
-            if (metadata != null) {
-                for (String key : metadata.keySet()) {
-                    Metadata.Key<String> headerKey = Metadata.Key.of(
-                            key, Metadata.ASCII_STRING_MARSHALLER);
-                    for (String value : metadata.get(key)) {
-                        headers.put(headerKey, value);
-                    }
-                }
+        private long getEnqueueTime() {
+            return enqueueTime;
+        }
+
+        private boolean isReplayed() {
+            return replayed;
+        }
+
+        private void setReplayed() {
+            replayed = true;
+        }
+
+        /**
+         * @return the own buffer, so it can be reused, or null if the audio was a frame of the Recorder.
+         */
+        private byte[] release() {
+            if (frame != null) {
+                frame.release();
+                frame = null;
+                return null;
             }
-            return headers;
+            return data;
         }
     }
 }
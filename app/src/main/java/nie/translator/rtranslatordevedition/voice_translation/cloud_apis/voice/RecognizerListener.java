@@ -20,5 +20,14 @@ import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.CloudAp
 
 
 public interface RecognizerListener extends CloudApiListener {
+    /**
+     * Called with the final results (and with the result of the whole recognition when it ends).
+     */
     void onSpeechRecognizedResult(String text, String languageCode, float confidenceScore, boolean isFinal);
+
+    /**
+     * Called when the text of the interim results changes, with only the change from the previous text (see {@link TranscriptDelta}),
+     * the text restarts from empty after every final result. Called only if the {@link Recognizer} does not return the results only at the end.
+     */
+    void onSpeechRecognizedDelta(TranscriptDelta delta, String languageCode);
 }
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import java.util.Locale;
+
+
+/**
+ * Collects the metrics of the audio sent by the {@link Recognizer}s: depth of the queue of the audio waiting to be sent, send lag
+ * (time passed from when the audio is passed to the Recognizer to when it is written in the stream) and what has been done when the
+ * queue was full (frames merged, dropped or capture blocked).
+ * The Recognizers run in different services, so there is one object for all the process, obtained with {@link nie.translator.rtranslatordevedition.Global#getRecognizerMetrics()}.
+ */
+public class RecognizerMetrics {
+    private final Object lock = new Object();
+    private long sentMessageCount = 0;
+    private long sentBytes = 0;
+    private long totalSendLagMillis = 0;
+    private long lastSendLagMillis = 0;
+    private long maxSendLagMillis = 0;
+    private long lastQueueDepthMillis = 0;
+    private long maxQueueDepthMillis = 0;
+    private long notReadyCount = 0;
+    private long coalescedFrameCount = 0;
+    private long droppedFrameCount = 0;
+    private long droppedMillis = 0;
+    private long blockedCount = 0;
+    private long totalBlockedMillis = 0;
+    private long rolloverCount = 0;
+
+    /**
+     * Called every time a frame is added to the queue of a Recognizer.
+     *
+     * @param depthMillis the duration of the audio waiting to be sent after the addition.
+     */
+    void onQueueDepth(long depthMillis) {
+        synchronized (lock) {
+            lastQueueDepthMillis = depthMillis;
+            maxQueueDepthMillis = Math.max(maxQueueDepthMillis, depthMillis);
+        }
+    }
+
+    void onAudioSent(int bytes, long lagNanos) {
+        final long lagMillis = lagNanos / 1000000;
+        synchronized (lock) {
+            sentMessageCount++;
+            sentBytes += bytes;
+            totalSendLagMillis += lagMillis;
+            lastSendLagMillis = lagMillis;
+            maxSendLagMillis = Math.max(maxSendLagMillis, lagMillis);
+        }
+    }
+
+    /**
+     * Called when the sending stops because the stream is not ready (the network does not keep up).
+     */
+    void onNotReady() {
+        synchronized (lock) {
+            notReadyCount++;
+        }
+    }
+
+    void onFrameCoalesced() {
+        synchronized (lock) {
+            coalescedFrameCount++;
+        }
+    }
+
+    void onFrameDropped(long durationMillis) {
+        synchronized (lock) {
+            droppedFrameCount++;
+            droppedMillis += durationMillis;
+        }
+    }
+
+    void onCaptureBlocked(long durationMillis) {
+        synchronized (lock) {
+            blockedCount++;
+            totalBlockedMillis += durationMillis;
+        }
+    }
+
+    /**
+     * Called when a long recognition continues on a new stream.
+     */
+    void onStreamRollover() {
+        synchronized (lock) {
+            rolloverCount++;
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        final Snapshot snapshot = new Snapshot();
+        synchronized (lock) {
+            snapshot.sentMessageCount = sentMessageCount;
+            snapshot.sentBytes = sentBytes;
+            snapshot.averageSendLagMillis = sentMessageCount > 0 ? totalSendLagMillis / sentMessageCount : 0;
+            snapshot.lastSendLagMillis = lastSendLagMillis;
+            snapshot.maxSendLagMillis = maxSendLagMillis;
+            snapshot.lastQueueDepthMillis = lastQueueDepthMillis;
+            snapshot.maxQueueDepthMillis = maxQueueDepthMillis;
+            snapshot.notReadyCount = notReadyCount;
+            snapshot.coalescedFrameCount = coalescedFrameCount;
+            snapshot.droppedFrameCount = droppedFrameCount;
+            snapshot.droppedMillis = droppedMillis;
+            snapshot.blockedCount = blockedCount;
+            snapshot.totalBlockedMillis = totalBlockedMillis;
+            snapshot.rolloverCount = rolloverCount;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Immutable copy of the metrics, it can be sent to the clients of the services.
+     */
+    public static class Snapshot implements Parcelable {
+        private long sentMessageCount;
+        private long sentBytes;
+        private long averageSendLagMillis;
+        private long lastSendLagMillis;
+        private long maxSendLagMillis;
+        private long lastQueueDepthMillis;
+        private long maxQueueDepthMillis;
+        private long notReadyCount;
+        private long coalescedFrameCount;
+        private long droppedFrameCount;
+        private long droppedMillis;
+        private long blockedCount;
+        private long totalBlockedMillis;
+        private long rolloverCount;
+
+        private Snapshot() {
+        }
+
+        public static final Creator<Snapshot> CREATOR = new Creator<Snapshot>() {
+            @Override
+            public Snapshot createFromParcel(Parcel in) {
+                return new Snapshot(in);
+            }
+
+            @Override
+            public Snapshot[] newArray(int size) {
+                return new Snapshot[size];
+            }
+        };
+
+        private Snapshot(Parcel in) {
+            sentMessageCount = in.readLong();
+            sentBytes = in.readLong();
+            averageSendLagMillis = in.readLong();
+            lastSendLagMillis = in.readLong();
+            maxSendLagMillis = in.readLong();
+            lastQueueDepthMillis = in.readLong();
+            maxQueueDepthMillis = in.readLong();
+            notReadyCount = in.readLong();
+            coalescedFrameCount = in.readLong();
+            droppedFrameCount = in.readLong();
+            droppedMillis = in.readLong();
+            blockedCount = in.readLong();
+            totalBlockedMillis = in.readLong();
+            rolloverCount = in.readLong();
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel parcel, int i) {
+            parcel.writeLong(sentMessageCount);
+            parcel.writeLong(sentBytes);
+            parcel.writeLong(averageSendLagMillis);
+            parcel.writeLong(lastSendLagMillis);
+            parcel.writeLong(maxSendLagMillis);
+            parcel.writeLong(lastQueueDepthMillis);
+            parcel.writeLong(maxQueueDepthMillis);
+            parcel.writeLong(notReadyCount);
+            parcel.writeLong(coalescedFrameCount);
+            parcel.writeLong(droppedFrameCount);
+            parcel.writeLong(droppedMillis);
+            parcel.writeLong(blockedCount);
+            parcel.writeLong(totalBlockedMillis);
+            parcel.writeLong(rolloverCount);
+        }
+
+        public long getSentMessageCount() {
+            return sentMessageCount;
+        }
+
+        public long getSentBytes() {
+            return sentBytes;
+        }
+
+        public long getAverageSendLagMillis() {
+            return averageSendLagMillis;
+        }
+
+        public long getLastSendLagMillis() {
+            return lastSendLagMillis;
+        }
+
+        public long getMaxSendLagMillis() {
+            return maxSendLagMillis;
+        }
+
+        public long getLastQueueDepthMillis() {
+            return lastQueueDepthMillis;
+        }
+
+        public long getMaxQueueDepthMillis() {
+            return maxQueueDepthMillis;
+        }
+
+        public long getNotReadyCount() {
+            return notReadyCount;
+        }
+
+        public long getCoalescedFrameCount() {
+            return coalescedFrameCount;
+        }
+
+        public long getDroppedFrameCount() {
+            return droppedFrameCount;
+        }
+
+        public long getDroppedMillis() {
+            return droppedMillis;
+        }
+
+        public long getBlockedCount() {
+            return blockedCount;
+        }
+
+        public long getTotalBlockedMillis() {
+            return totalBlockedMillis;
+        }
+
+        public long getRolloverCount() {
+            return rolloverCount;
+        }
+
+        /**
+         * @return a textual report of the metrics, used by the debug screen and for the logs.
+         */
+        public String toReport() {
+            StringBuilder report = new StringBuilder();
+            report.append(String.format(Locale.US, "sent: %d messages, %d bytes\n", sentMessageCount, sentBytes));
+            report.append(String.format(Locale.US, "send lag: last %d ms, average %d ms, max %d ms\n", lastSendLagMillis, averageSendLagMillis, maxSendLagMillis));
+            report.append(String.format(Locale.US, "queue depth: last %d ms, max %d ms\n", lastQueueDepthMillis, maxQueueDepthMillis));
+            report.append(String.format(Locale.US, "stream not ready: %d times\n", notReadyCount));
+            report.append(String.format(Locale.US, "stream rollovers: %d\n", rolloverCount));
+            report.append(String.format(Locale.US, "overload: %d frames merged, %d frames dropped (%d ms), capture blocked %d times (%d ms)",
+                    coalescedFrameCount, droppedFrameCount, droppedMillis, blockedCount, totalBlockedMillis));
+            return report.toString();
+        }
+    }
+}
@@ -17,12 +17,11 @@
 package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
 
 import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
+import android.os.Process;
+import android.util.Log;
 import androidx.annotation.NonNull;
-import java.util.ArrayDeque;
 import nie.translator.rtranslatordevedition.Global;
-import nie.translator.rtranslatordevedition.tools.Timer;
+import nie.translator.rtranslatordevedition.tools.Tracer;
 
 
 /**
@@ -33,17 +32,19 @@ import nie.translator.rtranslatordevedition.tools.Timer;
  *
  *
  * <p>The recorded audio format is always {@link AudioFormat#ENCODING_PCM_16BIT} and
- * {@link AudioFormat#CHANNEL_IN_MONO}. This class will automatically pick the right sample rate
- * for the device. Use {@link #getSampleRate()} to getGroup the selected value.</p>
+ * {@link AudioFormat#CHANNEL_IN_MONO}. The audio is read from an {@link AudioSource}, by default the microphone,
+ * for which this class will automatically pick the right sample rate for the device. Use {@link #getSampleRate()} to getGroup the selected value.</p>
  */
 public class Recorder {
     private Global global;
-    private int timerNumber = 0;
+    private int listenIntervalNumber = 0;
     private boolean isListening;
     private boolean isRecording;
-    private static final int[] SAMPLE_RATE_CANDIDATES = new int[]{16000, 44100, 22050, 11025};
-    private static final int CHANNEL = AudioFormat.CHANNEL_IN_MONO;
-    private static final int ENCODING = AudioFormat.ENCODING_PCM_16BIT;
+    /**
+     * The audio recorded with other sample rates is converted to this one before being passed to the Callback,
+     * higher rates would only increase the data sent to the recognizer, without improving the recognition.
+     */
+    public static final int RECOGNITION_SAMPLE_RATE = 16000;
     public static final int MAX_AMPLITUDE_THRESHOLD = 15000;
     public static final int DEFAULT_AMPLITUDE_THRESHOLD = 2000; //original: 1500
     public static final int MIN_AMPLITUDE_THRESHOLD = 400;
@@ -53,55 +54,95 @@ public class Recorder {
     public static final int MAX_PREV_VOICE_DURATION = 1500;
     public static final int DEFAULT_PREV_VOICE_DURATION = 800;
     public static final int MIN_PREV_VOICE_DURATION = 100;
-    private static final int MAX_SPEECH_LENGTH_MILLIS = 29 * 1000; //original: 30 * 1000
-    private Timer timer;
+    public static final int DEFAULT_VOICE_ACTIVITY_DETECTOR = VoiceActivityDetector.ENERGY;
+    static final int MAX_SPEECH_LENGTH_MILLIS = 29 * 1000; //original: 30 * 1000
+    /**
+     * Audio that can be waiting to be processed when the consumers of the Callback are slow, beyond this the new audio is dropped.
+     */
+    private static final int CAPTURE_QUEUE_DURATION_MILLIS = 2000;
+    private static final int LISTEN_INTERVAL_MILLIS = 15000;
+    private static final int MAX_LISTEN_INTERVALS = 4;
+    private static final long NOT_LISTENING = -1;
+    /**
+     * Used only if the Callback is not a SimpleCallback, to stop listening before the end of the 15 seconds step (of the cost of the recognizer).
+     */
+    private final boolean listenWindowEnabled;
+    /**
+     * If the Recognizer continues long recognitions on new streams the voice and the listening are not interrupted at their limits while the voice is heard.
+     */
+    private final boolean endlessStreaming;
+    private VoiceActivityDetector voiceActivityDetector;
     private final Callback mCallback;
-    private AudioRecord mAudioRecord;
+    private final AudioSource mAudioSource;
     private Thread mThread;
-    private int mPrevBufferMaxSize;
-    private ArrayDeque<byte[]> mPrevBuffer;
-    private byte[] mBuffer;
+    private Thread mDispatchThread;
     /**
-     * The timestamp of the last time that voice is heard.
+     * Frames read by the capture thread and waiting to be processed by the dispatch thread.
+     */
+    private AudioFrameQueue mCaptureQueue;
+    private final RecorderMetrics mMetrics;
+    // written only by the capture thread
+    private volatile long mDroppedSampleCount = 0;
+    /**
+     * All the timing of the Recorder is based on the audio: the time is the duration of the audio captured since the start,
+     * computed from the samples processed (plus those dropped), so it is not influenced by delays of the threads and it is deterministic for the same audio.
+     */
+    private long mProcessedSampleCount;
+    private volatile long mAudioTimeMillis;
+    /**
+     * Audio time when the current listen interval is started, or NOT_LISTENING.
+     */
+    private volatile long mListenIntervalStartMillis = NOT_LISTENING;
+    private AudioFramePool mFramePool;
+    /**
+     * Not null only if the AudioSource does not record at RECOGNITION_SAMPLE_RATE, in this case the audio is read in mCaptureBuffer and then converted.
+     */
+    private Resampler mResampler;
+    private byte[] mCaptureBuffer;
+    /**
+     * Contains the last PREV_VOICE_DURATION milliseconds of audio.
+     */
+    private AudioRingBuffer mPrevBuffer;
+    /**
+     * The audio time of the last time that voice is heard.
      */
     private long mLastVoiceHeardMillis = Long.MAX_VALUE;
     /**
-     * The timestamp when the current voice is started.
+     * The audio time when the current voice is started.
      */
     private long mVoiceStartedMillis;
+    /**
+     * The System.nanoTime() of the last time that voice is heard, used only for the metrics.
+     */
+    private long mLastVoiceHeardNanos;
 
 
     public Recorder(Global global, @NonNull Callback callback) {
+        this(global, callback, new MicrophoneAudioSource());
+    }
+
+    /**
+     * @param audioSource the source of the audio, to use for example a file or a synthetic signal instead of the microphone.
+     */
+    public Recorder(Global global, @NonNull Callback callback, @NonNull AudioSource audioSource) {
+        this(global, callback, audioSource, new RecorderMetrics());
+    }
+
+    /**
+     * @param metrics where to collect the metrics of the capture, it can be shared with the previous Recorders to have cumulative values.
+     */
+    public Recorder(Global global, @NonNull Callback callback, @NonNull AudioSource audioSource, @NonNull RecorderMetrics metrics) {
         this.global = global;
+        this.mAudioSource = audioSource;
+        this.mMetrics = metrics;
         global.getMicSensitivity();
         global.getSpeechTimeout();
         global.getPrevVoiceDuration();
+        voiceActivityDetector = createVoiceActivityDetector(global.getVoiceActivityDetector());
         mCallback = callback;
         mCallback.setRecorder(this);
-        if(!(callback instanceof SimpleCallback)){
-            // used to not stop speech recognition before the 15 second step
-            timer = new Timer(15000, 1000, new Timer.Callback() {
-                @Override
-                public void onTick(long millisUntilEnd) {
-                    // it stops here eventually (and not in onEnd) to stop it before the 15 seconds have elapsed
-                    if (millisUntilEnd <= 1000 && !isRecording) {
-                        mCallback.onListenEnd();
-                    }
-                }
-
-                @Override
-                public void onEnd() {
-                    // here we avoid that listening does not last longer than 4 intervals (therefore the 60 seconds limit), should not be confused with MAX_SPEECH_LENGTH_MILLIS because that represents the limit of voice, not of listen
-                    timerNumber++;
-                    if (timerNumber == 4) {
-                        timerNumber = 0;
-                        mCallback.onListenEnd();
-                    } else {
-                        timer.start();
-                    }
-                }
-            });
-        }
+        listenWindowEnabled = !(callback instanceof SimpleCallback);
+        endlessStreaming = global.isEndlessStreamingEnabled();
     }
 
     /**
@@ -112,31 +153,42 @@ public class Recorder {
     public void start() {
         // Stop recording if it is currently ongoing.
         stop();
-        // Try to create a new recording session.
-        mAudioRecord = createAudioRecord();
-        if (mAudioRecord == null) {
+        // Try to start a new recording session.
+        if (!mAudioSource.start()) {
             throw new RuntimeException("Cannot instantiate Recorder");
         }
-        // Start recording.
-        mAudioRecord.startRecording();  // here doesn't work with callback
+        createBuffers(mAudioSource.getSampleRate(), mAudioSource.getBufferSize());
+        mProcessedSampleCount = 0;
+        mDroppedSampleCount = 0;
+        mAudioTimeMillis = 0;
+        mMetrics.onStart(mAudioSource.getSampleRate(), getSampleRate(), mAudioSource.getBufferSize());
+        voiceActivityDetector.reset(getSampleRate());
         // Start processing the captured audio.
-        mThread = new Thread(new ProcessVoice(), "processVoice");
+        // the capture only reads the audio, so a stall of the consumers of the Callback (on the dispatch thread) does not make us lose audio.
+        // Each thread keeps the buffers with which it is created, so they are not replaced under it by a restart
+        mThread = new Thread(new CaptureVoice(mCaptureQueue, mFramePool, mResampler, mCaptureBuffer), "captureVoice");
+        mDispatchThread = new Thread(new ProcessVoice(mCaptureQueue, mPrevBuffer, getSampleRate()), "processVoice");
+        mDispatchThread.start();
         mThread.start();
     }
 
     /**
-     * Stops recording audio.
+     * Stops recording audio, waiting for the end of the threads of the recording (unless it is called by the Callback).
      */
     public void stop() {
-        if (mThread != null) {
-            mThread.interrupt();
-            mThread = null;
+        final Thread captureThread = mThread;
+        final Thread dispatchThread = mDispatchThread;
+        mThread = null;
+        mDispatchThread = null;
+        if (captureThread != null) {
+            captureThread.interrupt();
         }
-        if (mAudioRecord != null) {
-            mAudioRecord.stop();
-            mAudioRecord.release();
-            //mAudioRecord = null;
+        if (dispatchThread != null) {
+            dispatchThread.interrupt();
         }
+        mAudioSource.stop();  // it also unblocks the read of the capture thread
+        join(captureThread);
+        join(dispatchThread);
         //mBuffer = null;
         dismiss();
         mCallback.onListenEnd();
@@ -148,115 +200,248 @@ public class Recorder {
     public void dismiss() {  // that's why we always stop recognizing even when we have a final result
         if (mLastVoiceHeardMillis != Long.MAX_VALUE) {
             mLastVoiceHeardMillis = Long.MAX_VALUE;
+            mMetrics.onVoiceEnd(mLastVoiceHeardNanos);
             mCallback.onVoiceEnd();
         }
     }
 
     /**
-     * Retrieves the sample rate currently used to record audio.
+     * Retrieves the sample rate of the audio passed to the Callback, which is always RECOGNITION_SAMPLE_RATE
+     * even when the AudioSource uses another sample rate, because the audio is converted.
      *
      * @return The sample rate of recorded audio.
      */
     public int getSampleRate() {
-        if (mAudioRecord != null) {
-            return mAudioRecord.getSampleRate();
+        if (mResampler != null) {
+            return mResampler.getOutputSampleRate();
         }
-        return 0;
+        return mAudioSource.getSampleRate();
     }
 
     /**
-     * Creates a new {@link AudioRecord}.
-     *
-     * @return A newly created {@link AudioRecord}, or null if it cannot be created (missing
-     * permissions?).
+     * @return the number of times the audio has been dropped because the processing (voice detection and Callback) did not keep up with the capture.
+     */
+    public long getOverrunCount() {
+        return mMetrics.getOverrunCount();
+    }
+
+    /**
+     * @return the number of frames of audio dropped because the processing did not keep up with the capture.
      */
-    private AudioRecord createAudioRecord() {
-        for (int sampleRate : SAMPLE_RATE_CANDIDATES) {
-            final int sizeInBytes = AudioRecord.getMinBufferSize(sampleRate, CHANNEL, ENCODING);
-            if (sizeInBytes == AudioRecord.ERROR_BAD_VALUE) {
-                continue;
+    public long getDroppedFrameCount() {
+        return mMetrics.getDroppedFrameCount();
+    }
+
+    public RecorderMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    private static void join(Thread thread) {
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            final AudioRecord audioRecord;
-            /*if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
-                audioRecord = new AudioRecord(MediaRecorder.AudioSource.UNPROCESSED, sampleRate, CHANNEL, ENCODING, sizeInBytes);
-            }else{
-                audioRecord = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, sampleRate, CHANNEL, ENCODING, sizeInBytes);
-            }*/
-            audioRecord = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, sampleRate, CHANNEL, ENCODING, sizeInBytes);
-            if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
-                mBuffer = new byte[sizeInBytes * 2];  //attention here
-                mPrevBufferMaxSize = (int) Math.floor((((16f * sampleRate) / 8) * (((double)global.getPrevVoiceDuration()) /1000)) / mBuffer.length);
-                mPrevBuffer = new ArrayDeque<>();   // the prev buffer must contain PREV_VOICE_DURATION seconds of data prior to the buffer
-                return audioRecord;
-            } else {
-                audioRecord.release();
+        }
+    }
+
+    private VoiceActivityDetector createVoiceActivityDetector(int type) {
+        switch (type) {
+            case VoiceActivityDetector.AMPLITUDE:
+                return new AmplitudeVoiceActivityDetector(global);
+            case VoiceActivityDetector.SPECTRAL:
+                return new SpectralVoiceActivityDetector(global);
+            default:
+                return new EnergyVoiceActivityDetector(global);
+        }
+    }
+
+    /**
+     * Creates the buffers for the audio read from the AudioSource with the given format.
+     */
+    private void createBuffers(int sampleRate, int bufferSize) {
+        int outputSampleRate = sampleRate;
+        if (sampleRate != RECOGNITION_SAMPLE_RATE) {
+            mResampler = new Resampler(sampleRate, RECOGNITION_SAMPLE_RATE, bufferSize);
+            mCaptureBuffer = new byte[bufferSize];
+            outputSampleRate = RECOGNITION_SAMPLE_RATE;
+            bufferSize = mResampler.getMaxOutputSize(bufferSize);
+        } else {
+            mResampler = null;
+            mCaptureBuffer = null;
+        }
+        int prevBufferMaxSize = (int) Math.floor((((16f * outputSampleRate) / 8) * (((double)global.getPrevVoiceDuration()) /1000)) / bufferSize);
+        mPrevBuffer = new AudioRingBuffer(prevBufferMaxSize);   // the prev buffer must contain PREV_VOICE_DURATION seconds of data prior to the buffer (including the last buffer read)
+        float frameMillis = (bufferSize / 2) * 1000f / outputSampleRate;
+        mCaptureQueue = new AudioFrameQueue((int) Math.ceil(CAPTURE_QUEUE_DURATION_MILLIS / frameMillis));
+        mFramePool = new AudioFramePool(bufferSize, mPrevBuffer.getCapacity() + 2);
+    }
+
+    /**
+     * Continuously reads the audio from the AudioSource, with the highest priority, and passes it to the dispatch thread ({@link ProcessVoice}).
+     * If the dispatch thread is late and its queue is full the audio read is dropped, counting an overrun.
+     */
+    private class CaptureVoice implements Runnable {
+        private final AudioFrameQueue queue;
+        private final AudioFramePool framePool;
+        private final Resampler resampler;
+        private final byte[] captureBuffer;
+        private boolean overrun = false;
+
+        private CaptureVoice(AudioFrameQueue queue, AudioFramePool framePool, Resampler resampler, byte[] captureBuffer) {
+            this.queue = queue;
+            this.framePool = framePool;
+            this.resampler = resampler;
+            this.captureBuffer = captureBuffer;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            while (!Thread.currentThread().isInterrupted()) {
+                // the frames come from the pool and return there when the prevBuffer and the consumers release them, so nothing is allocated here
+                final AudioFrame frame = framePool.acquire();
+                final int size;
+                final int requestedSize;
+                final long readStartNanos = System.nanoTime();
+                if (resampler != null) {
+                    requestedSize = captureBuffer.length;
+                    size = mAudioSource.read(captureBuffer, 0, requestedSize);
+                } else {
+                    requestedSize = frame.getData().length;
+                    size = mAudioSource.read(frame.getData(), 0, requestedSize);
+                }
+                mMetrics.onRead(System.nanoTime() - readStartNanos, requestedSize, size);
+                Tracer.endSpan(Tracer.CAPTURE, "read", readStartNanos, size);
+                if (size < 0) {
+                    // the audio is finished (finite sources) or the source can no longer be read
+                    frame.release();
+                    if (size != AudioSource.END_OF_STREAM) {
+                        Log.e("recorder", "audio source read error: " + size);
+                    }
+                    break;
+                }
+                if (resampler != null) {
+                    frame.setSize(resampler.process(captureBuffer, size, frame.getData()));
+                } else {
+                    frame.setSize(size);
+                }
+                if (queue.offer(frame)) {   // the queue takes our reference of the frame
+                    overrun = false;
+                } else {
+                    mDroppedSampleCount += frame.getSize() / 2;  // the dropped audio still counts for the time
+                    frame.release();
+                    mMetrics.onFrameDropped(!overrun);
+                    if (!overrun) {
+                        overrun = true;
+                        Tracer.instant(Tracer.CAPTURE, "overrun");
+                    }
+                }
             }
+            queue.close();
         }
-        return null;
     }
 
     /**
      * Continuously processes the captured audio and notifies {@link #mCallback} of corresponding
      * events.
-     * Always call the isHearing voice method and if it returns true and the time span from the last listening of the voice is greater than a tot (MAX_VALUE)
+     * Always call the isVoice method of the voiceActivityDetector and if it returns true and the time span from the last listening of the voice is greater than a tot (MAX_VALUE)
      * then call the onVoiceStarted method and then onVoice, otherwise only onVoice.
      */
     private class ProcessVoice implements Runnable {
+        private final AudioFrameQueue queue;
+        private final AudioRingBuffer prevBuffer;
+        private final int sampleRate;
+
+        private ProcessVoice(AudioFrameQueue queue, AudioRingBuffer prevBuffer, int sampleRate) {
+            this.queue = queue;
+            this.prevBuffer = prevBuffer;
+            this.sampleRate = sampleRate;
+        }
+
         @Override
         public void run() {
-            while (!Thread.currentThread().isInterrupted()) {
-                final int size = mAudioRecord.read(mBuffer, 0, mBuffer.length);
-                mPrevBuffer.addLast(mBuffer.clone());
-                if (mPrevBuffer.size() > mPrevBufferMaxSize) {
-                    mPrevBuffer.pollFirst();   // the excess buffer is eliminated, since the prevBuffer must only store the last buffers, the number is decided by prevBufferMaxSize
-                }
-                final long now = System.currentTimeMillis();
-                if (isHearingVoice(mBuffer, size)) {
+            AudioFrame frame;
+            while ((frame = queue.take()) != null) {
+                final long processStartTime = Tracer.beginSpan();
+                mProcessedSampleCount += frame.getSize() / 2;
+                final long now = (mProcessedSampleCount + mDroppedSampleCount) * 1000 / sampleRate;
+                final long frameMillis = now - mAudioTimeMillis;
+                mAudioTimeMillis = now;
+                prevBuffer.add(frame);   // the prevBuffer takes our reference of the frame
+                if (voiceActivityDetector.isVoice(frame.getData(), frame.getSize())) {
+                    mLastVoiceHeardNanos = System.nanoTime();
                     if (mLastVoiceHeardMillis == Long.MAX_VALUE) {    // use Long's maximum limit to indicate that we have no voice
                         mVoiceStartedMillis = now;
+                        mMetrics.onVoiceStart();
+                        Tracer.instant(Tracer.CAPTURE, "voiceStart");
                         if (!isListening) {
                             mCallback.onListenStart();
                         }
                         mCallback.onVoiceStart();
-                        // we send the previous section (PREV_VOICE_DURATION seconds) when the voice is recognized
-                        while (mPrevBuffer.size() > 0) {
-                            mCallback.onVoice(mPrevBuffer.pollFirst(), size);
+                        // we send the previous section (PREV_VOICE_DURATION seconds, the current buffer included) when the voice is recognized
+                        for (int i = 0; i < prevBuffer.size(); i++) {
+                            mCallback.onVoice(prevBuffer.get(i));
                         }
+                        prevBuffer.clear();
                     } else {
-                        mCallback.onVoice(mBuffer, size);
+                        mCallback.onVoice(frame);
                     }
+                    mMetrics.onUtteranceFrame(frameMillis, true);
                     mLastVoiceHeardMillis = now;
-                    if (now - mVoiceStartedMillis > MAX_SPEECH_LENGTH_MILLIS) {
+                    if (!endlessStreaming && now - mVoiceStartedMillis > MAX_SPEECH_LENGTH_MILLIS) {
                         end();
                         mCallback.onListenEnd();
                     }
                 } else if (mLastVoiceHeardMillis != Long.MAX_VALUE) {
-                    mCallback.onVoice(mBuffer, size);
+                    mCallback.onVoice(frame);
+                    mMetrics.onUtteranceFrame(frameMillis, false);
                     if (now - mLastVoiceHeardMillis > global.getSpeechTimeout()) {
                         end();
                     }
                 }
+                checkListenInterval(now);
+                Tracer.endSpan(Tracer.CAPTURE, "processFrame", processStartTime);
             }
+            // the capture is finished (or we have been stopped)
+            if (mLastVoiceHeardMillis != Long.MAX_VALUE && !Thread.currentThread().isInterrupted()) {
+                end();
+            }
+            // the capture can offer some frames until it sees the interruption, they are released when it has closed the queue
+            queue.drain();
+            prevBuffer.clear();
         }
 
         private void end() {
             mLastVoiceHeardMillis = Long.MAX_VALUE;
+            mMetrics.onVoiceEnd(mLastVoiceHeardNanos);
+            Tracer.instant(Tracer.CAPTURE, "voiceEnd");
             mCallback.onVoiceEnd();
         }
 
-        private boolean isHearingVoice(byte[] buffer, int size) {
-            for (int i = 0; i < size - 1; i += 2) {
-                // The buffer has LINEAR16 in little endian.
-                int s = buffer[i + 1];
-                if (s < 0) s *= -1;
-                s <<= 8;
-                s += Math.abs(buffer[i]);
-                int amplitudeThreshold = global.getAmplitudeThreshold();
-                if (s > amplitudeThreshold) {
-                    return true;
+        /**
+         * Stops listening one second before the end of the 15 seconds interval if the voice is not being heard,
+         * and in any case after 4 intervals (therefore the 60 seconds limit), should not be confused with MAX_SPEECH_LENGTH_MILLIS
+         * because that represents the limit of voice, not of listen. With the endless streaming the limit of 4 intervals is applied
+         * only when the voice is not heard.
+         */
+        private void checkListenInterval(long now) {
+            final long intervalStart = mListenIntervalStartMillis;
+            if (intervalStart != NOT_LISTENING) {
+                final long elapsed = now - intervalStart;
+                if (elapsed >= LISTEN_INTERVAL_MILLIS) {
+                    listenIntervalNumber++;
+                    if (listenIntervalNumber >= MAX_LISTEN_INTERVALS && !(endlessStreaming && isRecording)) {
+                        mCallback.onListenEnd();
+                    } else {
+                        mListenIntervalStartMillis = intervalStart + LISTEN_INTERVAL_MILLIS;
+                    }
+                } else if (LISTEN_INTERVAL_MILLIS - elapsed <= 1000 && !isRecording) {
+                    // it stops here eventually (and not at the end of the interval) to stop it before the 15 seconds have elapsed
+                    mCallback.onListenEnd();
                 }
             }
-            return false;
         }
 
     }
@@ -271,8 +456,10 @@ public class Recorder {
 
         public void onListenStart() {
             if (recorder != null) {
-                recorder.timer.cancel();
-                recorder.timer.start();
+                if (recorder.listenWindowEnabled) {
+                    recorder.listenIntervalNumber = 0;
+                    recorder.mListenIntervalStartMillis = recorder.mAudioTimeMillis;
+                }
                 recorder.isListening = true;
             }
         }
@@ -289,10 +476,10 @@ public class Recorder {
         /**
          * Called when the recorder is hearing voice.
          *
-         * @param data The audio data in {@link AudioFormat#ENCODING_PCM_16BIT}.
-         * @param size The peersSize of the actual data in {@code data}.
+         * @param frame The audio data in {@link AudioFormat#ENCODING_PCM_16BIT}, it is valid only during this call,
+         *              to keep it longer call {@link AudioFrame#retain()} and release it when it is no longer needed.
          */
-        public void onVoice(@NonNull byte[] data, int size) {
+        public void onVoice(@NonNull AudioFrame frame) {
 
         }
 
@@ -311,7 +498,7 @@ public class Recorder {
                     onVoiceEnd();
                 }
                 recorder.isListening = false;
-                recorder.timer.cancel();
+                recorder.mListenIntervalStartMillis = NOT_LISTENING;
             }
         }
     }
@@ -331,7 +518,7 @@ public class Recorder {
         }
 
         @Override
-        public void onVoice(@NonNull byte[] data, int size) {
+        public void onVoice(@NonNull AudioFrame frame) {
         }
 
         @Override
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Collects the metrics of the capture path of the {@link Recorder}: duration of the reads from the AudioSource, short reads,
+ * overruns, voice starts and ends and statistics of the utterances.
+ * The same object can be passed to the Recorders created one after the other (the Recorder is recreated every time the microphone is restarted),
+ * so the values are cumulative. The read metrics are written by the capture thread without locks, {@link #getSnapshot()} can be called from any thread.
+ */
+public class RecorderMetrics {
+    /**
+     * Upper bounds of the buckets of the read duration histogram, the last bucket contains the longer reads.
+     */
+    public static final int[] READ_DURATION_BUCKETS_MILLIS = new int[]{5, 10, 20, 40, 80, 160, 320};
+    // written only by the capture thread
+    private final AtomicLongArray readDurationHistogram = new AtomicLongArray(READ_DURATION_BUCKETS_MILLIS.length + 1);
+    private volatile long shortReadCount = 0;
+    private volatile long overrunCount = 0;
+    private volatile long droppedFrameCount = 0;
+    private volatile int sourceSampleRate = 0;
+    private volatile int outputSampleRate = 0;
+    private volatile int bufferSize = 0;
+    // written by the dispatch thread and by the callers of onFinishRecognizing
+    private final Object lock = new Object();
+    private long voiceStartCount = 0;
+    private long voiceEndCount = 0;
+    private long currentVoicedMillis = 0;
+    private long currentSilentMillis = 0;
+    private long utteranceCount = 0;
+    private long totalUtteranceMillis = 0;
+    private long totalUtteranceSilentMillis = 0;
+    private long lastUtteranceMillis = 0;
+    private float lastUtteranceSilenceRatio = 0;
+    private long pendingVoiceEndNanos = 0;  // 0 if there is no voice end waiting for the finish of the recognition
+    private long finishLatencyCount = 0;
+    private long totalFinishLatencyMillis = 0;
+    private long lastFinishLatencyMillis = 0;
+    private long maxFinishLatencyMillis = 0;
+
+    void onStart(int sourceSampleRate, int outputSampleRate, int bufferSize) {
+        this.sourceSampleRate = sourceSampleRate;
+        this.outputSampleRate = outputSampleRate;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Called by the capture thread after every read.
+     */
+    void onRead(long durationNanos, int requestedBytes, int readBytes) {
+        final long durationMillis = durationNanos / 1000000;
+        int bucket = 0;
+        while (bucket < READ_DURATION_BUCKETS_MILLIS.length && durationMillis >= READ_DURATION_BUCKETS_MILLIS[bucket]) {
+            bucket++;
+        }
+        readDurationHistogram.incrementAndGet(bucket);
+        if (readBytes >= 0 && readBytes < requestedBytes) {
+            shortReadCount++;
+        }
+    }
+
+    /**
+     * Called by the capture thread when a frame is dropped.
+     *
+     * @param newOverrun true if it is the first frame dropped of an overrun.
+     */
+    void onFrameDropped(boolean newOverrun) {
+        droppedFrameCount++;
+        if (newOverrun) {
+            overrunCount++;
+        }
+    }
+
+    void onVoiceStart() {
+        synchronized (lock) {
+            voiceStartCount++;
+            currentVoicedMillis = 0;
+            currentSilentMillis = 0;
+        }
+    }
+
+    /**
+     * Called for every frame of the current utterance.
+     */
+    void onUtteranceFrame(long durationMillis, boolean isVoice) {
+        synchronized (lock) {
+            if (isVoice) {
+                currentVoicedMillis += durationMillis;
+            } else {
+                currentSilentMillis += durationMillis;
+            }
+        }
+    }
+
+    /**
+     * @param lastVoiceNanos the System.nanoTime() of when the last frame with voice of the utterance has been processed.
+     */
+    void onVoiceEnd(long lastVoiceNanos) {
+        synchronized (lock) {
+            voiceEndCount++;
+            final long duration = currentVoicedMillis + currentSilentMillis;
+            if (duration > 0) {
+                utteranceCount++;
+                totalUtteranceMillis += duration;
+                totalUtteranceSilentMillis += currentSilentMillis;
+                lastUtteranceMillis = duration;
+                lastUtteranceSilenceRatio = (float) currentSilentMillis / duration;
+            }
+            pendingVoiceEndNanos = lastVoiceNanos;
+        }
+    }
+
+    /**
+     * To call when {@link Recognizer#finishRecognizing()} is called after the end of the voice, to measure the time passed from the last voice heard.
+     */
+    public void onFinishRecognizing() {
+        synchronized (lock) {
+            if (pendingVoiceEndNanos != 0) {
+                final long latency = (System.nanoTime() - pendingVoiceEndNanos) / 1000000;
+                pendingVoiceEndNanos = 0;
+                finishLatencyCount++;
+                totalFinishLatencyMillis += latency;
+                lastFinishLatencyMillis = latency;
+                maxFinishLatencyMillis = Math.max(maxFinishLatencyMillis, latency);
+            }
+        }
+    }
+
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    public Snapshot getSnapshot() {
+        final Snapshot snapshot = new Snapshot();
+        snapshot.readDurationHistogram = new long[readDurationHistogram.length()];
+        for (int i = 0; i < snapshot.readDurationHistogram.length; i++) {
+            snapshot.readDurationHistogram[i] = readDurationHistogram.get(i);
+        }
+        snapshot.shortReadCount = shortReadCount;
+        snapshot.overrunCount = overrunCount;
+        snapshot.droppedFrameCount = droppedFrameCount;
+        snapshot.sourceSampleRate = sourceSampleRate;
+        snapshot.outputSampleRate = outputSampleRate;
+        snapshot.bufferSize = bufferSize;
+        synchronized (lock) {
+            snapshot.voiceStartCount = voiceStartCount;
+            snapshot.voiceEndCount = voiceEndCount;
+            snapshot.utteranceCount = utteranceCount;
+            snapshot.averageUtteranceMillis = utteranceCount > 0 ? totalUtteranceMillis / utteranceCount : 0;
+            snapshot.averageSilenceRatio = totalUtteranceMillis > 0 ? (float) totalUtteranceSilentMillis / totalUtteranceMillis : 0;
+            snapshot.lastUtteranceMillis = lastUtteranceMillis;
+            snapshot.lastSilenceRatio = lastUtteranceSilenceRatio;
+            snapshot.averageFinishLatencyMillis = finishLatencyCount > 0 ? totalFinishLatencyMillis / finishLatencyCount : 0;
+            snapshot.lastFinishLatencyMillis = lastFinishLatencyMillis;
+            snapshot.maxFinishLatencyMillis = maxFinishLatencyMillis;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Immutable copy of the metrics, it can be sent to the clients of the services.
+     */
+    public static class Snapshot implements Parcelable {
+        private long[] readDurationHistogram;
+        private long shortReadCount;
+        private long overrunCount;
+        private long droppedFrameCount;
+        private int sourceSampleRate;
+        private int outputSampleRate;
+        private int bufferSize;
+        private long voiceStartCount;
+        private long voiceEndCount;
+        private long utteranceCount;
+        private long averageUtteranceMillis;
+        private float averageSilenceRatio;
+        private long lastUtteranceMillis;
+        private float lastSilenceRatio;
+        private long averageFinishLatencyMillis;
+        private long lastFinishLatencyMillis;
+        private long maxFinishLatencyMillis;
+
+        private Snapshot() {
+        }
+
+        public static final Creator<Snapshot> CREATOR = new Creator<Snapshot>() {
+            @Override
+            public Snapshot createFromParcel(Parcel in) {
+                return new Snapshot(in);
+            }
+
+            @Override
+            public Snapshot[] newArray(int size) {
+                return new Snapshot[size];
+            }
+        };
+
+        private Snapshot(Parcel in) {
+            readDurationHistogram = in.createLongArray();
+            shortReadCount = in.readLong();
+            overrunCount = in.readLong();
+            droppedFrameCount = in.readLong();
+            sourceSampleRate = in.readInt();
+            outputSampleRate = in.readInt();
+            bufferSize = in.readInt();
+            voiceStartCount = in.readLong();
+            voiceEndCount = in.readLong();
+            utteranceCount = in.readLong();
+            averageUtteranceMillis = in.readLong();
+            averageSilenceRatio = in.readFloat();
+            lastUtteranceMillis = in.readLong();
+            lastSilenceRatio = in.readFloat();
+            averageFinishLatencyMillis = in.readLong();
+            lastFinishLatencyMillis = in.readLong();
+            maxFinishLatencyMillis = in.readLong();
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel parcel, int i) {
+            parcel.writeLongArray(readDurationHistogram);
+            parcel.writeLong(shortReadCount);
+            parcel.writeLong(overrunCount);
+            parcel.writeLong(droppedFrameCount);
+            parcel.writeInt(sourceSampleRate);
+            parcel.writeInt(outputSampleRate);
+            parcel.writeInt(bufferSize);
+            parcel.writeLong(voiceStartCount);
+            parcel.writeLong(voiceEndCount);
+            parcel.writeLong(utteranceCount);
+            parcel.writeLong(averageUtteranceMillis);
+            parcel.writeFloat(averageSilenceRatio);
+            parcel.writeLong(lastUtteranceMillis);
+            parcel.writeFloat(lastSilenceRatio);
+            parcel.writeLong(averageFinishLatencyMillis);
+            parcel.writeLong(lastFinishLatencyMillis);
+            parcel.writeLong(maxFinishLatencyMillis);
+        }
+
+        /**
+         * @return the number of reads for each bucket of {@link #READ_DURATION_BUCKETS_MILLIS} (plus the last one for the longer reads).
+         */
+        public long[] getReadDurationHistogram() {
+            return readDurationHistogram.clone();
+        }
+
+        public long getShortReadCount() {
+            return shortReadCount;
+        }
+
+        public long getOverrunCount() {
+            return overrunCount;
+        }
+
+        public long getDroppedFrameCount() {
+            return droppedFrameCount;
+        }
+
+        public int getSourceSampleRate() {
+            return sourceSampleRate;
+        }
+
+        public int getOutputSampleRate() {
+            return outputSampleRate;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public long getVoiceStartCount() {
+            return voiceStartCount;
+        }
+
+        public long getVoiceEndCount() {
+            return voiceEndCount;
+        }
+
+        public long getUtteranceCount() {
+            return utteranceCount;
+        }
+
+        public long getAverageUtteranceMillis() {
+            return averageUtteranceMillis;
+        }
+
+        public float getAverageSilenceRatio() {
+            return averageSilenceRatio;
+        }
+
+        public long getLastUtteranceMillis() {
+            return lastUtteranceMillis;
+        }
+
+        public float getLastSilenceRatio() {
+            return lastSilenceRatio;
+        }
+
+        public long getAverageFinishLatencyMillis() {
+            return averageFinishLatencyMillis;
+        }
+
+        public long getLastFinishLatencyMillis() {
+            return lastFinishLatencyMillis;
+        }
+
+        public long getMaxFinishLatencyMillis() {
+            return maxFinishLatencyMillis;
+        }
+
+        /**
+         * @return a textual report of the metrics, used by the debug screen and for the logs.
+         */
+        public String toReport() {
+            StringBuilder report = new StringBuilder();
+            report.append(String.format(Locale.US, "sample rate: %d Hz (converted to %d Hz)\n", sourceSampleRate, outputSampleRate));
+            report.append(String.format(Locale.US, "buffer size: %d bytes\n\n", bufferSize));
+            report.append("read duration:\n");
+            for (int i = 0; i < readDurationHistogram.length; i++) {
+                final String range = i < READ_DURATION_BUCKETS_MILLIS.length ? "< " + READ_DURATION_BUCKETS_MILLIS[i] : ">= " + READ_DURATION_BUCKETS_MILLIS[i - 1];
+                report.append(String.format(Locale.US, "  %s ms: %d\n", range, readDurationHistogram[i]));
+            }
+            report.append(String.format(Locale.US, "short reads: %d\n", shortReadCount));
+            report.append(String.format(Locale.US, "overruns: %d (%d frames dropped)\n\n", overrunCount, droppedFrameCount));
+            report.append(String.format(Locale.US, "voice starts: %d, ends: %d\n", voiceStartCount, voiceEndCount));
+            report.append(String.format(Locale.US, "utterances: %d, average %d ms, silence %.0f%%\n", utteranceCount, averageUtteranceMillis, averageSilenceRatio * 100));
+            report.append(String.format(Locale.US, "last utterance: %d ms, silence %.0f%%\n", lastUtteranceMillis, lastSilenceRatio * 100));
+            report.append(String.format(Locale.US, "voice end -> finish recognizing: last %d ms, average %d ms, max %d ms", lastFinishLatencyMillis, averageFinishLatencyMillis, maxFinishLatencyMillis));
+            return report.toString();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+
+/**
+ * Converts LINEAR16 mono audio from a sample rate to another with a polyphase FIR low pass filter (windowed sinc).
+ * The conversion is seen as an upsampling by L followed by a downsampling by M (L/M is the ratio between the two rates reduced to lowest terms),
+ * but only the output samples are calculated, each one using only the coefficients of its phase, so the cost is {@link #getTapsPerPhase()}
+ * multiplications per output sample.
+ * All the memory is allocated in the constructor, so {@link #process(byte[], int, byte[])} does not allocate and can be called for every buffer recorded.
+ * The filter state is kept between the calls, so consecutive buffers are converted as a continuous signal.
+ */
+class Resampler {
+    private static final float CUTOFF = 0.45f;  // fraction of the lower sample rate, just below its Nyquist frequency
+    private static final float TRANSITION_BAND = 0.1f;  // fraction of the lower sample rate
+    private static final float BLACKMAN_TRANSITION_WIDTH = 5.5f;  // width of the transition band of a Blackman window, in bins
+    private final int inputSampleRate;
+    private final int outputSampleRate;
+    private final int upFactor;
+    private final int downFactor;
+    private final int tapsPerPhase;
+    private final float[] coefficients;  // coefficients[phase * tapsPerPhase + tap]
+    private final float[] samples;  // the last tapsPerPhase - 1 input samples followed by the current input
+    private int position = 0;  // position of the next output sample, in 1/upFactor of input sample, relative to the start of the current input
+
+    /**
+     * @param maxInputSize the maximum size in bytes of the buffers that will be passed to {@link #process(byte[], int, byte[])}.
+     */
+    Resampler(int inputSampleRate, int outputSampleRate, int maxInputSize) {
+        this.inputSampleRate = inputSampleRate;
+        this.outputSampleRate = outputSampleRate;
+        int gcd = gcd(inputSampleRate, outputSampleRate);
+        upFactor = outputSampleRate / gcd;
+        downFactor = inputSampleRate / gcd;
+        int minSampleRate = Math.min(inputSampleRate, outputSampleRate);
+        tapsPerPhase = (int) Math.ceil(BLACKMAN_TRANSITION_WIDTH * inputSampleRate / (TRANSITION_BAND * minSampleRate));
+        coefficients = createCoefficients(CUTOFF * minSampleRate / ((float) inputSampleRate * upFactor));
+        samples = new float[tapsPerPhase - 1 + maxInputSize / 2];
+    }
+
+    /**
+     * @param cutoff the cutoff frequency normalized to the upsampled rate.
+     */
+    private float[] createCoefficients(double cutoff) {
+        int length = upFactor * tapsPerPhase;
+        double center = (length - 1) / 2.0;
+        float[] coefficients = new float[length];
+        for (int n = 0; n < length; n++) {
+            double x = n - center;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * n / (length - 1)) + 0.08 * Math.cos(4 * Math.PI * n / (length - 1));
+            // the coefficient of index n is used by the phase n % upFactor, the gain upFactor compensates the zeros of the upsampling
+            coefficients[(n % upFactor) * tapsPerPhase + (n / upFactor)] = (float) (sinc * window * upFactor);
+        }
+        return coefficients;
+    }
+
+    /**
+     * @return the maximum size in bytes of the output of an input of inputSize bytes.
+     */
+    int getMaxOutputSize(int inputSize) {
+        return (int) ((((long) inputSize / 2) * upFactor / downFactor + 1) * 2);
+    }
+
+    /**
+     * Converts a buffer.
+     *
+     * @param input     audio in LINEAR16 little endian at the input sample rate.
+     * @param inputSize the number of bytes actually relevant in input.
+     * @param output    the buffer in which the converted audio is written, it must be at least {@link #getMaxOutputSize(int)} bytes.
+     * @return the number of bytes written in output.
+     */
+    int process(byte[] input, int inputSize, byte[] output) {
+        final int inputSamples = Math.max(inputSize, 0) / 2;
+        final int history = tapsPerPhase - 1;
+        for (int i = 0; i < inputSamples; i++) {
+            samples[history + i] = (short) ((input[i * 2] & 0xFF) | (input[i * 2 + 1] << 8));
+        }
+        int outputSize = 0;
+        int index = position / upFactor;
+        while (index < inputSamples) {
+            int phaseStart = (position % upFactor) * tapsPerPhase;
+            int last = history + index;   // x[index - tap] is samples[last - tap]
+            float sum = 0;
+            for (int tap = 0; tap < tapsPerPhase; tap++) {
+                sum += coefficients[phaseStart + tap] * samples[last - tap];
+            }
+            int sample = Math.round(sum);
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            } else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            output[outputSize++] = (byte) sample;
+            output[outputSize++] = (byte) (sample >> 8);
+            position += downFactor;
+            index = position / upFactor;
+        }
+        position -= inputSamples * upFactor;
+        // the last samples are kept for the next buffer
+        System.arraycopy(samples, inputSamples, samples, 0, history);
+        return outputSize;
+    }
+
+    void reset() {
+        position = 0;
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 0;
+        }
+    }
+
+    int getInputSampleRate() {
+        return inputSampleRate;
+    }
+
+    int getOutputSampleRate() {
+        return outputSampleRate;
+    }
+
+    int getTapsPerPhase() {
+        return tapsPerPhase;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int rest = a % b;
+            a = b;
+            b = rest;
+        }
+        return a;
+    }
+}
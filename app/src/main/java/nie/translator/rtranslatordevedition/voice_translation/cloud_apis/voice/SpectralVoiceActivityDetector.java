@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import nie.translator.rtranslatordevedition.Global;
+
+
+/**
+ * Like the {@link EnergyVoiceActivityDetector} but a window is active only if, in addition to the energy, its zero crossing rate
+ * (a cheap estimate of where the energy is in the spectrum) is in the range of the voiced speech: low frequency noises (traffic, air conditioning)
+ * have a lower rate, while hisses, applause and impulsive noises (which spread their energy over the whole spectrum) have a higher one.
+ */
+public class SpectralVoiceActivityDetector extends EnergyVoiceActivityDetector {
+    private static final int MIN_CROSSINGS_PER_SECOND = 100;
+    private static final int MAX_CROSSINGS_PER_SECOND = 3000;
+
+    public SpectralVoiceActivityDetector(Global global) {
+        super(global);
+    }
+
+    @Override
+    protected boolean isActiveWindow(byte[] buffer, int start, int end) {
+        int crossings = 0;
+        boolean previousPositive = getSample(buffer, start) >= 0;
+        for (int i = start + 1; i < end; i++) {
+            boolean positive = getSample(buffer, i) >= 0;
+            if (positive != previousPositive) {
+                crossings++;
+            }
+            previousPositive = positive;
+        }
+        float crossingsPerSecond = ((float) crossings * getSampleRate()) / (end - start);
+        return crossingsPerSecond >= MIN_CROSSINGS_PER_SECOND && crossingsPerSecond <= MAX_CROSSINGS_PER_SECOND;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import com.google.auth.Credentials;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.speech.v1p1beta1.SpeechGrpc;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.StatusException;
+import io.grpc.internal.DnsNameResolverProvider;
+import io.grpc.okhttp.OkHttpChannelProvider;
+import nie.translator.rtranslatordevedition.Global;
+
+
+/**
+ * Connection to the Google speech api shared by all the {@link Recognizer}s of the process (one instance is kept by {@link Global}).
+ * The channel is created (and connected, so the TLS handshake does not delay the first utterance) when the first Recognizer acquires it
+ * and closed when the last one releases it; when the api token is renewed only the credentials are replaced, the connection is kept.
+ * While there are calls the connection is kept alive with pings, so it is not silently closed by NATs and proxies.
+ */
+public class SpeechChannel {
+    private static final String HOSTNAME = "speech.googleapis.com";
+    private static final int PORT = 443;
+    private static final long KEEP_ALIVE_TIME_SECONDS = 60;
+    private static final long KEEP_ALIVE_TIMEOUT_SECONDS = 20;
+    private static final long IDLE_TIMEOUT_MINUTES = 5;
+    private final GoogleCredentialsInterceptor interceptor = new GoogleCredentialsInterceptor();
+    private final ManagedChannelBuilder<?> channelBuilder;
+    private ManagedChannel channel;
+    private SpeechGrpc.SpeechStub api;
+    private volatile AccessToken apiToken;
+    private int users = 0;
+    private final Object lock = new Object();
+
+    public SpeechChannel() {
+        this(new OkHttpChannelProvider()
+                .builderForAddress(HOSTNAME, PORT)
+                .nameResolverFactory(new DnsNameResolverProvider())
+                .keepAliveTime(KEEP_ALIVE_TIME_SECONDS, TimeUnit.SECONDS)
+                .keepAliveTimeout(KEEP_ALIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .idleTimeout(IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES));
+    }
+
+    /**
+     * Creates a channel to another server (used by the tests to connect to a fake in-process server),
+     * the credentials are added to the calls as with the real server.
+     */
+    SpeechChannel(ManagedChannelBuilder<?> channelBuilder) {
+        this.channelBuilder = channelBuilder.intercept(interceptor);
+    }
+
+    /**
+     * Registers a user of the channel, creating and connecting the channel if it is not yet open.
+     * Every call must be followed by a call of {@link #release()}.
+     */
+    public void acquire() {
+        synchronized (lock) {
+            users++;
+            if (channel == null) {
+                channel = channelBuilder.build();
+                api = SpeechGrpc.newStub(channel);
+            }
+            // warm up: the connection (dns, tcp and tls) is opened now instead of at the first recognition
+            channel.getState(true);
+        }
+    }
+
+    /**
+     * Unregisters a user, when there are no more users the channel is closed (the calls in progress are completed).
+     */
+    public void release() {
+        synchronized (lock) {
+            if (users > 0) {
+                users--;
+                if (users == 0 && channel != null) {
+                    channel.shutdown();
+                    channel = null;
+                    api = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the token used by the following calls, without recreating the channel.
+     */
+    public void setApiToken(AccessToken apiToken) {
+        interceptor.setCredentials(GoogleCredentials.of(apiToken).createScoped(Global.SCOPE));
+        this.apiToken = apiToken;
+    }
+
+    /**
+     * @return true if the channel is open and has a token that is not expired.
+     */
+    public boolean isReady() {
+        final AccessToken token = apiToken;
+        synchronized (lock) {
+            return api != null && token != null && token.getExpirationTime().getTime() > System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return the stub to call the api, null if the channel is not acquired.
+     */
+    public SpeechGrpc.SpeechStub getApi() {
+        synchronized (lock) {
+            return api;
+        }
+    }
+
+    /**
+     * Authenticates the gRPC channel using the specified {@link GoogleCredentials}, the credentials can be replaced
+     * (when the token is renewed) and the new ones are used by the following calls.
+     */
+    private static class GoogleCredentialsInterceptor implements ClientInterceptor {
+
+        private Credentials mCredentials;
+
+        private Metadata mCached;
+
+        private Map<String, List<String>> mLastMetadata;
+
+        synchronized void setCredentials(Credentials credentials) {
+            mCredentials = credentials;
+            mLastMetadata = null;
+            mCached = null;
+        }
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(final MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, final Channel next) {
+            return new ClientInterceptors.CheckedForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+                @Override
+                protected void checkedStart(Listener<RespT> responseListener, Metadata headers) throws StatusException {
+                    Metadata cachedSaved;
+                    URI uri = serviceUri(next, method);
+                    synchronized (GoogleCredentialsInterceptor.this) {
+                        if (mCredentials == null) {
+                            throw Status.UNAUTHENTICATED.withDescription("Missing api token").asException();
+                        }
+                        Map<String, List<String>> latestMetadata = getRequestMetadata(uri);
+                        if (mLastMetadata == null || mLastMetadata != latestMetadata) {
+                            mLastMetadata = latestMetadata;
+                            mCached = toHeaders(mLastMetadata);
+                        }
+                        cachedSaved = mCached;
+                    }
+                    headers.merge(cachedSaved);
+                    delegate().start(responseListener, headers);
+                }
+            };
+        }
+
+        /**
+         * Generate a JWT-specific service URI. The URI is simply an identifier with enough
+         * information for a service to know that the JWT was intended for it. The URI will
+         * commonly be verified with a simple string equality check.
+         */
+        private URI serviceUri(Channel channel, MethodDescriptor<?, ?> method) throws StatusException {
+            String authority = channel.authority();
+            if (authority == null) {
+                throw Status.UNAUTHENTICATED
+                        .withDescription("Channel has no authority")
+                        .asException();
+            }
+            // Always use HTTPS, by definition.
+            final String scheme = "https";
+            final int defaultPort = 443;
+            String path = "/" + MethodDescriptor.extractFullServiceName(method.getFullMethodName());
+            URI uri;
+            try {
+                uri = new URI(scheme, authority, path, null, null);
+            } catch (URISyntaxException e) {
+                throw Status.UNAUTHENTICATED
+                        .withDescription("Unable to construct service URI for auth")
+                        .withCause(e).asException();
+            }
+            // The default port must not be present. Alternative ports should be present.
+            if (uri.getPort() == defaultPort) {
+                uri = removePort(uri);
+            }
+            return uri;
+        }
+
+        private URI removePort(URI uri) throws StatusException {
+            try {
+                return new URI(uri.getScheme(), uri.getUserInfo(), uri.getHost(), -1 /* port */,
+                        uri.getPath(), uri.getQuery(), uri.getFragment());
+            } catch (URISyntaxException e) {
+                throw Status.UNAUTHENTICATED
+                        .withDescription("Unable to construct service URI after removing port")
+                        .withCause(e).asException();
+            }
+        }
+
+        private Map<String, List<String>> getRequestMetadata(URI uri) throws StatusException {
+            try {
+                return mCredentials.getRequestMetadata(uri);
+            } catch (IOException e) {
+                throw Status.UNAUTHENTICATED.withCause(e).asException();
+            }
+        }
+
+        private static Metadata toHeaders(Map<String, List<String>> metadata) {
+            Metadata headers = new Metadata();
+            if (metadata != null) {
+                for (String key : metadata.keySet()) {
+                    Metadata.Key<String> headerKey = Metadata.Key.of(
+                            key, Metadata.ASCII_STRING_MARSHALLER);
+                    for (String value : metadata.get(key)) {
+                        headers.put(headerKey, value);
+                    }
+                }
+            }
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import java.util.Random;
+
+
+/**
+ * {@link AudioSource} that generates a signal made of alternated segments of background noise and of "voice"
+ * (a harmonic tone with a syllable-like amplitude modulation over the noise), the generation is deterministic.
+ * Useful to check the behaviour of the voice detection, the speech timeout and the audio before the voice without a device.
+ */
+public class SyntheticAudioSource implements AudioSource {
+    private static final int BUFFER_MILLIS = 100;
+    private static final double FUNDAMENTAL_FREQUENCY = 150;
+    private static final double SYLLABLE_FREQUENCY = 4;
+    private final int sampleRate;
+    private final long[] segmentEnds;  // in samples, the even segments are noise and the odd ones voice
+    private final int noiseAmplitude;
+    private final int voiceAmplitude;
+    private final long seed;
+    private final AudioPacer pacer;
+    private Random random;
+    private long position;  // in samples
+    private boolean started = false;
+
+    /**
+     * @param segmentsMillis the durations of the segments, alternating noise (the first) and voice.
+     * @param noiseAmplitude standard deviation of the background noise.
+     * @param voiceAmplitude peak amplitude of the voice.
+     * @param paced          if true the audio is delivered in real time, otherwise as fast as possible.
+     */
+    public SyntheticAudioSource(int sampleRate, int[] segmentsMillis, int noiseAmplitude, int voiceAmplitude, long seed, boolean paced) {
+        this.sampleRate = sampleRate;
+        this.segmentEnds = new long[segmentsMillis.length];
+        long end = 0;
+        for (int i = 0; i < segmentsMillis.length; i++) {
+            end += (long) segmentsMillis[i] * sampleRate / 1000;
+            segmentEnds[i] = end;
+        }
+        this.noiseAmplitude = noiseAmplitude;
+        this.voiceAmplitude = voiceAmplitude;
+        this.seed = seed;
+        this.pacer = new AudioPacer(paced);
+    }
+
+    @Override
+    public boolean start() {
+        random = new Random(seed);
+        position = 0;
+        started = true;
+        pacer.start(sampleRate);
+        return true;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return (sampleRate * BUFFER_MILLIS / 1000) * 2;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int size) {
+        final long totalSamples = segmentEnds.length > 0 ? segmentEnds[segmentEnds.length - 1] : 0;
+        if (!started || position >= totalSamples) {
+            return END_OF_STREAM;
+        }
+        final int samples = (int) Math.min(size / 2, totalSamples - position);
+        int segment = 0;
+        for (int i = 0; i < samples; i++, position++) {
+            while (position >= segmentEnds[segment]) {
+                segment++;
+            }
+            double value = random.nextGaussian() * noiseAmplitude;
+            if (segment % 2 == 1) {
+                final double time = (double) position / sampleRate;
+                final double envelope = 0.6 + 0.4 * Math.sin(2 * Math.PI * SYLLABLE_FREQUENCY * time);
+                final double phase = 2 * Math.PI * FUNDAMENTAL_FREQUENCY * time;
+                value += voiceAmplitude * envelope * (Math.sin(phase) + 0.5 * Math.sin(2 * phase) + 0.25 * Math.sin(3 * phase)) / 1.75;
+            }
+            final int sample = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+            buffer[offset + i * 2] = (byte) sample;
+            buffer[offset + i * 2 + 1] = (byte) (sample >> 8);
+        }
+        pacer.waitFor(position * 2);
+        return samples * 2;
+    }
+
+    @Override
+    public void stop() {
+        started = false;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+
+/**
+ * Text of a recognition: the committed segments (the final results) and the tail, that is the text of the interim results of the
+ * utterance in progress, formed by a stable part (results that, according to their stability, are unlikely to change) followed
+ * by an unstable part. Every change of the tail is returned as a {@link TranscriptDelta} from the previous tail,
+ * so the receivers do not have to handle the whole text again if it has not changed.
+ */
+class Transcript {
+    // interim results with at least this stability are considered stable
+    static final float STABLE_STABILITY = 0.8f;
+    private final StringBuilder committedText = new StringBuilder();
+    private float committedConfidence = 0;
+    private String tail = "";
+    private int stableLength = 0;
+
+    /**
+     * Adds a final result to the committed text, the tail is cleared because the final result replaces it.
+     */
+    void commit(String text, float confidence) {
+        if (committedText.length() > 0) {
+            committedText.append(' ');
+        }
+        committedText.append(text);
+        committedConfidence = confidence;
+        clearTail();
+    }
+
+    /**
+     * Replaces the tail with the text of the last interim results.
+     *
+     * @param stableLength the length of the beginning of the text formed by stable results.
+     * @return the delta from the previous tail, or null if the tail has not changed.
+     */
+    TranscriptDelta setTail(String text, int stableLength) {
+        if (text.equals(tail) && stableLength == this.stableLength) {
+            return null;
+        }
+        int keptLength = 0;
+        int maxKeptLength = Math.min(tail.length(), text.length());
+        while (keptLength < maxKeptLength && tail.charAt(keptLength) == text.charAt(keptLength)) {
+            keptLength++;
+        }
+        tail = text;
+        this.stableLength = stableLength;
+        return new TranscriptDelta(keptLength, text.substring(keptLength), stableLength);
+    }
+
+    /**
+     * Clears the tail without notifying it, the next delta will start from an empty text.
+     */
+    void clearTail() {
+        tail = "";
+        stableLength = 0;
+    }
+
+    void clear() {
+        committedText.setLength(0);
+        committedConfidence = 0;
+        clearTail();
+    }
+
+    String getCommittedText() {
+        return committedText.toString();
+    }
+
+    float getCommittedConfidence() {
+        return committedConfidence;
+    }
+
+    boolean hasCommittedText() {
+        return committedText.length() > 0;
+    }
+
+    String getTail() {
+        return tail;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+
+/**
+ * Change of the not yet final text of a recognition (see {@link Transcript}): the first keptLength characters of the previous text
+ * are kept and the appendedText is added after them. When a new interim result only extends the previous one the delta
+ * contains only the new characters.
+ */
+public class TranscriptDelta {
+    private final int keptLength;
+    private final String appendedText;
+    private final int stableLength;
+
+    public TranscriptDelta(int keptLength, String appendedText, int stableLength) {
+        this.keptLength = keptLength;
+        this.appendedText = appendedText;
+        this.stableLength = stableLength;
+    }
+
+    /**
+     * @param previousText the text to which the previous deltas have been applied ("" for the first delta of an utterance).
+     * @return the new text.
+     */
+    public String applyTo(String previousText) {
+        int keptLength = Math.min(this.keptLength, previousText.length());
+        return previousText.substring(0, keptLength) + appendedText;
+    }
+
+    public int getKeptLength() {
+        return keptLength;
+    }
+
+    public String getAppendedText() {
+        return appendedText;
+    }
+
+    /**
+     * @return the length of the beginning of the new text that is stable, that is unlikely to change in the next results.
+     */
+    public int getStableLength() {
+        return stableLength;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+
+/**
+ * Decides whether a chunk of audio recorded by the {@link Recorder} contains voice, which one is used is decided by
+ * {@link nie.translator.rtranslatordevedition.Global#getVoiceActivityDetector()}.
+ * The detectors can keep a state between a chunk and the next, so a detector must be used for only one recording at a time.
+ */
+public interface VoiceActivityDetector {
+    int AMPLITUDE = 0;
+    int ENERGY = 1;
+    int SPECTRAL = 2;
+
+    /**
+     * Called before the start of a new recording.
+     *
+     * @param sampleRate the sample rate of the audio that will be analyzed.
+     */
+    void reset(int sampleRate);
+
+    /**
+     * @param buffer audio in LINEAR16 little endian.
+     * @param size   the number of bytes actually relevant in the buffer.
+     * @return true if the buffer contains voice.
+     */
+    boolean isVoice(byte[] buffer, int size);
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.tools;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measuring loop and report shared by the benchmarks: the iterations are run after some warm-up iterations (which load the classes and
+ * open the connections), whose times are discarded.
+ * It is also the category of the benchmarks ({@code @Category(Benchmark.class)}), which are excluded from the unit tests and run instead of
+ * them with the property "benchmarks" ({@code ./gradlew testDebugUnitTest -Pbenchmarks}), see app/build.gradle.
+ */
+public class Benchmark {
+
+    /**
+     * @return the times in nanoseconds returned by the measured iterations.
+     */
+    public static long[] measure(int warmUpIterations, int iterations, Iteration iteration) throws Exception {
+        long[] times = new long[iterations];
+        for (int i = -warmUpIterations; i < iterations; i++) {
+            final long time = iteration.run(i);
+            if (i >= 0) {
+                times[i] = time;
+            }
+        }
+        return times;
+    }
+
+    public static void printReport(String name, long[] nanos) {
+        long[] sorted = Arrays.copyOf(nanos, nanos.length);
+        Arrays.sort(sorted);
+        System.out.println(String.format(Locale.US, "%s: median %.2f ms, p90 %.2f ms, max %.2f ms (%d iterations)", name,
+                sorted[sorted.length / 2] / 1000000f, sorted[sorted.length * 9 / 10] / 1000000f, sorted[sorted.length - 1] / 1000000f, sorted.length));
+    }
+
+    public interface Iteration {
+        /**
+         * @param iteration the index of the iteration, negative for the warm-up iterations (whose other measures have not to be counted).
+         * @return the time measured in nanoseconds.
+         */
+        long run(int iteration) throws Exception;
+    }
+}
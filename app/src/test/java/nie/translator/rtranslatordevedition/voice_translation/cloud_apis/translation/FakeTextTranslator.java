@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import nie.translator.rtranslatordevedition.tools.CustomLocale;
+
+/**
+ * {@link TextTranslator} that replaces the Translate API: the translation of a text is the text in upper case and arrives after
+ * a fixed latency plus a latency for each character, in a thread of its own (the main thread is not available in the local tests).
+ */
+class FakeTextTranslator implements TextTranslator {
+    private final long latencyMillis;
+    private final long latencyMillisPerCharacter;
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+    private final ArrayList<Future<?>> futures = new ArrayList<>();
+    private int translatedCharacters;
+    private long firstTranslationTime;
+
+    FakeTextTranslator(long latencyMillis, long latencyMillisPerCharacter) {
+        this.latencyMillis = latencyMillis;
+        this.latencyMillisPerCharacter = latencyMillisPerCharacter;
+    }
+
+    @Override
+    public synchronized Future<?> translate(final String textToTranslate, @Nullable CustomLocale inputLanguage, final CustomLocale outputLanguage, boolean cacheTranslation, final Translator.TranslateListener responseListener) {
+        translatedCharacters += textToTranslate.length();
+        Future<?> future = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (FakeTextTranslator.this) {
+                    if (firstTranslationTime == 0) {
+                        firstTranslationTime = System.nanoTime();
+                    }
+                }
+                responseListener.onTranslatedText(textToTranslate.toUpperCase(Locale.ROOT), outputLanguage);
+            }
+        }, latencyMillis + latencyMillisPerCharacter * textToTranslate.length(), TimeUnit.MILLISECONDS);
+        futures.add(future);
+        return future;
+    }
+
+    synchronized void reset() {
+        futures.clear();
+        translatedCharacters = 0;
+        firstTranslationTime = 0;
+    }
+
+    /**
+     * @return the number of translations requested since the last reset.
+     */
+    synchronized int getTranslationsCount() {
+        return futures.size();
+    }
+
+    synchronized int getCancelledTranslationsCount() {
+        int count = 0;
+        for (Future<?> future : futures) {
+            if (future.isCancelled()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    synchronized int getTranslatedCharacters() {
+        return translatedCharacters;
+    }
+
+    /**
+     * @return the time of the first translation completed since the last reset, 0 if none.
+     */
+    synchronized long getFirstTranslationTime() {
+        return firstTranslationTime;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Local HTTP stand-in of the Translate API (v2), so the transports of the Translate client can be measured without network.
+ * It answers the requests of Translations.list with the texts in upper case after responseDelayMillis, and the other requests
+ * (like the request of the pre-warming) with an empty JSON object. The first request of each new connection is delayed by connectionSetupMillis
+ * more, to simulate the TCP and TLS handshakes on a slow network (the stand-in uses plain HTTP/1.1, so it cannot measure HTTP/2).
+ * The responses are compressed with gzip if the client accepts it.
+ */
+class FakeTranslateServer {
+    private static final String TRANSLATIONS_PATH = "/language/translate/v2";
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile long connectionSetupMillis = 0;
+    private volatile long responseDelayMillis = 0;
+    // statistics
+    private final Set<String> connections = Collections.synchronizedSet(new HashSet<String>());
+    private final AtomicInteger requests = new AtomicInteger(0);
+    private final AtomicInteger compressedResponses = new AtomicInteger(0);
+
+    void start() throws IOException {
+        System.setProperty("sun.net.httpserver.nodelay", "true");  // otherwise the delayed acks add about 40 ms to each response
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleRequest(exchange);
+            }
+        });
+        server.start();
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the root url of the api, to use with Translate.Builder.setRootUrl.
+     */
+    String getRootUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    void setConnectionSetupMillis(long connectionSetupMillis) {
+        this.connectionSetupMillis = connectionSetupMillis;
+    }
+
+    void setResponseDelayMillis(long responseDelayMillis) {
+        this.responseDelayMillis = responseDelayMillis;
+    }
+
+    int getConnectionsCount() {
+        return connections.size();
+    }
+
+    int getRequestsCount() {
+        return requests.get();
+    }
+
+    int getCompressedResponsesCount() {
+        return compressedResponses.get();
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        try {
+            if (connections.add(exchange.getRemoteAddress().toString())) {
+                Thread.sleep(connectionSetupMillis);
+            }
+            Thread.sleep(responseDelayMillis);
+        } catch (InterruptedException e) {
+            exchange.close();
+            return;
+        }
+        requests.incrementAndGet();
+        byte[] body = "{}".getBytes("UTF-8");
+        if (exchange.getRequestURI().getPath().equals(TRANSLATIONS_PATH)) {
+            body = createTranslationsResponse(exchange.getRequestURI().getRawQuery()).getBytes("UTF-8");
+        }
+        final List<String> acceptEncoding = exchange.getRequestHeaders().get("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.toString().contains("gzip")) {
+            ByteArrayOutputStream compressedBody = new ByteArrayOutputStream();
+            GZIPOutputStream gzipStream = new GZIPOutputStream(compressedBody);
+            gzipStream.write(body);
+            gzipStream.close();
+            body = compressedBody.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            compressedResponses.incrementAndGet();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+        } else {
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream responseBody = exchange.getResponseBody();
+            responseBody.write(body);
+            responseBody.close();
+        }
+        exchange.close();
+    }
+
+    private static String createTranslationsResponse(String query) throws IOException {
+        StringBuilder response = new StringBuilder("{\"data\":{\"translations\":[");
+        boolean first = true;
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("q=")) {
+                String text = URLDecoder.decode(parameter.substring(2), "UTF-8");
+                if (!first) {
+                    response.append(",");
+                }
+                response.append("{\"translatedText\":\"").append(text.toUpperCase(Locale.ROOT).replace("\"", "\\\"")).append("\"}");
+                first = false;
+            }
+        }
+        return response.append("]}}").toString();
+    }
+}
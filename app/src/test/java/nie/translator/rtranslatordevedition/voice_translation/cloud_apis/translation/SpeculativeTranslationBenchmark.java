@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import nie.translator.rtranslatordevedition.tools.Benchmark;
+import nie.translator.rtranslatordevedition.tools.CustomLocale;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.RecognizerListener;
+import nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice.TranscriptDelta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the translation of an utterance with and without the speculations of the {@link SpeculativeTranslator}: a scripted recognizer
+ * sends a word of the utterance every {@link #WORD_MILLIS} ms as interim results (the last words are not stable) and the final result
+ * after the {@link #ENDPOINT_MILLIS} ms of silence, the translations are done by the {@link FakeTextTranslator}.
+ * The times from the start of the utterance to the first translated word and from the final result to its translation are printed,
+ * with the characters translated (the cost), the tests fail only if a translation does not arrive or is not the expected one.
+ */
+@Category(Benchmark.class)
+public class SpeculativeTranslationBenchmark {
+    private static final String UTTERANCE = "the meeting with the new clients has been moved to thursday afternoon at three in the small room";
+    private static final long WORD_MILLIS = 80;
+    private static final long ENDPOINT_MILLIS = 150;
+    private static final int UNSTABLE_WORDS = 2;
+    private static final long TRANSLATION_LATENCY_MILLIS = 150;
+    private static final long TRANSLATION_LATENCY_MILLIS_PER_CHARACTER = 2;
+    private static final int WARM_UP_ITERATIONS = 1;
+    private static final int ITERATIONS = 5;
+    private static final long TIMEOUT_SECONDS = 10;
+    private final CustomLocale inputLanguage = CustomLocale.getInstance("en-US");
+    private final CustomLocale outputLanguage = CustomLocale.getInstance("it-IT");
+    private FakeTextTranslator translator;
+
+    @Before
+    public void setUp() {
+        translator = new FakeTextTranslator(TRANSLATION_LATENCY_MILLIS, TRANSLATION_LATENCY_MILLIS_PER_CHARACTER);
+    }
+
+    @After
+    public void tearDown() {
+        translator.shutdown();
+    }
+
+    @Test
+    public void timeToTranslation() throws Exception {
+        measure("without speculations", false);
+        measure("with speculations", true);
+    }
+
+    private void measure(String name, final boolean speculate) throws Exception {
+        final long[] firstWordTimes = new long[ITERATIONS];
+        final int[] translatedCharacters = {0};
+        final int[] translations = {0};
+        final int[] cancelledTranslations = {0};
+        long[] finalTimes = Benchmark.measure(WARM_UP_ITERATIONS, ITERATIONS, new Benchmark.Iteration() {
+            @Override
+            public long run(int iteration) throws Exception {
+                translator.reset();
+                TranslationCollector collector = new TranslationCollector(new SpeculativeTranslator(translator, inputLanguage, outputLanguage), speculate);
+                final long startTime = System.nanoTime();
+                new ScriptedRecognizer(UTTERANCE, collector).start();
+                assertTrue("no translation", collector.translated.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                assertEquals(UTTERANCE.toUpperCase(Locale.ROOT), collector.translatedText);
+                if (iteration >= 0) {
+                    firstWordTimes[iteration] = translator.getFirstTranslationTime() - startTime;
+                    translatedCharacters[0] += translator.getTranslatedCharacters();
+                    translations[0] += translator.getTranslationsCount();
+                    cancelledTranslations[0] += translator.getCancelledTranslationsCount();
+                }
+                return collector.translatedTime - collector.finalResultTime;
+            }
+        });
+        Benchmark.printReport("time to first translated word " + name, firstWordTimes);
+        Benchmark.printReport("time from final result to translation " + name, finalTimes);
+        System.out.println(String.format(Locale.US, "translations %s: %.1f characters, %.1f requests, %.1f cancelled per utterance (utterance of %d characters)", name,
+                translatedCharacters[0] / (float) ITERATIONS, translations[0] / (float) ITERATIONS, cancelledTranslations[0] / (float) ITERATIONS, UTTERANCE.length()));
+    }
+
+    /**
+     * Sends the words of a text to a {@link RecognizerListener} like the Recognizer does with the interim results of the Speech API:
+     * a delta for every new word, with all the words stable except the last {@link #UNSTABLE_WORDS}, and then the final result.
+     */
+    private static class ScriptedRecognizer extends Thread {
+        private final String[] words;
+        private final RecognizerListener listener;
+
+        private ScriptedRecognizer(String text, RecognizerListener listener) {
+            super("scriptedRecognizer");
+            this.words = text.split(" ");
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            super.run();
+            try {
+                String text = "";
+                for (int i = 0; i < words.length; i++) {
+                    Thread.sleep(WORD_MILLIS);
+                    final String appendedText = (i == 0 ? "" : " ") + words[i];
+                    int stableLength = 0;
+                    for (int j = 0; j < i + 1 - UNSTABLE_WORDS; j++) {
+                        stableLength += (j == 0 ? 0 : 1) + words[j].length();
+                    }
+                    listener.onSpeechRecognizedDelta(new TranscriptDelta(text.length(), appendedText, stableLength), "en-US");
+                    text += appendedText;
+                }
+                Thread.sleep(ENDPOINT_MILLIS);
+                listener.onSpeechRecognizedResult(text, "en-US", 1, true);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Does with the results of the {@link ScriptedRecognizer} what the ConversationService does with the results of the Recognizer
+     * when the sender translation is enabled.
+     */
+    private static class TranslationCollector implements RecognizerListener, Translator.TranslateListener {
+        private final SpeculativeTranslator speculativeTranslator;
+        private final boolean speculate;
+        private final CountDownLatch translated = new CountDownLatch(1);
+        private String textRecognized = "";
+        private volatile long finalResultTime;
+        private volatile long translatedTime;
+        private volatile String translatedText;
+
+        private TranslationCollector(SpeculativeTranslator speculativeTranslator, boolean speculate) {
+            this.speculativeTranslator = speculativeTranslator;
+            this.speculate = speculate;
+        }
+
+        @Override
+        public void onSpeechRecognizedDelta(TranscriptDelta delta, String languageCode) {
+            textRecognized = delta.applyTo(textRecognized);
+            if (speculate) {
+                speculativeTranslator.onInterimText(textRecognized, delta.getStableLength());
+            }
+        }
+
+        @Override
+        public void onSpeechRecognizedResult(String text, String languageCode, float confidenceScore, boolean isFinal) {
+            finalResultTime = System.nanoTime();
+            speculativeTranslator.translateFinal(text, this);
+        }
+
+        @Override
+        public void onTranslatedText(String text, CustomLocale languageOfText) {
+            translatedTime = System.nanoTime();
+            translatedText = text;
+            translated.countDown();
+        }
+
+        @Override
+        public void onFailure(int[] reasons, long value) {
+        }
+
+        @Override
+        public void onError(int[] reasons, long value) {
+        }
+    }
+}
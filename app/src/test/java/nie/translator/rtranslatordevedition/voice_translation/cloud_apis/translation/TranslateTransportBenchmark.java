@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.translation;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.translate.Translate;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import nie.translator.rtranslatordevedition.tools.Benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the {@link OkHttpTransport} with the transport used before it (AndroidHttp.newCompatibleTransport(), which is a NetHttpTransport
+ * from Android 2.3) against the {@link FakeTranslateServer}. It measures the first translation after the creation of the transport (with and
+ * without pre-warming), a sequence of translations and a burst of concurrent translations, each with the connections opened.
+ * The stand-in delays the first request of each connection by {@link #CONNECTION_SETUP_MILLIS} ms, and it uses plain HTTP/1.1, so the
+ * multiplexing of HTTP/2 is not measured. The results are printed, the tests fail only if a translation is wrong or not compressed.
+ */
+@Category(Benchmark.class)
+public class TranslateTransportBenchmark {
+    private static final String TEXT = "the meeting has been moved to thursday";
+    private static final long CONNECTION_SETUP_MILLIS = 100;
+    private static final long RESPONSE_DELAY_MILLIS = 10;
+    private static final long SERVICE_START_MILLIS = 300;  // time between the start of a translation service and its first translation
+    private static final int WARM_UP_ITERATIONS = 5;
+    private static final int ITERATIONS = 30;
+    private static final int COLD_ITERATIONS = 5;
+    private static final int CONCURRENT_THREADS = TranslatorExecutor.THREADS;
+    private static final int CONCURRENT_TRANSLATIONS = 10;  // for each thread
+    private static final long TIMEOUT_SECONDS = 30;
+    @Test
+    public void firstTranslation() throws Exception {
+        final long[] netHttpTimes = new long[COLD_ITERATIONS];
+        final long[] okHttpTimes = new long[COLD_ITERATIONS];
+        // the warm-up iteration loads the classes of the clients
+        long[] prewarmedTimes = Benchmark.measure(1, COLD_ITERATIONS, new Benchmark.Iteration() {
+            @Override
+            public long run(int iteration) throws Exception {
+                // a new server for each measure, so no connection of the previous ones can be reused
+                final long netHttpTime = measureFirstTranslation(new NetHttpTransport(), false);
+                final long okHttpTime = measureFirstTranslation(new OkHttpTransport(), false);
+                if (iteration >= 0) {
+                    netHttpTimes[iteration] = netHttpTime;
+                    okHttpTimes[iteration] = okHttpTime;
+                }
+                return measureFirstTranslation(new OkHttpTransport(), true);
+            }
+        });
+        Benchmark.printReport("first translation NetHttpTransport", netHttpTimes);
+        Benchmark.printReport("first translation OkHttpTransport", okHttpTimes);
+        Benchmark.printReport("first translation OkHttpTransport pre-warmed " + SERVICE_START_MILLIS + " ms before", prewarmedTimes);
+    }
+
+    @Test
+    public void sequentialTranslations() throws Exception {
+        measureSequentialTranslations("NetHttpTransport", new NetHttpTransport());
+        measureSequentialTranslations("OkHttpTransport", new OkHttpTransport());
+    }
+
+    @Test
+    public void concurrentTranslations() throws Exception {
+        measureConcurrentTranslations("NetHttpTransport", new NetHttpTransport());
+        measureConcurrentTranslations("OkHttpTransport", new OkHttpTransport());
+    }
+
+    private long measureFirstTranslation(HttpTransport transport, boolean prewarm) throws Exception {
+        FakeTranslateServer coldServer = startServer();
+        try {
+            Translate translate = createTranslateClient(transport, coldServer);
+            if (prewarm) {
+                ((OkHttpTransport) transport).prewarm(coldServer.getRootUrl());
+                Thread.sleep(SERVICE_START_MILLIS);
+            }
+            final long startTime = System.nanoTime();
+            translate(translate);
+            return System.nanoTime() - startTime;
+        } finally {
+            transport.shutdown();
+            coldServer.stop();
+        }
+    }
+
+    private void measureSequentialTranslations(String name, HttpTransport transport) throws Exception {
+        FakeTranslateServer server = startServer();
+        final Translate translate = createTranslateClient(transport, server);
+        long[] times = Benchmark.measure(WARM_UP_ITERATIONS, ITERATIONS, new Benchmark.Iteration() {
+            @Override
+            public long run(int iteration) throws Exception {
+                final long startTime = System.nanoTime();
+                translate(translate);
+                return System.nanoTime() - startTime;
+            }
+        });
+        Benchmark.printReport("sequential translations " + name + " (" + server.getConnectionsCount() + " connections)", times);
+        assertEquals("responses not compressed", server.getRequestsCount(), server.getCompressedResponsesCount());
+        transport.shutdown();
+        server.stop();
+    }
+
+    private void measureConcurrentTranslations(String name, HttpTransport transport) throws Exception {
+        final FakeTranslateServer server = startServer();
+        final Translate translate = createTranslateClient(transport, server);
+        final CountDownLatch startGate = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(CONCURRENT_THREADS);
+        final AtomicInteger failures = new AtomicInteger(0);
+        for (int i = 0; i < CONCURRENT_THREADS; i++) {
+            new Thread("transportBenchmark" + i) {
+                @Override
+                public void run() {
+                    super.run();
+                    try {
+                        startGate.await();
+                        for (int j = 0; j < CONCURRENT_TRANSLATIONS; j++) {
+                            translate(translate);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        failures.incrementAndGet();
+                    }
+                    finished.countDown();
+                }
+            }.start();
+        }
+        final long startTime = System.nanoTime();
+        startGate.countDown();
+        assertTrue("translations not completed", finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        final long time = System.nanoTime() - startTime;
+        assertEquals("failed translations", 0, failures.get());
+        System.out.println(String.format(Locale.US, "concurrent translations %s: %d translations in %.2f ms, %d connections", name,
+                CONCURRENT_THREADS * CONCURRENT_TRANSLATIONS, time / 1000000f, server.getConnectionsCount()));
+        transport.shutdown();
+        server.stop();
+    }
+
+    private static FakeTranslateServer startServer() throws IOException {
+        FakeTranslateServer server = new FakeTranslateServer();
+        server.setConnectionSetupMillis(CONNECTION_SETUP_MILLIS);
+        server.setResponseDelayMillis(RESPONSE_DELAY_MILLIS);
+        server.start();
+        return server;
+    }
+
+    /**
+     * @return a client like the one of Translator.createTranslateClient, but with the given transport and connected to the server.
+     */
+    private static Translate createTranslateClient(HttpTransport transport, FakeTranslateServer server) {
+        return new Translate.Builder(transport, JacksonFactory.getDefaultInstance(), new HttpRequestInitializer() {
+            @Override
+            public void initialize(HttpRequest request) {
+                request.setConnectTimeout(Translator.CONNECT_TIMEOUT_MILLIS);
+                request.setReadTimeout(Translator.READ_TIMEOUT_MILLIS);
+            }
+        })
+                .setRootUrl(server.getRootUrl())
+                .setApplicationName("speechGoogle")
+                .build();
+    }
+
+    private static void translate(Translate translate) throws IOException {
+        String translatedText = translate.translations().list(Collections.singletonList(TEXT), "it").setSource("en").execute().getTranslations().get(0).getTranslatedText();
+        assertEquals(TEXT.toUpperCase(Locale.ROOT), translatedText);
+    }
+}
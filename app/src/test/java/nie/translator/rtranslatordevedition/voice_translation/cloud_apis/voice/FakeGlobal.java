@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import androidx.annotation.Nullable;
+import com.google.auth.oauth2.AccessToken;
+import java.util.Date;
+import nie.translator.rtranslatordevedition.Global;
+
+
+/**
+ * Global for the local unit tests: the settings used by the {@link Recognizer} and by the {@link Recorder} are kept in memory instead of
+ * the SharedPreferences, the speech channel is connected to a {@link FakeSpeechServer} and the api token is always available.
+ */
+class FakeGlobal extends Global {
+    private final SpeechChannel speechChannel;
+    private final RecognizerMetrics recognizerMetrics = new RecognizerMetrics();
+    private final AccessToken apiToken = new AccessToken("fakeToken", new Date(System.currentTimeMillis() + 3600 * 1000));
+    private int audioEncoding = Recognizer.DEFAULT_AUDIO_ENCODING;
+    private int audioFrameDuration = Recognizer.DEFAULT_FRAME_DURATION_MILLIS;
+    private boolean standbyRecognitionEnabled = true;
+    private boolean endlessStreamingEnabled = true;
+    private int speechTimeout = Recorder.DEFAULT_SPEECH_TIMEOUT_MILLIS;
+    private int prevVoiceDuration = Recorder.DEFAULT_PREV_VOICE_DURATION;
+    private int voiceActivityDetector = Recorder.DEFAULT_VOICE_ACTIVITY_DETECTOR;
+
+    FakeGlobal(FakeSpeechServer server) {
+        speechChannel = new SpeechChannel(server.newChannelBuilder());
+    }
+
+    /**
+     * Creates a Global without speech channel, for the tests of the capture.
+     */
+    FakeGlobal() {
+        speechChannel = null;
+    }
+
+    @Override
+    public SpeechChannel getSpeechChannel() {
+        return speechChannel;
+    }
+
+    @Override
+    public RecognizerMetrics getRecognizerMetrics() {
+        return recognizerMetrics;
+    }
+
+    @Override
+    public void getApiToken(boolean recycleResult, @Nullable ApiTokenListener responseListener) {
+        if (responseListener != null) {
+            responseListener.onSuccess(apiToken);
+        }
+    }
+
+    @Override
+    public void addUsage(float creditToSub) {
+    }
+
+    @Override
+    public int getAudioEncoding() {
+        return audioEncoding;
+    }
+
+    @Override
+    public void setAudioEncoding(int value) {
+        audioEncoding = value;
+    }
+
+    @Override
+    public int getAudioFrameDuration() {
+        return audioFrameDuration;
+    }
+
+    @Override
+    public void setAudioFrameDuration(int value) {
+        audioFrameDuration = value;
+    }
+
+    @Override
+    public boolean isStandbyRecognitionEnabled() {
+        return standbyRecognitionEnabled;
+    }
+
+    @Override
+    public void setStandbyRecognitionEnabled(boolean value) {
+        standbyRecognitionEnabled = value;
+    }
+
+    @Override
+    public boolean isEndlessStreamingEnabled() {
+        return endlessStreamingEnabled;
+    }
+
+    @Override
+    public void setEndlessStreamingEnabled(boolean value) {
+        endlessStreamingEnabled = value;
+    }
+
+    @Override
+    public int getMicSensitivity() {
+        return 50;
+    }
+
+    @Override
+    public int getAmplitudeThreshold() {
+        return Recorder.DEFAULT_AMPLITUDE_THRESHOLD;  // the threshold of the mic sensitivity 50
+    }
+
+    @Override
+    public int getSpeechTimeout() {
+        return speechTimeout;
+    }
+
+    @Override
+    public void setSpeechTimeout(int value) {
+        speechTimeout = value;
+    }
+
+    @Override
+    public int getPrevVoiceDuration() {
+        return prevVoiceDuration;
+    }
+
+    @Override
+    public void setPrevVoiceDuration(int value) {
+        prevVoiceDuration = value;
+    }
+
+    @Override
+    public int getVoiceActivityDetector() {
+        return voiceActivityDetector;
+    }
+
+    @Override
+    public void setVoiceActivityDetector(int value) {
+        voiceActivityDetector = value;
+    }
+}
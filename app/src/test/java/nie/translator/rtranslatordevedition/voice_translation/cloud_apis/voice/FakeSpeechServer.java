@@ -0,0 +1,283 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import com.google.cloud.speech.v1p1beta1.SpeechGrpc;
+import com.google.cloud.speech.v1p1beta1.SpeechRecognitionAlternative;
+import com.google.cloud.speech.v1p1beta1.StreamingRecognitionResult;
+import com.google.cloud.speech.v1p1beta1.StreamingRecognizeRequest;
+import com.google.cloud.speech.v1p1beta1.StreamingRecognizeResponse;
+import com.google.protobuf.Duration;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+
+/**
+ * Fake of the Google speech api that runs inside the process of the tests, so the {@link Recognizer} can be measured without network.
+ * The responses follow a script: an interim result (with one more word of the transcript each time) every interimResultFrames audio messages
+ * and the final result with the whole transcript when the client closes the stream. The responses can be delayed and an error can be returned
+ * after a number of audio messages. If the client configures alternative languages the results contain the language set with
+ * {@link #setDetectedLanguageCode(String)}, as detected by the server. All the responses are sent by a single thread, so the streams are never written concurrently.
+ */
+class FakeSpeechServer extends SpeechGrpc.SpeechImplBase {
+    private static final AtomicInteger serverCount = new AtomicInteger(0);
+    private final String name = "fakeSpeechServer" + serverCount.incrementAndGet();
+    private final ScheduledExecutorService responseExecutor = Executors.newSingleThreadScheduledExecutor();
+    private Server server;
+    // script
+    private volatile String transcript = "hello world";
+    private volatile int interimResultFrames = 1;
+    private volatile long responseDelayMillis = 0;
+    private volatile long finalResultDelayMillis = 0;
+    private volatile int slowStream = 0;
+    private volatile long slowStreamFinalResultDelayMillis = 0;
+    private volatile int errorAfterFrames = -1;
+    private volatile Status error = Status.UNAVAILABLE;
+    private volatile String detectedLanguageCode = null;
+    // statistics
+    private final AtomicInteger openedStreams = new AtomicInteger(0);
+    private final AtomicLong receivedAudioMessages = new AtomicLong(0);
+    private final AtomicLong receivedAudioBytes = new AtomicLong(0);
+
+    void start() throws IOException {
+        server = InProcessServerBuilder.forName(name).addService(this).build().start();
+    }
+
+    void stop() {
+        if (server != null) {
+            server.shutdownNow();
+            server = null;
+        }
+        responseExecutor.shutdownNow();
+    }
+
+    /**
+     * @return a builder of the channels connected to this server, to use with {@link SpeechChannel#SpeechChannel(ManagedChannelBuilder)}.
+     */
+    ManagedChannelBuilder<?> newChannelBuilder() {
+        return InProcessChannelBuilder.forName(name);
+    }
+
+    /**
+     * Sets the transcript returned, word by word, by the interim results and entirely by the final result.
+     */
+    void setTranscript(String transcript) {
+        this.transcript = transcript;
+    }
+
+    /**
+     * Sets every how many audio messages an interim result is returned, 0 to return only the final result.
+     */
+    void setInterimResultFrames(int interimResultFrames) {
+        this.interimResultFrames = interimResultFrames;
+    }
+
+    /**
+     * Sets the delay of every interim result, as the time taken by the recognition.
+     */
+    void setResponseDelayMillis(long responseDelayMillis) {
+        this.responseDelayMillis = responseDelayMillis;
+    }
+
+    /**
+     * Sets the delay of the final result from the closing of the stream by the client.
+     */
+    void setFinalResultDelayMillis(long finalResultDelayMillis) {
+        this.finalResultDelayMillis = finalResultDelayMillis;
+    }
+
+    /**
+     * Sets the delay of the final result of a single stream, which replaces the one set with {@link #setFinalResultDelayMillis(long)}.
+     *
+     * @param stream the number of the stream in order of opening, starting from 1.
+     */
+    void setFinalResultDelayMillis(int stream, long finalResultDelayMillis) {
+        this.slowStream = stream;
+        this.slowStreamFinalResultDelayMillis = finalResultDelayMillis;
+    }
+
+    /**
+     * The streams are closed with the error after receiving the specified number of audio messages, -1 to never return errors.
+     */
+    void setError(int errorAfterFrames, Status error) {
+        this.errorAfterFrames = errorAfterFrames;
+        this.error = error;
+    }
+
+    /**
+     * Sets the language of the results of the streams configured with alternative languages, null to use the main language.
+     */
+    void setDetectedLanguageCode(String detectedLanguageCode) {
+        this.detectedLanguageCode = detectedLanguageCode;
+    }
+
+    int getOpenedStreams() {
+        return openedStreams.get();
+    }
+
+    long getReceivedAudioMessages() {
+        return receivedAudioMessages.get();
+    }
+
+    long getReceivedAudioBytes() {
+        return receivedAudioBytes.get();
+    }
+
+    @Override
+    public StreamObserver<StreamingRecognizeRequest> streamingRecognize(final StreamObserver<StreamingRecognizeResponse> responseObserver) {
+        final int streamNumber = openedStreams.incrementAndGet();
+        return new StreamObserver<StreamingRecognizeRequest>() {
+            // read and written only by the responseExecutor
+            private final String[] words = transcript.split(" ");
+            private int sampleRate = 16000;
+            private String languageCode = "";  // returned in the results only if the language is detected
+            private int audioFrames = 0;
+            private long audioBytes = 0;
+            private int interimResults = 0;
+            private boolean finished = false;
+
+            @Override
+            public void onNext(final StreamingRecognizeRequest request) {
+                if (request.hasStreamingConfig()) {
+                    final int configSampleRate = request.getStreamingConfig().getConfig().getSampleRateHertz();
+                    final boolean detectLanguage = request.getStreamingConfig().getConfig().getAlternativeLanguageCodesCount() > 0;
+                    final String configLanguageCode = request.getStreamingConfig().getConfig().getLanguageCode();
+                    execute(0, new Runnable() {
+                        @Override
+                        public void run() {
+                            if (configSampleRate > 0) {
+                                sampleRate = configSampleRate;
+                            }
+                            if (detectLanguage) {
+                                languageCode = detectedLanguageCode != null ? detectedLanguageCode : configLanguageCode;
+                            }
+                        }
+                    });
+                    return;
+                }
+                final int size = request.getAudioContent().size();
+                receivedAudioMessages.incrementAndGet();
+                receivedAudioBytes.addAndGet(size);
+                execute(0, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (finished) {
+                            return;
+                        }
+                        audioFrames++;
+                        audioBytes += size;
+                        if (errorAfterFrames >= 0 && audioFrames >= errorAfterFrames) {
+                            finished = true;
+                            responseObserver.onError(error.asRuntimeException());
+                        } else if (interimResultFrames > 0 && audioFrames % interimResultFrames == 0) {
+                            interimResults++;
+                            final String text = join(Math.min(interimResults, words.length));
+                            final long endMillis = audioBytes * 1000 / (2 * sampleRate);
+                            Runnable response = new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (!finished) {
+                                        responseObserver.onNext(createResponse(text, languageCode, endMillis, false));
+                                    }
+                                }
+                            };
+                            if (responseDelayMillis > 0) {
+                                execute(responseDelayMillis, response);
+                            } else {
+                                // sent immediately, so the order of the responses and of the errors is always the same
+                                response.run();
+                            }
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                execute(0, new Runnable() {
+                    @Override
+                    public void run() {
+                        finished = true;
+                    }
+                });
+            }
+
+            @Override
+            public void onCompleted() {
+                execute(streamNumber == slowStream ? slowStreamFinalResultDelayMillis : finalResultDelayMillis, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!finished) {
+                            finished = true;
+                            if (audioFrames > 0) {
+                                responseObserver.onNext(createResponse(join(words.length), languageCode, audioBytes * 1000 / (2 * sampleRate), true));
+                            }
+                            responseObserver.onCompleted();
+                        }
+                    }
+                });
+            }
+
+            private String join(int wordCount) {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < wordCount; i++) {
+                    if (i > 0) {
+                        text.append(' ');
+                    }
+                    text.append(words[i]);
+                }
+                return text.toString();
+            }
+        };
+    }
+
+    private void execute(long delayMillis, Runnable runnable) {
+        try {
+            responseExecutor.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the server has been stopped
+        }
+    }
+
+    private static StreamingRecognizeResponse createResponse(String text, String languageCode, long endMillis, boolean isFinal) {
+        return StreamingRecognizeResponse.newBuilder()
+                .addResults(StreamingRecognitionResult.newBuilder()
+                        .addAlternatives(SpeechRecognitionAlternative.newBuilder()
+                                .setTranscript(text)
+                                .setConfidence(0.9f)
+                                .build())
+                        .setIsFinal(isFinal)
+                        .setLanguageCode(languageCode)
+                        .setResultEndTime(Duration.newBuilder()
+                                .setSeconds(endMillis / 1000)
+                                .setNanos((int) (endMillis % 1000) * 1000000)
+                                .build())
+                        .build())
+                .build();
+    }
+}
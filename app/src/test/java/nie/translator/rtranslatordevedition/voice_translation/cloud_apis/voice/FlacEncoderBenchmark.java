@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ZeroCopyByteString;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import nie.translator.rtranslatordevedition.tools.Benchmark;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the cost of sending the audio with the FLAC encoding and with LINEAR16: the cpu time spent to turn the frames of a fixed signal
+ * (made by a {@link SyntheticAudioSource}) into the ByteStrings of the requests, as the {@link Recognizer} does (the FLAC frames are encoded
+ * and copied, the LINEAR16 frames are wrapped without copy), and the bytes saved by the compression.
+ * The results are printed, the tests fail only if the FLAC encoding does not reduce the data.
+ */
+@Category(Benchmark.class)
+public class FlacEncoderBenchmark {
+    private static final int SAMPLE_RATE = Recorder.RECOGNITION_SAMPLE_RATE;
+    private static final int FRAME_BYTES = SAMPLE_RATE * 2 * Recognizer.DEFAULT_FRAME_DURATION_MILLIS / 1000;
+    private static final int[] SEGMENTS = {1000, 4000, 1500, 6000, 2500, 5000};  // 20 s, alternating noise (the first) and voice
+    private static final int VOICE_AMPLITUDE = 8000;
+    private static final int QUIET_NOISE_AMPLITUDE = 100;
+    private static final int NOISY_NOISE_AMPLITUDE = 1500;
+    private static final long SEED = 42;
+    private static final int WARM_UP_ITERATIONS = 10;
+    private static final int ITERATIONS = 50;
+
+    @Test
+    public void quietRoom() throws Exception {
+        compare("quiet room", createFrames(QUIET_NOISE_AMPLITUDE));
+    }
+
+    @Test
+    public void noisyVenue() throws Exception {
+        compare("noisy venue", createFrames(NOISY_NOISE_AMPLITUDE));
+    }
+
+    private void compare(String name, final ArrayList<byte[]> frames) throws Exception {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long[] linear16Times = Benchmark.measure(WARM_UP_ITERATIONS, ITERATIONS, new Benchmark.Iteration() {
+            @Override
+            public long run(int iteration) {
+                final long start = threadBean.getCurrentThreadCpuTime();
+                for (byte[] frame : frames) {
+                    ZeroCopyByteString.wrap(frame, 0, frame.length);
+                }
+                return threadBean.getCurrentThreadCpuTime() - start;
+            }
+        });
+        final long[] encodedBytes = new long[1];
+        long[] flacTimes = Benchmark.measure(WARM_UP_ITERATIONS, ITERATIONS, new Benchmark.Iteration() {
+            @Override
+            public long run(int iteration) {
+                final long start = threadBean.getCurrentThreadCpuTime();
+                FlacEncoder encoder = new FlacEncoder();
+                encoder.start(SAMPLE_RATE);
+                long bytes = 0;
+                for (byte[] frame : frames) {
+                    final int encodedSize = encoder.encode(frame, frame.length);
+                    bytes += ByteString.copyFrom(encoder.getOutput(), 0, encodedSize).size();
+                }
+                final long time = threadBean.getCurrentThreadCpuTime() - start;
+                encodedBytes[0] = bytes;
+                return time;
+            }
+        });
+        final long audioBytes = (long) frames.size() * FRAME_BYTES;
+        final float audioSeconds = audioBytes / (2f * SAMPLE_RATE);
+        Benchmark.printReport(name + ", LINEAR16 cpu time for " + audioSeconds + " s of audio", linear16Times);
+        Benchmark.printReport(name + ", FLAC cpu time for " + audioSeconds + " s of audio", flacTimes);
+        Arrays.sort(flacTimes);
+        System.out.println(String.format(Locale.US, "%s: LINEAR16 %d bytes, FLAC %d bytes (ratio %.2f, %.1f KB saved per second of audio), FLAC cpu time %.2f ms per second of audio",
+                name, audioBytes, encodedBytes[0], (float) audioBytes / encodedBytes[0], (audioBytes - encodedBytes[0]) / 1024f / audioSeconds,
+                flacTimes[flacTimes.length / 2] / 1000000f / audioSeconds));
+        assertTrue("the FLAC encoding does not reduce the data", encodedBytes[0] < audioBytes);
+    }
+
+    /**
+     * @return the frames of the signal, of the duration of the frames sent by the Recognizer.
+     */
+    private static ArrayList<byte[]> createFrames(int noiseAmplitude) {
+        SyntheticAudioSource source = new SyntheticAudioSource(SAMPLE_RATE, SEGMENTS, noiseAmplitude, VOICE_AMPLITUDE, SEED, false);
+        ArrayList<byte[]> frames = new ArrayList<>();
+        byte[] frame = new byte[FRAME_BYTES];
+        source.start();
+        while (source.read(frame, 0, frame.length) == frame.length) {
+            frames.add(frame);
+            frame = new byte[FRAME_BYTES];
+        }
+        source.stop();
+        return frames;
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import io.grpc.Status;
+import nie.translator.rtranslatordevedition.tools.Benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the latency of the {@link Recognizer} against the {@link FakeSpeechServer}, so the results depend only on the client
+ * (the responses of the fake server are immediate if not configured otherwise): time from the start of the recognition to the first
+ * interim result, time from {@link Recognizer#finishRecognizing()} to the final result, the audio sent per second by more
+ * Recognizers at the same time, the recognition of two languages (walkie talkie mode) with two streams or with a single stream and
+ * the effect of the duration of the audio frames sent. The results are printed, the tests fail only if a result does not arrive.
+ */
+@Category(Benchmark.class)
+public class RecognizerBenchmark {
+    private static final String LANGUAGE_CODE = "en-US";
+    private static final String SECOND_LANGUAGE_CODE = "it-IT";
+    private static final String TRANSCRIPT = "hello world";
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_MILLIS = Recognizer.DEFAULT_FRAME_DURATION_MILLIS;
+    private static final int FRAME_BYTES = SAMPLE_RATE * 2 * FRAME_MILLIS / 1000;
+    private static final int WARM_UP_ITERATIONS = 10;
+    private static final int ITERATIONS = 50;
+    private static final int CONCURRENT_RECOGNIZERS = 4;
+    private static final int THROUGHPUT_AUDIO_SECONDS = 30;
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final int[] SWEEP_FRAME_MILLIS = {20, 50, 100, 200};
+    private static final int SWEEP_AUDIO_MILLIS = 1000;
+    private static final int SWEEP_WARM_UP_ITERATIONS = 1;
+    private static final int SWEEP_ITERATIONS = 5;
+    private static final int CAPTURE_FRAME_MILLIS = 10;  // duration of the frames of the Recorder
+    private static final int CAPTURE_FRAME_BYTES = SAMPLE_RATE * 2 * CAPTURE_FRAME_MILLIS / 1000;
+    private FakeSpeechServer server;
+    private FakeGlobal global;
+    private final AudioFramePool framePool = new AudioFramePool(FRAME_BYTES, 16);
+    private final AudioFramePool captureFramePool = new AudioFramePool(CAPTURE_FRAME_BYTES, 16);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSpeechServer();
+        server.setTranscript(TRANSCRIPT);
+        server.start();
+        global = new FakeGlobal(server);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void timeToFirstPartial() throws Exception {
+        global.setStandbyRecognitionEnabled(false);
+        Benchmark.printReport("time to first partial (new stream)", measureTimeToFirstPartial());
+        global.setStandbyRecognitionEnabled(true);
+        Benchmark.printReport("time to first partial (standby stream)", measureTimeToFirstPartial());
+    }
+
+    @Test
+    public void timeToFinal() throws Exception {
+        global.setStandbyRecognitionEnabled(true);
+        final ResultCollector collector = new ResultCollector();
+        final Recognizer recognizer = new Recognizer(global, false, collector);
+        long[] times = Benchmark.measure(WARM_UP_ITERATIONS, ITERATIONS, new Benchmark.Iteration() {
+            @Override
+            public long run(int iteration) throws Exception {
+                collector.reset();
+                recognizer.startRecognizing(LANGUAGE_CODE, SAMPLE_RATE, true);
+                sendAudio(recognizer, 10);
+                assertTrue("no partial result", collector.firstPartial.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                final long startTime = System.nanoTime();
+                recognizer.finishRecognizing();
+                assertTrue("no final result", collector.finalResult.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                assertEquals(TRANSCRIPT, collector.finalText);
+                assertTrue("recognition not ended", collector.end.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                return collector.finalResultTime - startTime;
+            }
+        });
+        recognizer.destroy();
+        Benchmark.printReport("time to final after finishRecognizing", times);
+    }
+
+    @Test
+    public void concurrentThroughput() throws InterruptedException {
+        global.setStandbyRecognitionEnabled(true);
+        final int frames = THROUGHPUT_AUDIO_SECONDS * 1000 / FRAME_MILLIS;
+        final CountDownLatch startGate = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(CONCURRENT_RECOGNIZERS);
+        final ArrayList<ResultCollector> collectors = new ArrayList<>();
+        final ArrayList<Recognizer> recognizers = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_RECOGNIZERS; i++) {
+            final ResultCollector collector = new ResultCollector();
+            final Recognizer recognizer = new Recognizer(global, false, collector);
+            collectors.add(collector);
+            recognizers.add(recognizer);
+            new Thread("recognizerBenchmark" + i) {
+                @Override
+                public void run() {
+                    super.run();
+                    try {
+                        startGate.await();
+                        recognizer.startRecognizing(LANGUAGE_CODE, SAMPLE_RATE, true);
+                        sendAudio(recognizer, frames);
+                        recognizer.finishRecognizing();
+                        if (collector.end.await(TIMEOUT_SECONDS * 3, TimeUnit.SECONDS)) {
+                            finished.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }.start();
+        }
+        final long startTime = System.nanoTime();
+        startGate.countDown();
+        assertTrue("recognitions not ended", finished.await(TIMEOUT_SECONDS * 6, TimeUnit.SECONDS));
+        final long elapsedNanos = System.nanoTime() - startTime;
+        for (int i = 0; i < CONCURRENT_RECOGNIZERS; i++) {
+            assertEquals(TRANSCRIPT, collectors.get(i).finalText);
+            recognizers.get(i).destroy();
+        }
+        float audioSeconds = server.getReceivedAudioBytes() / (2f * SAMPLE_RATE);
+        System.out.println(String.format(Locale.US, "throughput with %d recognizers: %.1f s of audio sent in %.1f ms (%.0f s of audio per second), %d messages",
+                CONCURRENT_RECOGNIZERS, audioSeconds, elapsedNanos / 1000000f, audioSeconds / (elapsedNanos / 1000000000f), server.getReceivedAudioMessages()));
+        System.out.println(global.getRecognizerMetrics().getSnapshot().toReport());
+    }
+
+    /**
+     * Compares the two ways of recognizing the two languages of the walkie talkie mode: a Recognizer per language, of which the final results
+     * are compared when both have arrived, and a single Recognizer with the second language as alternative language. The audio sent
+     * (and billed) is reported per recognition.
+     */
+    @Test
+    public void singleStreamVsDualStream() throws Exception {
+        global.setStandbyRecognitionEnabled(true);
+        server.setDetectedLanguageCode(SECOND_LANGUAGE_CODE);
+        final int frames = 20;
+
+        // dual stream: the walkie talkie mode can choose the result only when both have arrived
+        final ResultCollector firstCollector = new ResultCollector();
+        final ResultCollector secondCollector = new ResultCollector();
+        final Recognizer firstRecognizer = new Recognizer(global, false, firstCollector);
+        final Recognizer secondRecognizer = new Recognizer(global, false, secondCollector);
+        final long[] dualBytes = {0};
+        long[] dualTimes = Benchmark.measure(WARM_UP_ITERATIONS, ITERATIONS, new Benchmark.Iteration() {
+            @Override
+            public long run(int iteration) throws Exception {
+                firstCollector.reset();
+                secondCollector.reset();
+                final long startBytes = server.getReceivedAudioBytes();
+                firstRecognizer.startRecognizing(LANGUAGE_CODE, SAMPLE_RATE, true);
+                secondRecognizer.startRecognizing(SECOND_LANGUAGE_CODE, SAMPLE_RATE, true);
+                sendAudio(frames, firstRecognizer, secondRecognizer);
+                final long startTime = System.nanoTime();
+                firstRecognizer.finishRecognizing();
+                secondRecognizer.finishRecognizing();
+                assertTrue("no final result", firstCollector.finalResult.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                assertTrue("no final result", secondCollector.finalResult.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                assertTrue("recognition not ended", firstCollector.end.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                assertTrue("recognition not ended", secondCollector.end.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                if (iteration >= 0) {
+                    dualBytes[0] += server.getReceivedAudioBytes() - startBytes;
+                }
+                return Math.max(firstCollector.finalResultTime, secondCollector.finalResultTime) - startTime;
+            }
+        });
+        firstRecognizer.destroy();
+        secondRecognizer.destroy();
+
+        // single stream: the language is detected by the server
+        final ResultCollector collector = new ResultCollector();
+        final Recognizer recognizer = new Recognizer(global, false, collector);
+        final String[] alternativeLanguageCodes = new String[]{SECOND_LANGUAGE_CODE};
+        final long[] singleBytes = {0};
+        long[] singleTimes = Benchmark.measure(WARM_UP_ITERATIONS, ITERATIONS, new Benchmark.Iteration() {
+            @Override
+            public long run(int iteration) throws Exception {
+                collector.reset();
+                final long startBytes = server.getReceivedAudioBytes();
+                recognizer.startRecognizing(LANGUAGE_CODE, alternativeLanguageCodes, SAMPLE_RATE, true);
+                sendAudio(frames, recognizer);
+                final long startTime = System.nanoTime();
+                recognizer.finishRecognizing();
+                assertTrue("no final result", collector.finalResult.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                assertEquals(SECOND_LANGUAGE_CODE, collector.finalLanguageCode);
+                assertTrue("recognition not ended", collector.end.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                if (iteration >= 0) {
+                    singleBytes[0] += server.getReceivedAudioBytes() - startBytes;
+                }
+                return collector.finalResultTime - startTime;
+            }
+        });
+        recognizer.destroy();
+
+        Benchmark.printReport("two languages, time to final (dual stream)", dualTimes);
+        Benchmark.printReport("two languages, time to final (single stream)", singleTimes);
+        float audioSeconds = frames * FRAME_MILLIS / 1000f;
+        System.out.println(String.format(Locale.US, "two languages, audio billed per %.1f s recognition: dual stream %.1f s (%d bytes), single stream %.1f s (%d bytes)",
+                audioSeconds, audioSeconds * 2, dualBytes[0] / ITERATIONS, audioSeconds, singleBytes[0] / ITERATIONS));
+    }
+
+    /**
+     * Sends the audio in real time, in frames of {@link #CAPTURE_FRAME_MILLIS} ms like the Recorder, with each duration of the frames
+     * sent by the Recognizer (the setting audioFrameDuration): the shorter frames bring the first interim result earlier (the fake server
+     * returns one for each audio message), at the cost of more messages per second of audio.
+     */
+    @Test
+    public void frameDurationSweep() throws Exception {
+        global.setStandbyRecognitionEnabled(true);
+        for (int frameMillis : SWEEP_FRAME_MILLIS) {
+            global.setAudioFrameDuration(frameMillis);
+            final ResultCollector collector = new ResultCollector();
+            final Recognizer recognizer = new Recognizer(global, false, collector);
+            final long[] messages = {0};
+            long[] times = Benchmark.measure(SWEEP_WARM_UP_ITERATIONS, SWEEP_ITERATIONS, new Benchmark.Iteration() {
+                @Override
+                public long run(int iteration) throws Exception {
+                    collector.reset();
+                    final long startMessages = server.getReceivedAudioMessages();
+                    final long startTime = System.nanoTime();
+                    recognizer.startRecognizing(LANGUAGE_CODE, SAMPLE_RATE, true);
+                    sendCapturedAudio(recognizer, SWEEP_AUDIO_MILLIS, startTime);
+                    recognizer.finishRecognizing();
+                    assertTrue("no partial result", collector.firstPartial.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                    assertTrue("recognition not ended", collector.end.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                    if (iteration >= 0) {
+                        messages[0] += server.getReceivedAudioMessages() - startMessages;
+                    }
+                    return collector.firstPartialTime - startTime;
+                }
+            });
+            recognizer.destroy();
+            Benchmark.printReport("time to first partial with frames of " + frameMillis + " ms", times);
+            System.out.println(String.format(Locale.US, "audio messages with frames of %d ms: %.1f per second of audio", frameMillis,
+                    messages[0] / (SWEEP_ITERATIONS * SWEEP_AUDIO_MILLIS / 1000f)));
+        }
+        global.setAudioFrameDuration(Recognizer.DEFAULT_FRAME_DURATION_MILLIS);
+    }
+
+    @Test
+    public void injectedError() throws InterruptedException {
+        global.setStandbyRecognitionEnabled(false);
+        server.setError(5, Status.UNAVAILABLE);
+        ResultCollector collector = new ResultCollector();
+        Recognizer recognizer = new Recognizer(global, false, collector);
+        recognizer.startRecognizing(LANGUAGE_CODE, SAMPLE_RATE, true);
+        sendAudio(recognizer, 10);
+        // the recognition ends with the error and its only final result is the last interim result
+        assertTrue("recognition not ended", collector.finalResult.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(TRANSCRIPT, collector.finalText);
+
+        // the next recognition uses a new stream
+        server.setError(-1, Status.UNAVAILABLE);
+        collector.reset();
+        recognizer.startRecognizing(LANGUAGE_CODE, SAMPLE_RATE, true);
+        sendAudio(recognizer, 10);
+        recognizer.finishRecognizing();
+        assertTrue("no final result", collector.finalResult.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(TRANSCRIPT, collector.finalText);
+        assertEquals(2, server.getOpenedStreams());
+        recognizer.destroy();
+    }
+
+    private long[] measureTimeToFirstPartial() throws Exception {
+        final ResultCollector collector = new ResultCollector();
+        final Recognizer recognizer = new Recognizer(global, false, collector);
+        long[] times = Benchmark.measure(WARM_UP_ITERATIONS, ITERATIONS, new Benchmark.Iteration() {
+            @Override
+            public long run(int iteration) throws Exception {
+                // the standby stream (if enabled) is opened at the end of the previous recognition, here it is opened only for the first
+                recognizer.prepareRecognizing(LANGUAGE_CODE, SAMPLE_RATE);
+                Thread.sleep(20);
+                collector.reset();
+                final long startTime = System.nanoTime();
+                recognizer.startRecognizing(LANGUAGE_CODE, SAMPLE_RATE, true);
+                sendAudio(recognizer, 1);
+                assertTrue("no partial result", collector.firstPartial.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                final long time = collector.firstPartialTime - startTime;
+                recognizer.finishRecognizing();
+                assertTrue("recognition not ended", collector.end.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                return time;
+            }
+        });
+        recognizer.destroy();
+        return times;
+    }
+
+    private void sendAudio(Recognizer recognizer, int frames) {
+        sendAudio(frames, recognizer);
+    }
+
+    /**
+     * Sends the audio at the pace of the capture, starting from startTime (in the time of System.nanoTime()).
+     */
+    private void sendCapturedAudio(Recognizer recognizer, int millis, long startTime) throws InterruptedException {
+        for (int i = 0; i < millis / CAPTURE_FRAME_MILLIS; i++) {
+            // the frame is available at the end of its capture
+            final long delayNanos = startTime + (i + 1) * CAPTURE_FRAME_MILLIS * 1000000L - System.nanoTime();
+            if (delayNanos > 0) {
+                Thread.sleep(delayNanos / 1000000, (int) (delayNanos % 1000000));
+            }
+            AudioFrame frame = captureFramePool.acquire();
+            fillWithTone(frame.getData(), CAPTURE_FRAME_BYTES, i * CAPTURE_FRAME_BYTES / 2);
+            frame.setSize(CAPTURE_FRAME_BYTES);
+            recognizer.recognize(frame);
+            frame.release();
+        }
+    }
+
+    /**
+     * Sends the same frames to all the recognizers, as the walkie talkie mode does.
+     */
+    private void sendAudio(int frames, Recognizer... recognizers) {
+        for (int i = 0; i < frames; i++) {
+            AudioFrame frame = framePool.acquire();
+            fillWithTone(frame.getData(), FRAME_BYTES, 0);
+            frame.setSize(FRAME_BYTES);
+            for (Recognizer recognizer : recognizers) {
+                recognizer.recognize(frame);
+            }
+            frame.release();
+        }
+    }
+
+    /**
+     * Writes a 440 Hz tone, so the FLAC encoder (if enabled) works with a realistic signal.
+     *
+     * @param firstSample the index of the first sample in the tone, to continue it between frames.
+     */
+    private static void fillWithTone(byte[] data, int size, int firstSample) {
+        for (int j = 0; j < size; j += 2) {
+            short sample = (short) (Math.sin(2 * Math.PI * 440 * (firstSample + j / 2) / SAMPLE_RATE) * 8000);
+            data[j] = (byte) sample;
+            data[j + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    /**
+     * Records the time of the first interim result, of the final result of the server and of the end of the recognition
+     * (the result returned by the {@link Recognizer} when the stream is closed, after the final result).
+     */
+    private static class ResultCollector implements RecognizerListener {
+        private volatile CountDownLatch firstPartial;
+        private volatile CountDownLatch finalResult;
+        private volatile CountDownLatch end;
+        private volatile long firstPartialTime;
+        private volatile long finalResultTime;
+        private volatile String finalText;
+        private volatile String finalLanguageCode;
+        private int finalResults;
+
+        private ResultCollector() {
+            reset();
+        }
+
+        private synchronized void reset() {
+            firstPartial = new CountDownLatch(1);
+            finalResult = new CountDownLatch(1);
+            end = new CountDownLatch(1);
+            finalText = null;
+            finalLanguageCode = null;
+            finalResults = 0;
+        }
+
+        @Override
+        public synchronized void onSpeechRecognizedResult(String text, String languageCode, float confidenceScore, boolean isFinal) {
+            final long time = System.nanoTime();
+            finalResults++;
+            if (finalResults == 1) {
+                finalResultTime = time;
+                finalText = text;
+                finalLanguageCode = languageCode;
+                finalResult.countDown();
+            } else {
+                end.countDown();
+            }
+        }
+
+        @Override
+        public synchronized void onSpeechRecognizedDelta(TranscriptDelta delta, String languageCode) {
+            if (firstPartial.getCount() > 0) {
+                firstPartialTime = System.nanoTime();
+                firstPartial.countDown();
+            }
+        }
+
+        @Override
+        public void onError(int[] reasons, long value) {
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the results of a recognition that continues on a new stream (the rollover of the endless streaming) against the
+ * {@link FakeSpeechServer}: the final results of the replaced stream are kept, before the ones of the new stream, also when they
+ * arrive after the new stream is closed. Checks also that the standby stream is not prepared while it is not allowed.
+ */
+public class RecognizerTest {
+    private static final String LANGUAGE_CODE = "en-US";
+    private static final String FIRST_TRANSCRIPT = "first stream";
+    private static final String SECOND_TRANSCRIPT = "second stream";
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_MILLIS = 100;
+    private static final int FRAME_BYTES = SAMPLE_RATE * 2 * FRAME_MILLIS / 1000;
+    private static final int ROLLOVER_MILLIS = 240000;  // Recognizer.STREAM_ROLLOVER_MILLIS
+    private static final long SLOW_FINAL_RESULT_DELAY_MILLIS = 500;
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final long STREAM_OPENING_MILLIS = 200;
+    private FakeSpeechServer server;
+    private FakeGlobal global;
+    private final AudioFramePool framePool = new AudioFramePool(FRAME_BYTES, 16);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSpeechServer();
+        server.setInterimResultFrames(0);
+        server.start();
+        global = new FakeGlobal(server);
+        // so the stream of the recognition is the first opened and the one of the rollover the second
+        global.setStandbyRecognitionEnabled(false);
+        global.setEndlessStreamingEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void rollover() throws InterruptedException {
+        assertEquals(Arrays.asList(FIRST_TRANSCRIPT + " " + SECOND_TRANSCRIPT), recognizeWithRollover(true, 1));
+        assertEquals(Arrays.asList(FIRST_TRANSCRIPT, SECOND_TRANSCRIPT, ""), recognizeWithRollover(false, 3));
+    }
+
+    @Test
+    public void replacedStreamSlowerThanNewStream() throws InterruptedException {
+        // the final result of the replaced stream arrives after the new stream has been closed
+        server.setFinalResultDelayMillis(1, SLOW_FINAL_RESULT_DELAY_MILLIS);
+        assertEquals(Arrays.asList(FIRST_TRANSCRIPT + " " + SECOND_TRANSCRIPT), recognizeWithRollover(true, 1));
+        server.setFinalResultDelayMillis(server.getOpenedStreams() + 1, SLOW_FINAL_RESULT_DELAY_MILLIS);
+        assertEquals(Arrays.asList(FIRST_TRANSCRIPT, SECOND_TRANSCRIPT, ""), recognizeWithRollover(false, 3));
+    }
+
+    @Test
+    public void standbyNotAllowed() throws InterruptedException {
+        global.setStandbyRecognitionEnabled(true);
+        server.setTranscript(FIRST_TRANSCRIPT);
+        ResultCollector collector = new ResultCollector(1);
+        Recognizer recognizer = new Recognizer(global, true, collector);
+        recognizer.setStandbyAllowed(false);
+        recognizer.prepareRecognizing(LANGUAGE_CODE, SAMPLE_RATE);
+        Thread.sleep(STREAM_OPENING_MILLIS);
+        assertEquals(0, server.getOpenedStreams());
+        // neither at the end of a recognition
+        recognizer.startRecognizing(LANGUAGE_CODE, SAMPLE_RATE, true);
+        sendAudio(recognizer, 1000);
+        recognizer.finishRecognizing();
+        assertTrue("recognition not ended", collector.end.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Thread.sleep(STREAM_OPENING_MILLIS);
+        assertEquals(1, server.getOpenedStreams());
+        recognizer.setStandbyAllowed(true);
+        recognizer.prepareRecognizing(LANGUAGE_CODE, SAMPLE_RATE);
+        Thread.sleep(STREAM_OPENING_MILLIS);
+        assertEquals(2, server.getOpenedStreams());
+        recognizer.destroy();
+    }
+
+    /**
+     * Recognizes a second of audio after the rollover: the first stream returns FIRST_TRANSCRIPT and the second SECOND_TRANSCRIPT.
+     *
+     * @return the texts passed to onSpeechRecognizedResult.
+     */
+    private ArrayList<String> recognizeWithRollover(boolean returnResultOnlyAtTheEnd, int expectedResults) throws InterruptedException {
+        ResultCollector collector = new ResultCollector(expectedResults);
+        Recognizer recognizer = new Recognizer(global, returnResultOnlyAtTheEnd, collector);
+        server.setTranscript(FIRST_TRANSCRIPT);
+        recognizer.startRecognizing(LANGUAGE_CODE, SAMPLE_RATE, true);
+        sendAudio(recognizer, ROLLOVER_MILLIS - 1000);
+        // the transcript is read by the server when a stream is opened
+        server.setTranscript(SECOND_TRANSCRIPT);
+        sendAudio(recognizer, 2000);
+        recognizer.finishRecognizing();
+        assertTrue("recognition not ended", collector.end.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        recognizer.destroy();
+        return collector.results;
+    }
+
+    private void sendAudio(Recognizer recognizer, int millis) {
+        for (int i = 0; i < millis / FRAME_MILLIS; i++) {
+            AudioFrame frame = framePool.acquire();
+            Arrays.fill(frame.getData(), (byte) 0);
+            frame.setSize(FRAME_BYTES);
+            recognizer.recognize(frame);
+            frame.release();
+        }
+    }
+
+    private static class ResultCollector implements RecognizerListener {
+        private final ArrayList<String> results = new ArrayList<>();
+        private final CountDownLatch end;
+
+        private ResultCollector(int expectedResults) {
+            end = new CountDownLatch(expectedResults);
+        }
+
+        @Override
+        public synchronized void onSpeechRecognizedResult(String text, String languageCode, float confidenceScore, boolean isFinal) {
+            results.add(text);
+            end.countDown();
+        }
+
+        @Override
+        public void onSpeechRecognizedDelta(TranscriptDelta delta, String languageCode) {
+        }
+
+        @Override
+        public void onError(int[] reasons, long value) {
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import androidx.annotation.NonNull;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the voice detection of the {@link Recorder} with a {@link SyntheticAudioSource} (delivered ten times faster than real time: as
+ * fast as possible it could fill the capture queue of the Recorder during a pause of the processing thread): the start of the
+ * voice, the audio before the voice passed at the start, the end of the voice after the speech timeout and the cut of the voice longer than
+ * {@link Recorder#MAX_SPEECH_LENGTH_MILLIS}. The times are those of the audio, so they do not depend on the speed of the threads, and are
+ * checked with the tolerance of a buffer of the source.
+ */
+public class RecorderTest {
+    private static final int SAMPLE_RATE = Recorder.RECOGNITION_SAMPLE_RATE;
+    private static final int BUFFER_MILLIS = 100;  // of the SyntheticAudioSource
+    private static final int READ_INTERVAL_MILLIS = BUFFER_MILLIS / 10;
+    private static final int NOISE_AMPLITUDE = 100;
+    private static final int VOICE_AMPLITUDE = 8000;
+    private static final long SEED = 42;
+    private static final int NOISE_MILLIS = 1000;
+    private static final int VOICE_MILLIS = 1000;
+    private static final long TIMEOUT_SECONDS = 30;
+    private FakeGlobal global;
+
+    @Before
+    public void setUp() {
+        global = new FakeGlobal();
+        global.setEndlessStreamingEnabled(false);
+    }
+
+    @Test
+    public void voiceStart() throws InterruptedException {
+        final int[] segments = {NOISE_MILLIS, VOICE_MILLIS, 2000};
+        ArrayList<Utterance> utterances = record(segments, 1);
+        assertEquals(1, utterances.size());
+        // the voice is detected in the first buffer of voice
+        assertAround(NOISE_MILLIS + BUFFER_MILLIS, utterances.get(0).getVoiceStartMillis());
+    }
+
+    @Test
+    public void preRoll() throws InterruptedException {
+        final int[] segments = {NOISE_MILLIS, VOICE_MILLIS, 2000};
+        for (int prevVoiceDuration : new int[]{Recorder.MIN_PREV_VOICE_DURATION, Recorder.DEFAULT_PREV_VOICE_DURATION}) {
+            global.setPrevVoiceDuration(prevVoiceDuration);
+            Utterance utterance = record(segments, 1).get(0);
+            // the audio passed starts prevVoiceDuration before the end of the first buffer of voice (where the voice is detected),
+            // and it is the audio captured without gaps (see Utterance.locate)
+            assertEquals(NOISE_MILLIS + BUFFER_MILLIS - prevVoiceDuration, utterance.startMillis);
+        }
+    }
+
+    @Test
+    public void speechTimeout() throws InterruptedException {
+        final int[] segments = {NOISE_MILLIS, VOICE_MILLIS, 2000};
+        for (int speechTimeout : new int[]{400, Recorder.DEFAULT_SPEECH_TIMEOUT_MILLIS}) {
+            global.setSpeechTimeout(speechTimeout);
+            Utterance utterance = record(segments, 1).get(0);
+            // the voice ends in the first buffer that ends more than speechTimeout after the last buffer of voice
+            assertAround(NOISE_MILLIS + VOICE_MILLIS + speechTimeout + BUFFER_MILLIS, utterance.getEndMillis());
+        }
+    }
+
+    @Test
+    public void maxSpeechLength() throws InterruptedException {
+        final int[] segments = {NOISE_MILLIS, Recorder.MAX_SPEECH_LENGTH_MILLIS + 2000, 2000};
+        ArrayList<Utterance> utterances = record(segments, 2);
+        // the voice is cut and, since it continues, detected again
+        assertEquals(2, utterances.size());
+        final Utterance first = utterances.get(0);
+        assertAround(first.getVoiceStartMillis() + Recorder.MAX_SPEECH_LENGTH_MILLIS + BUFFER_MILLIS, first.getEndMillis());
+        assertAround(first.getEndMillis() + BUFFER_MILLIS, utterances.get(1).getVoiceStartMillis());
+    }
+
+    /**
+     * Records all the audio of a SyntheticAudioSource with the given segments and returns the utterances heard, each with the position
+     * of its audio in the audio of the source.
+     */
+    private ArrayList<Utterance> record(int[] segments, int expectedUtterances) throws InterruptedException {
+        final byte[] sourceAudio = readAll(createSource(segments));
+        UtteranceCollector collector = new UtteranceCollector(expectedUtterances);
+        Recorder recorder = new Recorder(global, collector, new ThrottledAudioSource(createSource(segments)));
+        recorder.start();
+        assertTrue("voice not ended", collector.ended.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        recorder.stop();
+        assertEquals("audio dropped, the times would not be those of the audio", 0, recorder.getDroppedFrameCount());
+        for (Utterance utterance : collector.utterances) {
+            utterance.locate(sourceAudio);
+        }
+        return collector.utterances;
+    }
+
+    private SyntheticAudioSource createSource(int[] segments) {
+        return new SyntheticAudioSource(SAMPLE_RATE, segments, NOISE_AMPLITUDE, VOICE_AMPLITUDE, SEED, false);
+    }
+
+    private static byte[] readAll(AudioSource source) {
+        ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        byte[] buffer = new byte[source.getBufferSize()];
+        source.start();
+        int size;
+        while ((size = source.read(buffer, 0, buffer.length)) > 0) {
+            audio.write(buffer, 0, size);
+        }
+        source.stop();
+        return audio.toByteArray();
+    }
+
+    private static void assertAround(long expectedMillis, long actualMillis) {
+        assertTrue("expected " + expectedMillis + " ms, was " + actualMillis + " ms", Math.abs(actualMillis - expectedMillis) <= BUFFER_MILLIS);
+    }
+
+    private static long bytesToMillis(long bytes) {
+        return bytes / 2 * 1000 / SAMPLE_RATE;
+    }
+
+    /**
+     * Delivers the audio of another source waiting READ_INTERVAL_MILLIS before each read.
+     */
+    private static class ThrottledAudioSource implements AudioSource {
+        private final AudioSource source;
+
+        private ThrottledAudioSource(AudioSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean start() {
+            return source.start();
+        }
+
+        @Override
+        public int getSampleRate() {
+            return source.getSampleRate();
+        }
+
+        @Override
+        public int getBufferSize() {
+            return source.getBufferSize();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int size) {
+            try {
+                Thread.sleep(READ_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();  // the Recorder is stopping
+            }
+            return source.read(buffer, offset, size);
+        }
+
+        @Override
+        public void stop() {
+            source.stop();
+        }
+    }
+
+    /**
+     * The audio passed to the Callback from onVoiceStart to onVoiceEnd.
+     */
+    private class Utterance {
+        private final ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        private long startMillis = -1;  // position of the audio in the audio of the source
+
+        /**
+         * Finds the position of the audio in the audio of the source, which proves that the audio passed is the one captured.
+         */
+        private void locate(byte[] sourceAudio) {
+            final byte[] data = audio.toByteArray();
+            final int bufferBytes = SAMPLE_RATE * BUFFER_MILLIS / 1000 * 2;
+            for (int start = 0; start + data.length <= sourceAudio.length; start += bufferBytes) {
+                if (Arrays.equals(data, Arrays.copyOfRange(sourceAudio, start, start + data.length))) {
+                    startMillis = bytesToMillis(start);
+                    return;
+                }
+            }
+            throw new AssertionError("the audio passed is not a part of the audio captured");
+        }
+
+        /**
+         * @return the end of the buffer in which the voice has been detected, the audio passed at the start includes it.
+         */
+        private long getVoiceStartMillis() {
+            return startMillis + global.getPrevVoiceDuration();
+        }
+
+        private long getEndMillis() {
+            return startMillis + bytesToMillis(audio.size());
+        }
+    }
+
+    private class UtteranceCollector extends Recorder.SimpleCallback {
+        private final ArrayList<Utterance> utterances = new ArrayList<>();
+        private final CountDownLatch ended;
+        private Utterance currentUtterance;
+
+        private UtteranceCollector(int expectedUtterances) {
+            ended = new CountDownLatch(expectedUtterances);
+        }
+
+        @Override
+        public void onVoiceStart() {
+            currentUtterance = new Utterance();
+            utterances.add(currentUtterance);
+        }
+
+        @Override
+        public void onVoice(@NonNull AudioFrame frame) {
+            currentUtterance.audio.write(frame.getData(), 0, frame.getSize());
+        }
+
+        @Override
+        public void onVoiceEnd() {
+            if (currentUtterance != null) {
+                currentUtterance = null;
+                ended.countDown();
+            }
+        }
+    }
+}
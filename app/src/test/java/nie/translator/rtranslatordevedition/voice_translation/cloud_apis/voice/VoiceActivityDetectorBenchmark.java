@@ -0,0 +1,301 @@
+/*
+ * Copyright 2016 Luca Martino.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copyFile of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nie.translator.rtranslatordevedition.voice_translation.cloud_apis.voice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import nie.translator.rtranslatordevedition.tools.Benchmark;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scores each {@link VoiceActivityDetector} against labelled WAV files read with a {@link FileAudioSource}: the accuracy of the buffers
+ * classified, the false triggers (starts of voice detected in the background noise, each of which would open a streaming session),
+ * the onset delay (from the start of a voice to the end of the buffer in which it is detected) and the CPU time per buffer.
+ * The files are written as temporary files from a {@link SyntheticAudioSource}, so the labels are the segments of the source:
+ * a quiet room, a noisy venue and a quiet room with door slams (short loud bursts) in the silences.
+ * The results are printed, the tests fail only if a detector misses a voice.
+ */
+@Category(Benchmark.class)
+public class VoiceActivityDetectorBenchmark {
+    private static final int SAMPLE_RATE = Recorder.RECOGNITION_SAMPLE_RATE;
+    private static final int[] SEGMENTS = {2000, 2000, 1500, 1000, 3000, 2500, 2000};  // alternating noise (the first) and voice
+    private static final int[] DETECTORS = {VoiceActivityDetector.AMPLITUDE, VoiceActivityDetector.ENERGY, VoiceActivityDetector.SPECTRAL};
+    private static final int VOICE_AMPLITUDE = 8000;
+    private static final int QUIET_NOISE_AMPLITUDE = 100;
+    private static final int NOISY_NOISE_AMPLITUDE = 1500;
+    private static final int SLAM_MILLIS = 15;
+    private static final int SLAM_AMPLITUDE = 20000;
+    private static final int SLAMS_PER_SILENCE = 2;
+    private static final long SEED = 42;
+    private static final int WARM_UP_ITERATIONS = 3;
+    private static final int ITERATIONS = 10;
+    private final ArrayList<File> files = new ArrayList<>();
+    private FakeGlobal global;
+
+    @Before
+    public void setUp() {
+        global = new FakeGlobal();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+        files.clear();
+    }
+
+    @Test
+    public void quietRoom() throws Exception {
+        score("quiet room", writeWav("quiet", QUIET_NOISE_AMPLITUDE, false));
+    }
+
+    @Test
+    public void noisyVenue() throws Exception {
+        score("noisy venue", writeWav("noisy", NOISY_NOISE_AMPLITUDE, false));
+    }
+
+    @Test
+    public void doorSlams() throws Exception {
+        score("door slams", writeWav("slams", QUIET_NOISE_AMPLITUDE, true));
+    }
+
+    private void score(String name, File wavFile) throws Exception {
+        for (int type : DETECTORS) {
+            final VoiceActivityDetector detector = createDetector(type);
+            final Score score = classify(detector, wavFile);
+            final long[] cpuTimes = measureCpuTime(detector, wavFile);
+            Arrays.sort(cpuTimes);
+            System.out.println(String.format(Locale.US, "%s, %s: accuracy %.1f%%, %d false triggers (%.1f per minute of noise), onset delay %.0f ms, %d voices missed, %.1f us of cpu per buffer",
+                    name, detector.getClass().getSimpleName(), score.getAccuracy() * 100, score.falseTriggers, score.falseTriggers * 60000f / getNoiseMillis(),
+                    score.getOnsetDelayMillis(), score.missedVoices, cpuTimes[cpuTimes.length / 2] / 1000f / score.buffers));
+            Benchmark.printReport(name + ", " + detector.getClass().getSimpleName() + " cpu time per file", cpuTimes);
+            assertTrue(detector.getClass().getSimpleName() + " missed " + score.missedVoices + " voices", score.missedVoices == 0);
+        }
+    }
+
+    /**
+     * Passes all the buffers of the file to the detector and compares the results with the labels, a buffer is labelled as voice if its
+     * middle sample is in a voice segment.
+     */
+    private Score classify(VoiceActivityDetector detector, File wavFile) {
+        final FileAudioSource source = new FileAudioSource(wavFile, false);
+        assertTrue("cannot read " + wavFile, source.start());
+        detector.reset(source.getSampleRate());
+        final byte[] buffer = new byte[source.getBufferSize()];
+        final Score score = new Score();
+        long position = 0;  // in samples
+        int detectedSegment = -1;  // the last voice segment in which the voice has been detected
+        boolean prevVoice = false;
+        int size;
+        while ((size = source.read(buffer, 0, buffer.length)) > 0) {
+            final boolean voice = detector.isVoice(buffer, size);
+            final long end = position + size / 2;
+            final int segment = getSegment((position + end) / 2);
+            final boolean labelledVoice = segment % 2 == 1;
+            if (voice == labelledVoice) {
+                score.correctBuffers++;
+            }
+            score.buffers++;
+            if (voice && !prevVoice && !labelledVoice) {
+                score.falseTriggers++;
+            }
+            if (voice && labelledVoice && detectedSegment != segment) {
+                score.onsetDelaySumMillis += (end - getSegmentStart(segment)) * 1000 / SAMPLE_RATE;
+                score.detectedVoices++;
+                detectedSegment = segment;
+            }
+            prevVoice = voice;
+            position = end;
+        }
+        source.stop();
+        score.missedVoices = SEGMENTS.length / 2 - score.detectedVoices;
+        return score;
+    }
+
+    /**
+     * @return the cpu time spent by the detector for each pass over all the buffers of the file (the buffers are read before, so the
+     * reading of the file is excluded).
+     */
+    private long[] measureCpuTime(final VoiceActivityDetector detector, File wavFile) throws Exception {
+        final FileAudioSource source = new FileAudioSource(wavFile, false);
+        assertTrue("cannot read " + wavFile, source.start());
+        final int sampleRate = source.getSampleRate();
+        final ArrayList<byte[]> buffers = new ArrayList<>();
+        final byte[] readBuffer = new byte[source.getBufferSize()];
+        int size;
+        while ((size = source.read(readBuffer, 0, readBuffer.length)) > 0) {
+            buffers.add(Arrays.copyOf(readBuffer, size));
+        }
+        source.stop();
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        return Benchmark.measure(WARM_UP_ITERATIONS, ITERATIONS, new Benchmark.Iteration() {
+            @Override
+            public long run(int iteration) {
+                detector.reset(sampleRate);
+                final long start = threadBean.getCurrentThreadCpuTime();
+                for (byte[] buffer : buffers) {
+                    detector.isVoice(buffer, buffer.length);
+                }
+                return threadBean.getCurrentThreadCpuTime() - start;
+            }
+        });
+    }
+
+    private VoiceActivityDetector createDetector(int type) {
+        switch (type) {
+            case VoiceActivityDetector.AMPLITUDE:
+                return new AmplitudeVoiceActivityDetector(global);
+            case VoiceActivityDetector.SPECTRAL:
+                return new SpectralVoiceActivityDetector(global);
+            default:
+                return new EnergyVoiceActivityDetector(global);
+        }
+    }
+
+    /**
+     * Writes the audio of a SyntheticAudioSource with the SEGMENTS in a WAV file (PCM 16 bit mono).
+     *
+     * @param slams if true, SLAMS_PER_SILENCE door slams are added in each segment of noise.
+     */
+    private File writeWav(String name, int noiseAmplitude, boolean slams) throws IOException {
+        final SyntheticAudioSource source = new SyntheticAudioSource(SAMPLE_RATE, SEGMENTS, noiseAmplitude, VOICE_AMPLITUDE, SEED, false);
+        final byte[] audio = new byte[(int) (getSegmentStart(SEGMENTS.length) * 2)];
+        source.start();
+        int offset = 0;
+        int size;
+        while ((size = source.read(audio, offset, Math.min(source.getBufferSize(), audio.length - offset))) > 0) {
+            offset += size;
+        }
+        source.stop();
+        if (slams) {
+            for (int segment = 0; segment < SEGMENTS.length; segment += 2) {
+                for (int i = 1; i <= SLAMS_PER_SILENCE; i++) {
+                    addSlam(audio, getSegmentStart(segment) + (long) SEGMENTS[segment] * SAMPLE_RATE / 1000 * i / (SLAMS_PER_SILENCE + 1));
+                }
+            }
+        }
+        final File file = File.createTempFile(name, ".wav");
+        files.add(file);
+        OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            outputStream.write("RIFF".getBytes("US-ASCII"));
+            writeInt(outputStream, 36 + audio.length);
+            outputStream.write("WAVEfmt ".getBytes("US-ASCII"));
+            writeInt(outputStream, 16);
+            writeShort(outputStream, 1);  // PCM
+            writeShort(outputStream, 1);  // mono
+            writeInt(outputStream, SAMPLE_RATE);
+            writeInt(outputStream, SAMPLE_RATE * 2);
+            writeShort(outputStream, 2);
+            writeShort(outputStream, 16);
+            outputStream.write("data".getBytes("US-ASCII"));
+            writeInt(outputStream, audio.length);
+            outputStream.write(audio);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    /**
+     * Adds a burst of white noise that decays in SLAM_MILLIS, starting from the given sample.
+     */
+    private static void addSlam(byte[] audio, long start) {
+        final Random random = new Random(start);
+        final int samples = SAMPLE_RATE * SLAM_MILLIS / 1000;
+        for (int i = 0; i < samples; i++) {
+            final int index = (int) (start + i) * 2;
+            final int sample = (audio[index] & 0xFF) | (audio[index + 1] << 8);
+            final double decay = 1 - (double) i / samples;
+            final int value = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample + random.nextGaussian() * SLAM_AMPLITUDE * decay));
+            audio[index] = (byte) value;
+            audio[index + 1] = (byte) (value >> 8);
+        }
+    }
+
+    private static void writeInt(OutputStream outputStream, int value) throws IOException {
+        writeShort(outputStream, value);
+        writeShort(outputStream, value >> 16);
+    }
+
+    private static void writeShort(OutputStream outputStream, int value) throws IOException {
+        outputStream.write(value);
+        outputStream.write(value >> 8);
+    }
+
+    /**
+     * @return the index of the segment that contains the sample.
+     */
+    private static int getSegment(long sample) {
+        int segment = 0;
+        while (segment < SEGMENTS.length - 1 && sample >= getSegmentStart(segment + 1)) {
+            segment++;
+        }
+        return segment;
+    }
+
+    /**
+     * @return the first sample of the segment, or the number of samples if the index is SEGMENTS.length.
+     */
+    private static long getSegmentStart(int segment) {
+        long start = 0;
+        for (int i = 0; i < segment; i++) {
+            start += (long) SEGMENTS[i] * SAMPLE_RATE / 1000;
+        }
+        return start;
+    }
+
+    private static long getNoiseMillis() {
+        long millis = 0;
+        for (int i = 0; i < SEGMENTS.length; i += 2) {
+            millis += SEGMENTS[i];
+        }
+        return millis;
+    }
+
+    private static class Score {
+        private int buffers = 0;
+        private int correctBuffers = 0;
+        private int falseTriggers = 0;
+        private int detectedVoices = 0;
+        private int missedVoices = 0;
+        private long onsetDelaySumMillis = 0;
+
+        private float getAccuracy() {
+            return (float) correctBuffers / buffers;
+        }
+
+        private float getOnsetDelayMillis() {
+            return detectedVoices > 0 ? (float) onsetDelaySumMillis / detectedVoices : 0;
+        }
+    }
+}